@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.DoubleFuture;
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * The {@code double}-producing primitive specialization of {@link AsyncSupplier}.
+ * Results are delivered through a {@link DoubleFuture}, so they are not boxed
+ * unless they are asked for through {@link #get()}.
+ * 
+ * @see DoubleSupplier#async(java.util.concurrent.Executor)
+ */
+@FunctionalInterface
+public interface AsyncDoubleSupplier extends AsyncSupplier<Double> {
+    
+    /**
+     * Start computing a result.
+     * 
+     * @return A future of the result.
+     */
+    DoubleFuture getAsDouble();
+    
+    /**
+     * Start computing a result.
+     * 
+     * @return A future of the boxed result.
+     */
+    @Override
+    default CompletableFuture<Double> get() {
+        return getAsDouble().boxed();
+    }
+    
+    /**
+     * Consume an asynchronous supplier.
+     * 
+     * @param consumer The consumer to use in consuming.
+     * @return An AsyncRunnable which passes the result of this supplier into
+     *         the given consumer once it completes.
+     */
+    default AsyncRunnable consume(DoubleConsumer consumer) {
+        Objects.requireNonNull(consumer);
+        return Composition.record("consume", this, consumer, () -> getAsDouble().thenAccept(consumer));
+    }
+    
+    /**
+     * Lift an asynchronous supplier without boxing its result. This is not an
+     * overload of {@link AsyncSupplier#map}, which an implicitly typed lambda
+     * would match as well.
+     * 
+     * @param functor The function to use in lifting.
+     * @return An asynchronous supplier which passes the result of this one
+     *         through the given function once it completes.
+     */
+    default AsyncDoubleSupplier mapDouble(DoubleUnaryOperator functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("mapDouble", this, functor, () -> getAsDouble().map(functor));
+    }
+    
+    /**
+     * Lift an asynchronous supplier.
+     * 
+     * @param <R> The new return type.
+     * @param functor The function to use in lifting.
+     * @return An asynchronous supplier which passes the result of this one
+     *         through the given function once it completes.
+     */
+    default <R> AsyncSupplier<R> mapToObj(DoubleFunction<? extends R> functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("mapToObj", this, functor, () -> getAsDouble().mapToObj(functor));
+    }
+    
+    /**
+     * @return A supplier which starts this one and waits for its result.
+     */
+    @Override
+    default DoubleSupplier join() {
+        return Composition.record("join", this, () -> getAsDouble().join());
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate from the call until the returned
+     * future completes.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default AsyncDoubleSupplier timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            DoubleFuture future;
+            try {
+                future = getAsDouble();
+            } catch (Throwable e) {
+                recorder.stop(start);
+                throw e;
+            }
+            return future.whenComplete(e -> recorder.stop(start));
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default AsyncDoubleSupplier withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return getAsDouble();
+        });
+    }
+}
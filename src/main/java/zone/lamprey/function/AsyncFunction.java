@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * A function which starts computing its result when applied and returns a
+ * {@link CompletableFuture} of it. Composing methods chain onto that future
+ * instead of waiting for it.
+ * 
+ * @param <T> The type of the input to the function.
+ * @param <R> The type of the result of the function.
+ * @see Function#asyncApply(java.util.concurrent.Executor)
+ */
+@FunctionalInterface
+public interface AsyncFunction<T, R> extends java.util.function.Function<T, CompletableFuture<R>>, Composable {
+    
+    /**
+     * Start applying this function to the given argument.
+     * 
+     * @param t The function argument.
+     * @return A future of the result.
+     */
+    @Override
+    CompletableFuture<R> apply(T t);
+    
+    /**
+     * Partially apply an asynchronous function.
+     * 
+     * @param t The argument to apply.
+     * @return An asynchronous supplier which applies this function to the
+     *         given argument.
+     */
+    default AsyncSupplier<R> applyPartial(T t) {
+        return Composition.record("applyPartial", this, t, () -> apply(t));
+    }
+    
+    /**
+     * Consume an asynchronous function.
+     * 
+     * @param consumer The consumer to use in consuming.
+     * @return A function which passes the result of this one into the given
+     *         consumer once it completes.
+     */
+    default AsyncFunction<T, Void> consume(Consumer<? super R> consumer) {
+        Objects.requireNonNull(consumer);
+        return Composition.record("consume", this, consumer, t -> apply(t).thenAccept(consumer));
+    }
+    
+    /**
+     * Lift an asynchronous function.
+     * 
+     * @param <S> The new return type.
+     * @param functor The function to use in lifting.
+     * @return An asynchronous function which passes the result of this one
+     *         through the given function once it completes.
+     * @see CompletableFuture#thenApply
+     */
+    default <S> AsyncFunction<T, S> map(Function<? super R, ? extends S> functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("map", this, functor, t -> apply(t).thenApply(functor));
+    }
+    
+    /**
+     * Chain another asynchronous step onto an asynchronous function.
+     * 
+     * @param <S> The new return type.
+     * @param functor The asynchronous function to pass the result to.
+     * @return An asynchronous function which passes the result of this one to
+     *         the given function once it completes.
+     * @see CompletableFuture#thenCompose
+     */
+    default <S> AsyncFunction<T, S> flatMap(AsyncFunction<? super R, S> functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("flatMap", this, functor, t -> apply(t).thenCompose(functor));
+    }
+    
+    /**
+     * @return A function which starts this one and waits for its result.
+     * @see CompletableFuture#join()
+     */
+    default Function<T, R> join() {
+        return Composition.record("join", this, t -> apply(t).join());
+    }
+    
+    /**
+     * Retry an asynchronous function when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return An asynchronous function which calls this one until it succeeds
+     *         or the policy gives up. Retries are scheduled without holding a
+     *         thread.
+     */
+    default AsyncFunction<T, R> retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, t -> policy.callAsync(() -> apply(t)));
+    }
+    
+    /**
+     * Coalesce concurrent calls with equal arguments. While a call is in
+     * flight, other calls with an equal argument get the same future instead
+     * of starting the same call again. Since the future is shared, completing
+     * or cancelling it affects every caller.
+     * 
+     * @return An asynchronous function which shares the futures of calls in
+     *         flight.
+     */
+    default AsyncFunction<T, R> singleFlight() {
+        SingleFlight<R> flights = new SingleFlight<>();
+        return Composition.record("singleFlight", this, t -> flights.callAsync(t, () -> apply(t)));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate from the call until the returned
+     * future completes.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default AsyncFunction<T, R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            CompletableFuture<R> future;
+            try {
+                future = apply(t);
+            } catch (Throwable e) {
+                recorder.stop(start);
+                throw e;
+            }
+            return future.whenComplete((r, e) -> recorder.stop(start));
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default AsyncFunction<T, R> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return apply(t);
+        });
+    }
+}
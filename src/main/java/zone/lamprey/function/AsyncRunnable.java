@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * An operation which starts running when called and returns a
+ * {@link CompletableFuture} which completes once it has finished.
+ * 
+ * @see Runnable#async(java.util.concurrent.Executor)
+ */
+@FunctionalInterface
+public interface AsyncRunnable extends Composable {
+    
+    /**
+     * Start running this operation.
+     * 
+     * @return A future which completes once the operation has finished.
+     */
+    CompletableFuture<Void> run();
+    
+    /**
+     * @param after The operation to run after this one.
+     * @return An asynchronous operation which runs the given operation once
+     *         this one has finished. If this one fails, the given operation is
+     *         not run.
+     * @see CompletableFuture#thenRun
+     */
+    default AsyncRunnable andThen(java.lang.Runnable after) {
+        Objects.requireNonNull(after);
+        return Composition.record("andThen", this, after, () -> run().thenRun(after));
+    }
+    
+    /**
+     * @param <T> The type of the supplied value.
+     * @param after The supplier to call after this operation.
+     * @return An asynchronous supplier which calls the given supplier once this
+     *         operation has finished.
+     */
+    default <T> AsyncSupplier<T> thenSupply(java.util.function.Supplier<? extends T> after) {
+        Objects.requireNonNull(after);
+        return Composition.record("thenSupply", this, after, () -> run().thenApply(ignored -> after.get()));
+    }
+    
+    /**
+     * @return A Runnable which starts this operation and waits for it to
+     *         finish.
+     * @see CompletableFuture#join()
+     */
+    default Runnable join() {
+        return Composition.record("join", this, () -> run().join());
+    }
+    
+    /**
+     * Retry an asynchronous operation when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return An asynchronous operation which runs this one until it succeeds
+     *         or the policy gives up. Retries are scheduled without holding a
+     *         thread.
+     */
+    default AsyncRunnable retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, () -> policy.callAsync(this::run));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate from the call until the returned
+     * future completes.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default AsyncRunnable timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            CompletableFuture<Void> future;
+            try {
+                future = run();
+            } catch (Throwable e) {
+                recorder.stop(start);
+                throw e;
+            }
+            return future.whenComplete((r, e) -> recorder.stop(start));
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default AsyncRunnable withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return run();
+        });
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * A supplier which starts computing its result when called and returns a
+ * {@link CompletableFuture} of it. Composing methods chain onto that future
+ * instead of waiting for it, so a pipeline built on an asynchronous supplier
+ * stays asynchronous until {@link #join()}.
+ * 
+ * @param <T> The type of the result.
+ * @see Supplier#async(java.util.concurrent.Executor)
+ */
+@FunctionalInterface
+public interface AsyncSupplier<T> extends java.util.function.Supplier<CompletableFuture<T>>, Composable {
+    
+    /**
+     * Start computing a result.
+     * 
+     * @return A future of the result.
+     */
+    @Override
+    CompletableFuture<T> get();
+    
+    /**
+     * Consume an asynchronous supplier.
+     * 
+     * @param consumer The consumer to use in consuming.
+     * @return An AsyncRunnable which passes the result of this supplier into
+     *         the given consumer once it completes.
+     */
+    default AsyncRunnable consume(Consumer<? super T> consumer) {
+        Objects.requireNonNull(consumer);
+        return Composition.record("consume", this, consumer, () -> get().thenAccept(consumer));
+    }
+    
+    /**
+     * Lift an asynchronous supplier.
+     * 
+     * @param <R> The new return type.
+     * @param functor The function to use in lifting.
+     * @return An asynchronous supplier which passes the result of this one
+     *         through the given function once it completes.
+     * @see CompletableFuture#thenApply
+     */
+    default <R> AsyncSupplier<R> map(Function<? super T, ? extends R> functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("map", this, functor, () -> get().thenApply(functor));
+    }
+    
+    /**
+     * Chain another asynchronous step onto an asynchronous supplier.
+     * 
+     * @param <R> The new return type.
+     * @param functor The asynchronous function to pass the result to.
+     * @return An asynchronous supplier which passes the result of this one to
+     *         the given function once it completes.
+     * @see CompletableFuture#thenCompose
+     */
+    default <R> AsyncSupplier<R> flatMap(AsyncFunction<? super T, R> functor) {
+        Objects.requireNonNull(functor);
+        return Composition.record("flatMap", this, functor, () -> get().thenCompose(functor));
+    }
+    
+    /**
+     * @return A supplier which starts this one and waits for its result.
+     * @see CompletableFuture#join()
+     */
+    default Supplier<T> join() {
+        return Composition.record("join", this, () -> get().join());
+    }
+    
+    /**
+     * Retry an asynchronous supplier when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return An asynchronous supplier which calls this one until it succeeds
+     *         or the policy gives up. Retries are scheduled without holding a
+     *         thread.
+     */
+    default AsyncSupplier<T> retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, () -> policy.callAsync(this));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate from the call until the returned
+     * future completes.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default AsyncSupplier<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            CompletableFuture<T> future;
+            try {
+                future = get();
+            } catch (Throwable e) {
+                recorder.stop(start);
+                throw e;
+            }
+            return future.whenComplete((r, e) -> recorder.stop(start));
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default AsyncSupplier<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return get();
+        });
+    }
+}
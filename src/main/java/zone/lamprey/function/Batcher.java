@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gathers concurrent single-key calls into bulk calls. The first caller to
+ * arrive opens a batch and waits for up to the maximum delay for others to
+ * join it, or until it is full, and then makes the bulk call on its own
+ * thread. If the batch fills up first, the caller which filled it makes the
+ * call straight away. Callers with equal keys in the same batch share one
+ * entry in it.
+ * 
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class Batcher<K, V> {
+    
+    private final java.util.function.Function<? super List<K>, ? extends Map<K, ? extends V>> bulk;
+    private final int                                                                        maxBatch;
+    private final long                                                                       maxDelay;
+    private Batch                                                                            open;
+    
+    Batcher(java.util.function.Function<? super List<K>, ? extends Map<K, ? extends V>> bulk, int maxBatch, long maxDelay) {
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("Batches must hold at least one key: " + maxBatch);
+        if (maxDelay < 0)
+            throw new IllegalArgumentException("Delay must not be negative: " + maxDelay);
+        this.bulk = bulk;
+        this.maxBatch = maxBatch;
+        this.maxDelay = maxDelay;
+    }
+    
+    /**
+     * @param key The key to look up.
+     * @return The value the bulk call returned for the key, or null if it
+     *         returned none.
+     */
+    V get(K key) {
+        Batch batch;
+        CompletableFuture<V> value;
+        boolean leader = false;
+        boolean full = false;
+        synchronized (this) {
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            value = batch.values.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.values.size() >= maxBatch) {
+                open = null;
+                full = true;
+            }
+        }
+        if (full) {
+            batch.filled.countDown();
+            batch.dispatch();
+        } else if (leader) {
+            try {
+                batch.filled.await(maxDelay, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (open == batch)
+                    open = null;
+            }
+            batch.dispatch();
+        }
+        return SingleFlight.join(value);
+    }
+    
+    /**
+     * The keys gathered for one bulk call, and the futures of their values.
+     */
+    private final class Batch {
+        private final Map<K, CompletableFuture<V>> values     = new LinkedHashMap<>();
+        private final CountDownLatch               filled     = new CountDownLatch(1);
+        private final AtomicBoolean                dispatched = new AtomicBoolean();
+        
+        void dispatch() {
+            if (!dispatched.compareAndSet(false, true))
+                return;
+            // The batch is closed by now, so its keys no longer change.
+            List<K> keys;
+            synchronized (Batcher.this) {
+                keys = new ArrayList<>(values.keySet());
+            }
+            Map<K, ? extends V> results;
+            try {
+                results = bulk.apply(keys);
+            } catch (Throwable e) {
+                for (CompletableFuture<V> value : values.values())
+                    value.completeExceptionally(e);
+                return;
+            }
+            for (Map.Entry<K, CompletableFuture<V>> entry : values.entrySet())
+                entry.getValue().complete(results == null ? null : results.get(entry.getKey()));
+        }
+    }
+}
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation that accepts two input arguments and returns no
  * result. This is the two-arity specialization of {@link Consumer}. Unlike most
@@ -42,7 +46,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
+public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U>, Composable {
     
     /**
      * Performs this operation on the given arguments.
@@ -68,10 +72,11 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
     default BiConsumer<T, U> andThen(BiConsumer<? super T, ? super U> after) {
         Objects.requireNonNull(after);
         
-        return (l, r) -> {
+        return Composition.record("andThen", this, after, (l, r) -> {
             accept(l, r);
+            Composition.checkDeadline();
             after.accept(l, r);
-        };
+        });
     }
     
     /**
@@ -89,10 +94,11 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
     default BiConsumer<T, U> andThenL(Consumer<? super T> after) {
         Objects.requireNonNull(after);
         
-        return (l, r) -> {
+        return Composition.record("andThenL", this, after, (l, r) -> {
             accept(l, r);
+            Composition.checkDeadline();
             after.accept(l);
-        };
+        });
     }
     
     /**
@@ -110,10 +116,11 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
     default BiConsumer<T, U> andThenR(Consumer<? super U> after) {
         Objects.requireNonNull(after);
         
-        return (l, r) -> {
+        return Composition.record("andThenR", this, after, (l, r) -> {
             accept(l, r);
+            Composition.checkDeadline();
             after.accept(r);
-        };
+        });
     }
     
     /**
@@ -125,7 +132,7 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
      * @return A partially-applied function.
      */
     default Runnable applyPartial(T t, U u) {
-        return () -> accept(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> accept(t, u));
     }
     
     /**
@@ -136,7 +143,7 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
      * @return the function result
      */
     default Consumer<U> applyPartialL(T t) {
-        return u -> accept(t, u);
+        return Composition.record("applyPartialL", this, t, u -> accept(t, u));
     }
     
     /**
@@ -147,6 +154,41 @@ public interface BiConsumer<T, U> extends java.util.function.BiConsumer<T, U> {
      * @return the function result
      */
     default Consumer<T> applyPartialR(U u) {
-        return t -> accept(t, u);
+        return Composition.record("applyPartialR", this, u, t -> accept(t, u));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default BiConsumer<T, U> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                accept(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default BiConsumer<T, U> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            accept(t, u);
+        });
     }
 }
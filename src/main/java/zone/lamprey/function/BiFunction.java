@@ -23,8 +23,17 @@
  */
 package zone.lamprey.function;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.FanOut;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts two arguments and produces a result. This
  * is the two-arity specialization of {@link Function}.
@@ -41,7 +50,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U, R> {
+public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U, R>, Composable {
     
     /**
      * Applies this function to the given arguments.
@@ -62,7 +71,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      * @return the function result
      */
     default Supplier<R> applyPartial(T t, U u) {
-        return () -> apply(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> apply(t, u));
     }
     
     /**
@@ -73,7 +82,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      * @return the function result
      */
     default Function<U, R> applyPartialL(T t) {
-        return u -> apply(t, u);
+        return Composition.record("applyPartialL", this, t, u -> apply(t, u));
     }
     
     /**
@@ -84,7 +93,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      * @return the function result
      */
     default Function<T, R> applyPartialR(U u) {
-        return t -> apply(t, u);
+        return Composition.record("applyPartialR", this, u, t -> apply(t, u));
     }
     
     /**
@@ -96,7 +105,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default BiConsumer<T, U> consume(Consumer<R> consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(apply(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(apply(t, u))));
     }
     
     /**
@@ -108,7 +117,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default BiPredicate<T, U> predicate(Predicate<? super R> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.test(apply(t, u));
+        return Composition.record("predicate", this, functor, (t, u) -> functor.test(apply(t, u)));
     }
     
     /**
@@ -121,7 +130,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default <S> BiFunction<T, U, S> map(Function<? super R, ? extends S> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(apply(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.apply(Composition.checked(apply(t, u))));
     }
     
     /**
@@ -133,7 +142,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default ToDoubleBiFunction<T, U> mapToDouble(ToDoubleFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsDouble(apply(t, u));
+        return Composition.record("mapToDouble", this, functor, (t, u) -> functor.applyAsDouble(Composition.checked(apply(t, u))));
     }
     
     /**
@@ -145,7 +154,7 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default ToIntBiFunction<T, U> mapToInt(ToIntFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsInt(apply(t, u));
+        return Composition.record("mapToInt", this, functor, (t, u) -> functor.applyAsInt(Composition.checked(apply(t, u))));
     }
     
     /**
@@ -157,6 +166,87 @@ public interface BiFunction<T, U, R> extends java.util.function.BiFunction<T, U,
      */
     default ToLongBiFunction<T, U> mapToLong(ToLongFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsLong(apply(t, u));
+        return Composition.record("mapToLong", this, functor, (t, u) -> functor.applyAsLong(Composition.checked(apply(t, u))));
+    }
+    
+    /**
+     * Fan a function out over batches of arguments. See {@link FanOut}.
+     * 
+     * @return A function which applies this one to each pair of elements at
+     *         the same position in two lists, all concurrently, and returns the
+     *         results in the same order. As soon as one call fails the others
+     *         are cancelled and the failure is thrown.
+     */
+    default BiFunction<List<? extends T>, List<? extends U>, List<R>> fanOut() {
+        return Composition.record("fanOut", this, (ts, us) -> {
+            if (ts.size() != us.size())
+                throw new IllegalArgumentException("Batches differ in size: " + ts.size() + " and " + us.size());
+            List<java.util.function.Supplier<R>> calls = new ArrayList<>(ts.size());
+            for (int i = 0; i < ts.size(); i++) {
+                T t = ts.get(i);
+                U u = us.get(i);
+                calls.add(() -> apply(t, u));
+            }
+            return FanOut.fanOut(calls);
+        });
+    }
+    
+    /**
+     * Retry a function when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return A function which calls this one until it succeeds or the policy
+     *         gives up.
+     */
+    default BiFunction<T, U, R> retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, (t, u) -> policy.call(() -> apply(t, u)));
+    }
+    
+    /**
+     * Coalesce concurrent calls with equal arguments. While a call is in
+     * flight, other calls with equal arguments wait for its result instead of
+     * making the same call again.
+     * 
+     * @return A function which shares the outcome of calls in flight.
+     */
+    default BiFunction<T, U, R> singleFlight() {
+        SingleFlight<R> flights = new SingleFlight<>();
+        return Composition.record("singleFlight", this, (t, u) -> flights.call(Arrays.asList(t, u), () -> apply(t, u)));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default BiFunction<T, U, R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return apply(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default BiFunction<T, U, R> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return apply(t, u);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a predicate (boolean-valued function) of two arguments. This is
  * the two-arity specialization of {@link Predicate}.
@@ -75,7 +79,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     @Override
     default BooleanSupplier applyPartial(T t, U u) {
-        return () -> test(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> test(t, u));
     }
     
     /**
@@ -87,7 +91,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     @Override
     default Predicate<U> applyPartialL(T t) {
-        return u -> test(t, u);
+        return Composition.record("applyPartialL", this, t, u -> test(t, u));
     }
     
     /**
@@ -99,7 +103,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     @Override
     default Predicate<T> applyPartialR(U u) {
-        return t -> test(t, u);
+        return Composition.record("applyPartialR", this, u, t -> test(t, u));
     }
     
     /**
@@ -120,7 +124,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     default BiPredicate<T, U> and(BiPredicate<? super T, ? super U> other) {
         Objects.requireNonNull(other);
-        return (T t, U u) -> test(t, u) && other.test(t, u);
+        return Composition.record("and", this, other, (T t, U u) -> test(t, u) && other.test(t, u));
     }
     
     /**
@@ -132,7 +136,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     default BiPredicate<T, U> map(UnaryOperator<Boolean> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(test(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.apply(Composition.checked(test(t, u))));
     }
     
     /**
@@ -142,7 +146,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     @Override
     default BiPredicate<T, U> negate() {
-        return (T t, U u) -> !test(t, u);
+        return Composition.record("negate", this, (T t, U u) -> !test(t, u));
     }
     
     /**
@@ -162,7 +166,7 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
      */
     default BiPredicate<T, U> or(BiPredicate<? super T, ? super U> other) {
         Objects.requireNonNull(other);
-        return (T t, U u) -> test(t, u) || other.test(t, u);
+        return Composition.record("or", this, other, (T t, U u) -> test(t, u) || other.test(t, u));
     }
     
     /**
@@ -220,4 +224,39 @@ public interface BiPredicate<T, U> extends BiFunction<T, U, Boolean>, java.util.
     static <T, U> BiPredicate<T, U> alwaysFalse() {
         return (t, u) -> false;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default BiPredicate<T, U> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return test(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default BiPredicate<T, U> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return test(t, u);
+        });
+    }
 }
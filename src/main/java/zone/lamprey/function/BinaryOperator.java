@@ -26,6 +26,10 @@ package zone.lamprey.function;
 import java.util.Comparator;
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation upon two operands of the same type, producing a
  * result of the same type as the operands. This is a specialization of
@@ -54,7 +58,7 @@ public interface BinaryOperator<T> extends BiFunction<T, T, T>, java.util.functi
      */
     @Override
     default UnaryOperator<T> applyPartialL(T t) {
-        return u -> apply(t, u);
+        return Composition.record("applyPartialL", this, t, u -> apply(t, u));
     }
     
     /**
@@ -66,7 +70,7 @@ public interface BinaryOperator<T> extends BiFunction<T, T, T>, java.util.functi
      */
     @Override
     default UnaryOperator<T> applyPartialR(T u) {
-        return t -> apply(t, u);
+        return Composition.record("applyPartialR", this, u, t -> apply(t, u));
     }
     
     /**
@@ -108,6 +112,41 @@ public interface BinaryOperator<T> extends BiFunction<T, T, T>, java.util.functi
      */
     default BinaryOperator<T> map(UnaryOperator<T> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(apply(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.apply(Composition.checked(apply(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default BinaryOperator<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return apply(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default BinaryOperator<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return apply(t, u);
+        });
     }
 }
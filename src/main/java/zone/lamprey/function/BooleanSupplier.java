@@ -23,6 +23,14 @@
  */
 package zone.lamprey.function;
 
+import java.util.Objects;
+
+import zone.lamprey.function.concurrent.CancellationToken;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.WaitStrategy;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a supplier of {@code boolean}-valued results. This is the
  * {@code boolean}-producing primitive specialization of {@link Supplier}.
@@ -56,4 +64,74 @@ public interface BooleanSupplier extends Supplier<Boolean>, java.util.function.B
     default Boolean get() {
         return getAsBoolean();
     }
+    
+    /**
+     * Run this as the body of a polling loop, which reports whether it found
+     * any work to do. The loop calls it until the given token is cancelled.
+     * After each call which returns false, the loop waits with the given
+     * strategy, which backs off the longer it stays idle. A call which returns
+     * true resets the back-off, so a busy loop never waits at all.
+     * 
+     * <pre>{@code
+     *     BooleanSupplier drain = () -> queue.drainTo(batch) > 0 && handle(batch);
+     *     executor.execute(drain.poll(stop, WaitStrategy.PARK));
+     * }</pre>
+     * 
+     * @param cancel The token to stop the loop with.
+     * @param idle How to wait after a call which found no work.
+     * @return A Runnable which runs the polling loop. The token is checked
+     *         before each call, as is the calling thread's {@link Deadline} if
+     *         it has one.
+     */
+    default Runnable poll(CancellationToken cancel, WaitStrategy idle) {
+        Objects.requireNonNull(cancel);
+        Objects.requireNonNull(idle);
+        return Composition.record("poll", this, cancel, idle, () -> {
+            Deadline deadline = Deadline.current();
+            int idleCalls = 0;
+            while (!cancel.isCancelled()) {
+                if (deadline != null)
+                    deadline.check();
+                if (getAsBoolean())
+                    idleCalls = 0;
+                else
+                    idle.idle(idleCalls < Integer.MAX_VALUE ? ++idleCalls : idleCalls);
+            }
+        });
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default BooleanSupplier timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                return getAsBoolean();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default BooleanSupplier withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return getAsBoolean();
+        });
+    }
 }
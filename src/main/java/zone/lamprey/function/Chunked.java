@@ -0,0 +1,389 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongToIntFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import zone.lamprey.function.concurrent.Deadline;
+
+/**
+ * Runs a supplier pipeline, such as
+ * {@code source.map(f).mapToObj(g).consume(sink).loopFor(n)}, a chunk at a time
+ * rather than an element at a time. The pipeline is taken apart using the
+ * compositions recorded for it: the chunk is filled from the innermost
+ * supplier which is not itself a recognized {@code map} or {@code mapToX} of
+ * another, each stage is then applied over the whole chunk in turn, and the
+ * chunk is handed to the sink. Each stage is a tight loop over a primitive or
+ * object array, which the JIT can unroll and, for simple arithmetic,
+ * vectorize.
+ * 
+ * <p>
+ * Every stage still sees the same values in the same order, but all of the
+ * calls to one stage for a chunk happen before any calls to the next, so
+ * stages must not depend on each other's side effects.
+ */
+final class Chunked {
+    
+    private static final int DOUBLE = 0;
+    private static final int INT    = 1;
+    private static final int LONG   = 2;
+    private static final int OBJECT = 3;
+    
+    private final Object  source;
+    private final int     sourceType;
+    private final Step[]  steps;
+    private final int     resultType;
+    private final int     chunkSize;
+    
+    private Chunked(Object source, int sourceType, Step[] steps, int resultType, int chunkSize) {
+        this.source = source;
+        this.sourceType = sourceType;
+        this.steps = steps;
+        this.resultType = resultType;
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * @param chunkSize The most elements in a chunk.
+     * @throws IllegalArgumentException If it is not positive.
+     */
+    static void check(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunks must hold at least one element: " + chunkSize);
+    }
+    
+    /**
+     * @param runnable A runnable built by {@code consume(sink).loopFor(n)} on
+     *            a supplier.
+     * @param chunkSize The most elements in a chunk.
+     * @return A runnable which runs the same loop in chunks, or null if the
+     *         runnable was not built that way.
+     */
+    static Runnable loop(Runnable runnable, int chunkSize) {
+        Composition loop = Composition.of(runnable);
+        if (loop == null || !loop.kind().equals("loopFor") || !(loop.arguments()[0] instanceof Integer))
+            return null;
+        Composition consume = Composition.of(loop.source());
+        if (consume == null || !consume.kind().equals("consume"))
+            return null;
+        Chunked plan = plan(consume.source(), chunkSize);
+        if (plan == null)
+            return null;
+        int times = (Integer) loop.arguments()[0];
+        Sink sink = plan.sink(consume.arguments()[0]);
+        return () -> plan.run(times, sink);
+    }
+    
+    /**
+     * @param <T> the type of the results
+     * @param supplier The supplier.
+     * @param times The number of results to get.
+     * @param chunkSize The most results in a chunk.
+     * @param bulk The consumer to hand each chunk to.
+     * @return A runnable which gets the given number of results, in chunks if
+     *         the supplier is a recognized pipeline.
+     */
+    static <T> Runnable consume(Supplier<T> supplier, int times, int chunkSize, java.util.function.Consumer<? super List<T>> bulk) {
+        Chunked plan = plan(supplier, chunkSize);
+        if (plan == null)
+            plan = new Chunked(supplier, OBJECT, new Step[0], OBJECT, chunkSize);
+        Chunked chunked = plan;
+        Sink sink = (columns, n) -> {
+            if (chunked.resultType != OBJECT)
+                for (int k = 0; k < n; k++)
+                    columns.o[k] = columns.boxed(chunked.resultType, k);
+            @SuppressWarnings("unchecked")
+            List<T> chunk = (List<T>) Arrays.asList(columns.o).subList(0, n);
+            bulk.accept(chunk);
+        };
+        return () -> chunked.run(times, sink);
+    }
+    
+    private static Chunked plan(Object supplier, int chunkSize) {
+        int resultType = type(supplier);
+        if (resultType < 0)
+            return null;
+        List<Step> steps = new ArrayList<>();
+        Object node = supplier;
+        for (;;) {
+            Composition composition = Composition.of(node);
+            Step step = composition == null ? null : step(composition, node);
+            if (step == null)
+                break;
+            steps.add(step);
+            node = composition.source();
+        }
+        if (steps.isEmpty())
+            return null;
+        Step[] ordered = new Step[steps.size()];
+        for (int i = 0; i < ordered.length; i++)
+            ordered[i] = steps.get(ordered.length - 1 - i);
+        return new Chunked(node, type(node), ordered, resultType, chunkSize);
+    }
+    
+    private static int type(Object supplier) {
+        if (supplier instanceof DoubleSupplier)
+            return DOUBLE;
+        if (supplier instanceof IntSupplier)
+            return INT;
+        if (supplier instanceof LongSupplier)
+            return LONG;
+        if (supplier instanceof Supplier)
+            return OBJECT;
+        return -1;
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Step step(Composition composition, Object node) {
+        if (composition.arguments().length != 1)
+            return null;
+        Object f = composition.arguments()[0];
+        int in = type(composition.source());
+        int out = type(node);
+        switch (composition.kind()) {
+        case "map":
+            if (in == DOUBLE && out == DOUBLE && f instanceof DoubleUnaryOperator)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.d[k] = ((DoubleUnaryOperator) f).applyAsDouble(c.d[k]);
+                };
+            if (in == INT && out == INT && f instanceof IntUnaryOperator)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.i[k] = ((IntUnaryOperator) f).applyAsInt(c.i[k]);
+                };
+            if (in == LONG && out == LONG && f instanceof LongUnaryOperator)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.l[k] = ((LongUnaryOperator) f).applyAsLong(c.l[k]);
+                };
+            if (in == OBJECT && out == OBJECT && f instanceof Function)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.o[k] = ((Function) f).apply(c.o[k]);
+                };
+            return null;
+        case "mapToObj":
+            if (out != OBJECT)
+                return null;
+            if (in == DOUBLE && f instanceof DoubleFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.o[k] = ((DoubleFunction) f).apply(c.d[k]);
+                };
+            if (in == INT && f instanceof IntFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.o[k] = ((IntFunction) f).apply(c.i[k]);
+                };
+            if (in == LONG && f instanceof LongFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.o[k] = ((LongFunction) f).apply(c.l[k]);
+                };
+            return null;
+        case "mapToDouble":
+            if (out != DOUBLE)
+                return null;
+            if (in == INT && f instanceof IntToDoubleFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.d[k] = ((IntToDoubleFunction) f).applyAsDouble(c.i[k]);
+                };
+            if (in == LONG && f instanceof LongToDoubleFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.d[k] = ((LongToDoubleFunction) f).applyAsDouble(c.l[k]);
+                };
+            if (in == OBJECT && f instanceof ToDoubleFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.d[k] = ((ToDoubleFunction) f).applyAsDouble(c.o[k]);
+                };
+            return null;
+        case "mapToInt":
+            if (out != INT)
+                return null;
+            if (in == DOUBLE && f instanceof DoubleToIntFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.i[k] = ((DoubleToIntFunction) f).applyAsInt(c.d[k]);
+                };
+            if (in == LONG && f instanceof LongToIntFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.i[k] = ((LongToIntFunction) f).applyAsInt(c.l[k]);
+                };
+            if (in == OBJECT && f instanceof ToIntFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.i[k] = ((ToIntFunction) f).applyAsInt(c.o[k]);
+                };
+            return null;
+        case "mapToLong":
+            if (out != LONG)
+                return null;
+            if (in == DOUBLE && f instanceof DoubleToLongFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.l[k] = ((DoubleToLongFunction) f).applyAsLong(c.d[k]);
+                };
+            if (in == INT && f instanceof IntToLongFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.l[k] = ((IntToLongFunction) f).applyAsLong(c.i[k]);
+                };
+            if (in == OBJECT && f instanceof ToLongFunction)
+                return (c, n) -> {
+                    for (int k = 0; k < n; k++)
+                        c.l[k] = ((ToLongFunction) f).applyAsLong(c.o[k]);
+                };
+            return null;
+        default:
+            return null;
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Sink sink(Object consumer) {
+        if (resultType == DOUBLE && consumer instanceof java.util.function.DoubleConsumer)
+            return (c, n) -> {
+                for (int k = 0; k < n; k++)
+                    ((java.util.function.DoubleConsumer) consumer).accept(c.d[k]);
+            };
+        if (resultType == INT && consumer instanceof java.util.function.IntConsumer)
+            return (c, n) -> {
+                for (int k = 0; k < n; k++)
+                    ((java.util.function.IntConsumer) consumer).accept(c.i[k]);
+            };
+        if (resultType == LONG && consumer instanceof java.util.function.LongConsumer)
+            return (c, n) -> {
+                for (int k = 0; k < n; k++)
+                    ((java.util.function.LongConsumer) consumer).accept(c.l[k]);
+            };
+        return (c, n) -> {
+            for (int k = 0; k < n; k++)
+                ((java.util.function.Consumer) consumer).accept(c.boxed(resultType, k));
+        };
+    }
+    
+    private void run(int times, Sink sink) {
+        Deadline deadline = Deadline.current();
+        Columns columns = new Columns(Math.min(chunkSize, Math.max(times, 0)));
+        for (int done = 0; done < times;) {
+            if (deadline != null)
+                deadline.check();
+            int n = Math.min(chunkSize, times - done);
+            fill(columns, n);
+            for (Step step : steps)
+                step.apply(columns, n);
+            sink.accept(columns, n);
+            done += n;
+        }
+    }
+    
+    private void fill(Columns c, int n) {
+        switch (sourceType) {
+        case DOUBLE:
+            for (int k = 0; k < n; k++)
+                c.d[k] = ((java.util.function.DoubleSupplier) source).getAsDouble();
+            break;
+        case INT:
+            for (int k = 0; k < n; k++)
+                c.i[k] = ((java.util.function.IntSupplier) source).getAsInt();
+            break;
+        case LONG:
+            for (int k = 0; k < n; k++)
+                c.l[k] = ((java.util.function.LongSupplier) source).getAsLong();
+            break;
+        default:
+            for (int k = 0; k < n; k++)
+                c.o[k] = ((java.util.function.Supplier<?>) source).get();
+            break;
+        }
+    }
+    
+    /**
+     * One array of each element type, each as long as a chunk. A stage reads
+     * the array of its input type and writes the array of its output type.
+     */
+    private static final class Columns {
+        final double[] d;
+        final int[]    i;
+        final long[]   l;
+        final Object[] o;
+        
+        Columns(int size) {
+            d = new double[size];
+            i = new int[size];
+            l = new long[size];
+            o = new Object[size];
+        }
+        
+        Object boxed(int type, int k) {
+            switch (type) {
+            case DOUBLE:
+                return d[k];
+            case INT:
+                return i[k];
+            case LONG:
+                return l[k];
+            default:
+                return o[k];
+            }
+        }
+    }
+    
+    /**
+     * Transforms the first elements of the columns.
+     */
+    @FunctionalInterface
+    private interface Step {
+        void apply(Columns columns, int n);
+    }
+    
+    /**
+     * Consumes the first elements of the result column.
+     */
+    @FunctionalInterface
+    private interface Sink {
+        void accept(Columns columns, int n);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+/**
+ * A {@link Consumer} which hands its elements to threads of its own, such as
+ * one made by {@link Consumer#async}. Closing it stops those threads once the
+ * elements already accepted have been consumed.
+ * 
+ * <pre>{@code
+ *     try (CloseableConsumer<Event> publish = journal.async(1024, WaitStrategy.PARK)) {
+ *         events.forEach(publish);
+ *     }
+ * }</pre>
+ * 
+ * @param <T> the type of the elements
+ */
+public interface CloseableConsumer<T> extends Consumer<T>, AutoCloseable {
+    
+    /**
+     * Stop accepting elements, wait for the ones already accepted to be
+     * consumed, and stop the consuming threads. Later calls to
+     * {@code accept} throw an {@link IllegalStateException}.
+     * 
+     * @throws java.util.concurrent.CancellationException If the calling thread
+     *             is interrupted while waiting.
+     */
+    @Override
+    void close();
+}
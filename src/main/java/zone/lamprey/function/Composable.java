@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * The common parent of every functional interface in this package. Each of
+ * them implements every method declared here, so this doesn't change what any
+ * of them can be implemented with.
+ */
+public interface Composable {
+    
+    /**
+     * Describe how this function was composed. Functions built by composing
+     * methods such as {@code map}, {@code applyPartialL}, {@code andThen} or
+     * {@code whileTrue} describe themselves as a tree of the stages they were
+     * built from. Anything else is described as a single stage.
+     * 
+     * @return A description of this function.
+     */
+    default Stage describe() {
+        return Stage.of(this);
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate. Every functional interface in this
+     * package overrides this to return its own type.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    Composable timed(Recorder recorder);
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call. Every functional interface in this package overrides
+     * this to return its own type.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    Composable withinDeadline();
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import zone.lamprey.function.concurrent.Deadline;
+
+/**
+ * Records how a composed functional interface was built. While recording is
+ * {@link Stage#setRecording(boolean) on}, every composing default method in
+ * this package ({@code map}, {@code andThen}, {@code applyPartial}, and so on)
+ * registers the lambda it returns here along with the receiver it was called
+ * on and the arguments it was given. While it is off, composing costs one
+ * volatile read.
+ * 
+ * <p>
+ * Composed instances are held weakly and compared by identity, so recording
+ * a composition never keeps it alive and never calls its {@code equals}. The
+ * functions a composition was built from are held weakly too, since the
+ * composed instance captures them anyway, so an unused chain is released by a
+ * single garbage collection. Recording takes no lock: the table is a
+ * concurrent map, and entries whose composed instance was collected are
+ * removed on the next recording or lookup.
+ */
+final class Composition {
+    
+    private static final Object[]                         NO_ARGUMENTS = {};
+    private static final ConcurrentHashMap<Object, Entry> RECORDED     = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object>           COLLECTED    = new ReferenceQueue<>();
+    private static final Object                           CLEARED      = new Object();
+    
+    /**
+     * The composing methods which give the function they return state of its
+     * own, such as a cache or a consumer thread.
+     */
+    private static final Set<String> STATEFUL = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("async", "partitioned", "memoized", "singleFlight")));
+    
+    private static volatile boolean recording = Boolean.getBoolean(Stage.RECORDING_PROPERTY);
+    
+    private final String   kind;
+    private final Object   source;
+    private final Object[] arguments;
+    
+    private Composition(String kind, Object source, Object[] arguments) {
+        this.kind = kind;
+        this.source = source;
+        this.arguments = arguments;
+    }
+    
+    /**
+     * @param function A functional interface instance.
+     * @return The recorded composition of the given function, or null if it was
+     *         not produced by a composing method of this package while
+     *         recording was on.
+     */
+    static Composition of(Object function) {
+        if (function == null || RECORDED.isEmpty())
+            return null;
+        expungeStaleEntries();
+        Entry entry = RECORDED.get(new Probe(function));
+        return entry == null ? null : entry.resolve();
+    }
+    
+    /**
+     * @return True if compositions are being recorded.
+     */
+    static boolean isRecording() {
+        return recording;
+    }
+    
+    /**
+     * @param on Whether to record compositions from now on.
+     */
+    static void setRecording(boolean on) {
+        recording = on;
+    }
+    
+    /**
+     * @return The name of the method which produced the composition.
+     */
+    String kind() {
+        return kind;
+    }
+    
+    /**
+     * @return True if the composing method gave the composed function state of
+     *         its own, which another function composed the same way would not
+     *         share.
+     */
+    boolean isStateful() {
+        return STATEFUL.contains(kind);
+    }
+    
+    /**
+     * @return The instance the composing method was called on.
+     */
+    Object source() {
+        return source;
+    }
+    
+    /**
+     * @return The arguments passed to the composing method. The returned array
+     *         must not be modified.
+     */
+    Object[] arguments() {
+        return arguments;
+    }
+    
+    /**
+     * Check the {@link Deadline} of the calling thread between two stages of a
+     * composed function, so that the later stage is skipped once it has
+     * passed.
+     */
+    static void checkDeadline() {
+        Deadline.checkCurrent();
+    }
+    
+    /**
+     * Pass the result of one stage of a composed function on to the next,
+     * checking the {@link Deadline} of the calling thread in between.
+     *
+     * @param <T> The type of the result.
+     * @param result The result of the earlier stage.
+     * @return The result.
+     */
+    static <T> T checked(T result) {
+        Deadline.checkCurrent();
+        return result;
+    }
+    
+    /**
+     * @param result The result of the earlier stage.
+     * @return The result.
+     * @see #checked(Object)
+     */
+    static int checked(int result) {
+        Deadline.checkCurrent();
+        return result;
+    }
+    
+    /**
+     * @param result The result of the earlier stage.
+     * @return The result.
+     * @see #checked(Object)
+     */
+    static long checked(long result) {
+        Deadline.checkCurrent();
+        return result;
+    }
+    
+    /**
+     * @param result The result of the earlier stage.
+     * @return The result.
+     * @see #checked(Object)
+     */
+    static double checked(double result) {
+        Deadline.checkCurrent();
+        return result;
+    }
+    
+    /**
+     * @param result The result of the earlier stage.
+     * @return The result.
+     * @see #checked(Object)
+     */
+    static boolean checked(boolean result) {
+        Deadline.checkCurrent();
+        return result;
+    }
+    
+    /**
+     * Record a composition which takes no arguments.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F record(String kind, Object source, F composed) {
+        return recording ? register(composed, new Entry(kind, source, NO_ARGUMENTS)) : composed;
+    }
+    
+    /**
+     * Record a composition which takes one argument.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param a The argument to the composing method.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F record(String kind, Object source, Object a, F composed) {
+        return recording ? register(composed, new Entry(kind, source, new Object[] { a })) : composed;
+    }
+    
+    /**
+     * Record a composition which takes two arguments.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param a The first argument to the composing method.
+     * @param b The second argument to the composing method.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F record(String kind, Object source, Object a, Object b, F composed) {
+        return recording ? register(composed, new Entry(kind, source, new Object[] { a, b })) : composed;
+    }
+    
+    /**
+     * Record a composition which takes three arguments.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param a The first argument to the composing method.
+     * @param b The second argument to the composing method.
+     * @param c The third argument to the composing method.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F record(String kind, Object source, Object a, Object b, Object c, F composed) {
+        return recording ? register(composed, new Entry(kind, source, new Object[] { a, b, c })) : composed;
+    }
+    
+    /**
+     * Record a composition which takes four arguments.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param a The first argument to the composing method.
+     * @param b The second argument to the composing method.
+     * @param c The third argument to the composing method.
+     * @param d The fourth argument to the composing method.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F record(String kind, Object source, Object a, Object b, Object c, Object d, F composed) {
+        return recording ? register(composed, new Entry(kind, source, new Object[] { a, b, c, d })) : composed;
+    }
+    
+    /**
+     * Record a composition of a flat sequence of steps, such as a chain of
+     * {@code andThen} calls, as a single composition whose source is the first
+     * step and whose arguments are the others. The array is shared rather
+     * than copied, and held weakly as a whole, so recording a sequence one step
+     * longer than the last takes constant time.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param steps The steps, which must not be modified below the given
+     *            length.
+     * @param length The number of steps, at least one.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F recordSteps(String kind, Object[] steps, int length, F composed) {
+        return recording ? register(composed, new Entry(kind, steps, length)) : composed;
+    }
+    
+    /**
+     * Record a composition whose composed function was rebuilt from the
+     * stages of its source rather than calling it, and so does not keep it
+     * alive. Its parts are held strongly until the composed function is
+     * collected.
+     *
+     * @param <F> The type of the composed function.
+     * @param kind The name of the composing method.
+     * @param source The instance the composing method was called on.
+     * @param arguments The arguments to the composing method.
+     * @param composed The composed function.
+     * @return The composed function.
+     */
+    static <F> F recordRebuilt(String kind, Object source, Object[] arguments, F composed) {
+        return recording ? register(composed, new Entry(kind, source, arguments, false)) : composed;
+    }
+    
+    private static <F> F register(F composed, Entry entry) {
+        // A method which returned its receiver did not compose anything
+        if (entry.returnedSource(composed))
+            return composed;
+        expungeStaleEntries();
+        RECORDED.put(new Recorded(composed, COLLECTED), entry);
+        return composed;
+    }
+    
+    private static void expungeStaleEntries() {
+        for (Object stale; (stale = COLLECTED.poll()) != null;)
+            RECORDED.remove(stale);
+    }
+    
+    /**
+     * The recorded parts of a composition. Unless the composition was rebuilt,
+     * parts which are functions of this package are held weakly and any others
+     * strongly, since a non-functional argument, such as a boxed count, is
+     * often not captured by the composed instance and would otherwise be lost.
+     */
+    private static final class Entry {
+        private final String kind;
+        private final Object source;
+        private final Object arguments;
+        private final int    length;
+        
+        Entry(String kind, Object source, Object[] arguments) {
+            this(kind, source, arguments, true);
+        }
+        
+        Entry(String kind, Object source, Object[] arguments, boolean weak) {
+            this.kind = kind;
+            this.source = weak ? hold(source) : source;
+            if (weak)
+                for (int i = 0; i < arguments.length; i++)
+                    arguments[i] = hold(arguments[i]);
+            this.arguments = arguments;
+            this.length = arguments.length;
+        }
+        
+        Entry(String kind, Object[] steps, int length) {
+            this.kind = kind;
+            this.source = null;
+            this.arguments = new Part(steps);
+            this.length = length;
+        }
+        
+        boolean returnedSource(Object composed) {
+            Object source = arguments instanceof Part ? ((Object[]) ((Part) arguments).get())[0] : release(this.source);
+            return composed == source;
+        }
+        
+        /**
+         * @return The composition with every part released, or null if a
+         *         weakly held part has been collected.
+         */
+        Composition resolve() {
+            if (arguments instanceof Part) {
+                Object[] steps = (Object[]) ((Part) arguments).get();
+                return steps == null ? null : new Composition(kind, steps[0], Arrays.copyOfRange(steps, 1, length));
+            }
+            Object source = release(this.source);
+            if (source == CLEARED)
+                return null;
+            Object[] released = ((Object[]) arguments).clone();
+            for (int i = 0; i < released.length; i++)
+                if ((released[i] = release(released[i])) == CLEARED)
+                    return null;
+            return new Composition(kind, source, released);
+        }
+        
+        private static Object hold(Object part) {
+            return FunctionTypes.typeOf(part) != null ? new Part(part) : part;
+        }
+        
+        private static Object release(Object part) {
+            if (!(part instanceof Part))
+                return part;
+            Object referent = ((Part) part).get();
+            return referent == null ? CLEARED : referent;
+        }
+    }
+    
+    /**
+     * A weakly held part of a composition.
+     */
+    private static final class Part extends WeakReference<Object> {
+        Part(Object referent) {
+            super(referent);
+        }
+    }
+    
+    /**
+     * @param key A key of the table.
+     * @return The instance the key stands for, or null if it was collected.
+     */
+    private static Object referent(Object key) {
+        return key instanceof Probe ? ((Probe) key).referent : ((Recorded) key).get();
+    }
+    
+    /**
+     * The key under which a composed instance is recorded, holding it weakly.
+     * It stays equal only to itself once the instance is collected, so it can
+     * still be removed.
+     */
+    private static final class Recorded extends WeakReference<Object> {
+        private final int hash;
+        
+        Recorded(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            Object referent = get();
+            return referent != null && (obj instanceof Recorded || obj instanceof Probe) && referent == referent(obj);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    /**
+     * A short-lived key for looking an instance up without allocating a
+     * reference object.
+     */
+    private static final class Probe {
+        private final Object referent;
+        
+        Probe(Object referent) {
+            this.referent = referent;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Recorded || obj instanceof Probe) && referent == referent(obj);
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(referent);
+        }
+    }
+}
@@ -23,8 +23,21 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.BatchBuffer;
+import zone.lamprey.function.concurrent.BatchBuffer.Overflow;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.PrefetchSubscriber;
+import zone.lamprey.function.concurrent.RateLimiter;
+import zone.lamprey.function.concurrent.RingBuffer;
+import zone.lamprey.function.concurrent.RingBuffer.ProducerType;
+import zone.lamprey.function.concurrent.WaitStrategy;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation that accepts a single input argument and returns no
  * result. Unlike most other functional interfaces, {@code Consumer} is expected
@@ -39,7 +52,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface Consumer<T> extends java.util.function.Consumer<T> {
+public interface Consumer<T> extends java.util.function.Consumer<T>, Composable {
     
     /**
      * Performs this operation on the given argument.
@@ -63,10 +76,11 @@ public interface Consumer<T> extends java.util.function.Consumer<T> {
      */
     default Consumer<T> andThen(Consumer<? super T> after) {
         Objects.requireNonNull(after);
-        return (T t) -> {
+        return Composition.record("andThen", this, after, (T t) -> {
             accept(t);
+            Composition.checkDeadline();
             after.accept(t);
-        };
+        });
     }
     
     /**
@@ -77,6 +91,236 @@ public interface Consumer<T> extends java.util.function.Consumer<T> {
      * @return A partially-applied function.
      */
     default Runnable applyPartial(T t) {
-        return () -> accept(t);
+        return Composition.record("applyPartial", this, t, () -> accept(t));
+    }
+    
+    /**
+     * Pace this consumer, waiting for a permit before each call. See
+     * {@link RateLimiter}.
+     * 
+     * @param permitsPerSecond The most calls per second.
+     * @param burst The most calls allowed back to back after being idle.
+     * @return A consumer which passes its arguments to this one at most at the
+     *         given rate.
+     */
+    default Consumer<T> rateLimited(double permitsPerSecond, int burst) {
+        return rateLimited(RateLimiter.of(permitsPerSecond, burst));
+    }
+    
+    /**
+     * Pace this consumer, waiting for a permit before each call.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @return A consumer which passes its argument to this one once it has a
+     *         permit.
+     */
+    default Consumer<T> rateLimited(RateLimiter limiter) {
+        Objects.requireNonNull(limiter);
+        return Composition.record("rateLimited", this, limiter, t -> {
+            limiter.acquire();
+            accept(t);
+        });
+    }
+    
+    /**
+     * Pace this consumer, dropping arguments for which there is no permit.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @return A consumer which passes its argument to this one only if a permit
+     *         is available.
+     */
+    default Consumer<T> rateLimitedOrDrop(RateLimiter limiter) {
+        Objects.requireNonNull(limiter);
+        return Composition.record("rateLimitedOrDrop", this, limiter, t -> {
+            if (limiter.tryAcquire())
+                accept(t);
+        });
+    }
+    
+    /**
+     * Pace this consumer, passing arguments to a fallback instead when there is
+     * no permit.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @param fallback The consumer to pass arguments to when no permit is
+     *            available.
+     * @return A consumer which passes its argument to this one if a permit is
+     *         available, or to the fallback otherwise.
+     */
+    default Consumer<T> rateLimitedOrElse(RateLimiter limiter, Consumer<? super T> fallback) {
+        Objects.requireNonNull(limiter);
+        Objects.requireNonNull(fallback);
+        return Composition.record("rateLimitedOrElse", this, limiter, fallback, t -> {
+            if (limiter.tryAcquire())
+                accept(t);
+            else
+                fallback.accept(t);
+        });
+    }
+    
+    /**
+     * Buffer elements and consume them in bulk. Elements accepted by the
+     * returned consumer are gathered into lists of up to {@code size}, which
+     * are handed to {@code flush} on a background thread once full or once
+     * {@code maxLinger} has passed since their first element, whichever is
+     * first. If the flusher falls behind, callers wait for it. See
+     * {@link BatchBuffer}.
+     * 
+     * @param <T> the type of the elements
+     * @param size The most elements in a batch.
+     * @param maxLinger The longest to hold an element before flushing it.
+     * @param flush The bulk operation to consume each batch with.
+     * @return A buffer which accepts elements for the bulk operation. Close it
+     *         to flush what remains.
+     */
+    static <T> BatchBuffer.OfObject<T> batched(int size, Duration maxLinger, java.util.function.Consumer<? super List<T>> flush) {
+        return batched(size, maxLinger, Overflow.BLOCK, flush);
+    }
+    
+    /**
+     * Buffer elements and consume them in bulk, as {@link #batched(int,
+     * Duration, java.util.function.Consumer)} does, with a choice of what to
+     * do when the flusher falls behind.
+     * 
+     * @param <T> the type of the elements
+     * @param size The most elements in a batch.
+     * @param maxLinger The longest to hold an element before flushing it.
+     * @param overflow What to do with elements when the flusher falls behind.
+     * @param flush The bulk operation to consume each batch with.
+     * @return A buffer which accepts elements for the bulk operation. Close it
+     *         to flush what remains.
+     */
+    static <T> BatchBuffer.OfObject<T> batched(int size, Duration maxLinger, Overflow overflow, java.util.function.Consumer<? super List<T>> flush) {
+        return BatchBuffer.of(size, maxLinger, overflow, flush);
+    }
+    
+    /**
+     * Consume elements on a thread of their own. The returned consumer hands
+     * each element to this one through a {@link RingBuffer} which any number
+     * of threads may add to, waiting only when it is full.
+     * 
+     * @param capacity The number of elements which may wait to be consumed,
+     *            rounded up to a power of two.
+     * @param wait How producers and the consuming thread wait for each other.
+     * @return A consumer which hands elements to this one asynchronously. Closing it
+     *         stops the consuming thread.
+     */
+    default CloseableConsumer<T> async(int capacity, WaitStrategy wait) {
+        return async(capacity, ProducerType.MULTI, wait);
+    }
+    
+    /**
+     * Consume elements on a thread of their own, through a {@link RingBuffer}
+     * with a choice of which threads may add to it.
+     * 
+     * @param capacity The number of elements which may wait to be consumed,
+     *            rounded up to a power of two.
+     * @param producers Which threads may call the returned consumer.
+     * @param wait How producers and the consuming thread wait for each other.
+     * @return A consumer which hands elements to this one asynchronously. Closing it
+     *         stops the consuming thread.
+     */
+    default CloseableConsumer<T> async(int capacity, ProducerType producers, WaitStrategy wait) {
+        RingBuffer.OfObject<T> ring = RingBuffer.of(capacity, producers, wait, this);
+        return Composition.record("async", this, capacity, producers, wait, new CloseableConsumer<T>() {
+            @Override
+            public void accept(T t) {
+                ring.accept(t);
+            }
+            
+            @Override
+            public void close() {
+                ring.close();
+            }
+        });
+    }
+    
+    /**
+     * Consume elements in parallel while keeping the order of elements with
+     * equal keys. Each element is routed by its key hash to one of the given
+     * number of worker threads, which consume their elements one at a time
+     * through a ring buffer of 1024 slots each, parking when idle.
+     * 
+     * <p>
+     * Elements are routed by the hash modulo the number of workers, so hashes
+     * which differ only in their high bits all land on the same worker. Use
+     * {@link ToIntFunction#mixed()} to spread such keys, for example
+     * {@code ToIntFunction.MIXED_HASH_CODE} in place of
+     * {@code ToIntFunction.HASH_CODE}.
+     * 
+     * @param keyHash The hash of each element's key.
+     * @param workers The number of worker threads.
+     * @return A consumer which hands each element to its key's worker. It
+     *         implements {@link zone.lamprey.function.metrics.QueueStatistics}
+     *         with one queue per worker, which shows hot keys as deep queues.
+     *         Closing it drains and stops every worker.
+     */
+    default CloseableConsumer<T> partitioned(java.util.function.ToIntFunction<? super T> keyHash, int workers) {
+        return partitioned(keyHash, workers, 1024, WaitStrategy.PARK);
+    }
+    
+    /**
+     * Consume elements in parallel while keeping the order of elements with
+     * equal keys, as {@link #partitioned(java.util.function.ToIntFunction,
+     * int)} does, with a choice of queue size and wait strategy.
+     * 
+     * @param keyHash The hash of each element's key.
+     * @param workers The number of worker threads.
+     * @param capacity The number of elements which may wait for each worker,
+     *            rounded up to a power of two.
+     * @param wait How callers and workers wait for each other.
+     * @return A consumer which hands each element to its key's worker. It
+     *         implements {@link zone.lamprey.function.metrics.QueueStatistics}.
+     *         Closing it drains and stops every worker.
+     */
+    default CloseableConsumer<T> partitioned(java.util.function.ToIntFunction<? super T> keyHash, int workers, int capacity, WaitStrategy wait) {
+        Objects.requireNonNull(keyHash);
+        return Composition.record("partitioned", this, keyHash, workers, capacity, wait, new Partitioned<>(this, keyHash, workers, capacity, wait));
+    }
+    
+    /**
+     * Subscribe this consumer to a stream, requesting items a window at a
+     * time. See {@link PrefetchSubscriber}.
+     * 
+     * @param prefetch The most items to request ahead of this consumer.
+     * @return A subscriber which passes each item to this consumer.
+     */
+    default PrefetchSubscriber<T> subscriber(int prefetch) {
+        return new PrefetchSubscriber<>(this, prefetch);
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default Consumer<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                accept(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default Consumer<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            accept(t);
+        });
     }
 }
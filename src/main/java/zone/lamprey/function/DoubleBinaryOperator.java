@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation upon two {@code double}-valued operands and producing
  * a {@code double}-valued result. This is the primitive type specialization of
@@ -87,7 +91,7 @@ public interface DoubleBinaryOperator extends BinaryOperator<Double>, java.util.
      * @return the function result
      */
     default DoubleSupplier applyPartial(double t, double u) {
-        return () -> applyAsDouble(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsDouble(t, u));
     }
     
     /**
@@ -98,7 +102,7 @@ public interface DoubleBinaryOperator extends BinaryOperator<Double>, java.util.
      * @return the function result
      */
     default DoubleUnaryOperator applyPartialL(double t) {
-        return u -> applyAsDouble(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsDouble(t, u));
     }
     
     /**
@@ -109,7 +113,7 @@ public interface DoubleBinaryOperator extends BinaryOperator<Double>, java.util.
      * @return the function result
      */
     default DoubleUnaryOperator applyPartialR(double u) {
-        return t -> applyAsDouble(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsDouble(t, u));
     }
     
     /**
@@ -121,7 +125,7 @@ public interface DoubleBinaryOperator extends BinaryOperator<Double>, java.util.
      */
     default ObjDoubleConsumer<Double> consume(DoubleConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsDouble(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -133,6 +137,41 @@ public interface DoubleBinaryOperator extends BinaryOperator<Double>, java.util.
      */
     default DoubleBinaryOperator map(DoubleUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsDouble(applyAsDouble(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsDouble(Composition.checked(applyAsDouble(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default DoubleBinaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsDouble(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default DoubleBinaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsDouble(t, u);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a predicate (boolean-valued function) of one {@code double}-valued
  * argument. This is the {@code double}-consuming primitive type specialization
@@ -93,7 +97,7 @@ public interface DoublePredicate extends Predicate<Double>, DoubleFunction<Boole
      */
     @Override
     default BooleanSupplier applyPartial(double t) {
-        return () -> test(t);
+        return Composition.record("applyPartial", this, t, () -> test(t));
     }
     
     /**
@@ -114,7 +118,7 @@ public interface DoublePredicate extends Predicate<Double>, DoubleFunction<Boole
      */
     default DoublePredicate and(DoublePredicate other) {
         Objects.requireNonNull(other);
-        return (value) -> test(value) && other.test(value);
+        return Composition.record("and", this, other, (value) -> test(value) && other.test(value));
     }
     
     /**
@@ -127,7 +131,7 @@ public interface DoublePredicate extends Predicate<Double>, DoubleFunction<Boole
     @Override
     default DoublePredicate mapToPredicate(Predicate<? super Boolean> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(apply(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.apply(Composition.checked(apply(t))));
     }
     
     /**
@@ -137,7 +141,7 @@ public interface DoublePredicate extends Predicate<Double>, DoubleFunction<Boole
      */
     @Override
     default DoublePredicate negate() {
-        return (value) -> !test(value);
+        return Composition.record("negate", this, (value) -> !test(value));
     }
     
     /**
@@ -157,6 +161,41 @@ public interface DoublePredicate extends Predicate<Double>, DoubleFunction<Boole
      */
     default DoublePredicate or(DoublePredicate other) {
         Objects.requireNonNull(other);
-        return (value) -> test(value) || other.test(value);
+        return Composition.record("or", this, other, (value) -> test(value) || other.test(value));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default DoublePredicate timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return test(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default DoublePredicate withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return test(t);
+        });
     }
 }
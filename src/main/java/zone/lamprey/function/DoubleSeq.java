@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lightweight sequence of doubles, in the spirit of
+ * {@link java.util.stream.DoubleStream}. See {@link IntSeq} for how its stages
+ * are fused and run.
+ * 
+ * <pre>{@code
+ *     double norm = Math.sqrt(DoubleSeq.of(vector).map(d -> d * d).sum());
+ * }</pre>
+ */
+public final class DoubleSeq {
+    
+    private final int                                       size;
+    private final boolean                                   indexed;
+    private final int                                       parallelism;
+    private final Fused<java.util.function.DoublePredicate> source;
+    
+    DoubleSeq(int size, boolean indexed, int parallelism, Fused<java.util.function.DoublePredicate> source) {
+        this.size = size;
+        this.indexed = indexed;
+        this.parallelism = parallelism;
+        this.source = source;
+    }
+    
+    /**
+     * @param values The doubles. The array is not copied, so changes to it are
+     *            seen by later runs.
+     * @return A sequence of the given doubles.
+     */
+    public static DoubleSeq of(double... values) {
+        Objects.requireNonNull(values);
+        return new DoubleSeq(values.length, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(values[i]))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param size The number of doubles.
+     * @param at Computes the double at each position. It must be safe to call
+     *            from several threads if the sequence is run in parallel.
+     * @return A sequence of the doubles computed for each position from zero
+     *         up to a size.
+     */
+    public static DoubleSeq tabulate(int size, IntToDoubleFunction at) {
+        Seq.checkSize(size);
+        Objects.requireNonNull(at);
+        return new DoubleSeq(size, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(at.applyAsDouble(i)))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param supplier The supplier.
+     * @param size The number of doubles.
+     * @return A sequence of a number of doubles from a supplier. It is never
+     *         run in parallel.
+     */
+    public static DoubleSeq generate(DoubleSupplier supplier, int size) {
+        Seq.checkSize(size);
+        Objects.requireNonNull(supplier);
+        return new DoubleSeq(size, false, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(supplier.getAsDouble()))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * Split runs of this sequence between workers. See
+     * {@link IntSeq#parallel(int)}.
+     * 
+     * @param parallelism The number of workers. One runs sequentially.
+     * @return This sequence, split between the given number of workers.
+     */
+    public DoubleSeq parallel(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least one: " + parallelism);
+        return new DoubleSeq(size, indexed, parallelism, source);
+    }
+    
+    /**
+     * @param functor The function to apply to each double.
+     * @return A sequence of the results.
+     */
+    public DoubleSeq map(DoubleUnaryOperator functor) {
+        Objects.requireNonNull(functor);
+        return new DoubleSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, d -> sink.test(functor.applyAsDouble(d))));
+    }
+    
+    /**
+     * @param <R> the type of the results
+     * @param functor The function to apply to each double.
+     * @return A sequence of the results.
+     */
+    public <R> Seq<R> mapToObj(DoubleFunction<? extends R> functor) {
+        Objects.requireNonNull(functor);
+        return new Seq<>(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, d -> sink.test(functor.apply(d))));
+    }
+    
+    /**
+     * @param functor The function to apply to each double.
+     * @return A sequence of the results.
+     */
+    public IntSeq mapToInt(DoubleToIntFunction functor) {
+        Objects.requireNonNull(functor);
+        return new IntSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, d -> sink.test(functor.applyAsInt(d))));
+    }
+    
+    /**
+     * @param predicate The test for the doubles to keep.
+     * @return A sequence of the doubles which pass the test.
+     */
+    public DoubleSeq filter(DoublePredicate predicate) {
+        Objects.requireNonNull(predicate);
+        return new DoubleSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, d -> !predicate.test(d) || sink.test(d)));
+    }
+    
+    /**
+     * @param action The action to perform on each double.
+     */
+    public void forEach(DoubleConsumer action) {
+        Objects.requireNonNull(action);
+        run((lo, hi) -> source.push(lo, hi, d -> {
+            action.accept(d);
+            return true;
+        }));
+    }
+    
+    /**
+     * @param identity The identity of the operator.
+     * @param operator An associative operator.
+     * @return The doubles combined in order with the operator, or the identity
+     *         if there are none.
+     */
+    public double reduce(double identity, DoubleBinaryOperator operator) {
+        Objects.requireNonNull(operator);
+        double result = identity;
+        for (double part : run((lo, hi) -> {
+            double[] acc = { identity };
+            source.push(lo, hi, d -> {
+                acc[0] = operator.applyAsDouble(acc[0], d);
+                return true;
+            });
+            return acc[0];
+        }))
+            result = operator.applyAsDouble(result, part);
+        return result;
+    }
+    
+    /**
+     * @return The sum of the doubles. They are added in order, so unlike
+     *         {@link java.util.stream.DoubleStream#sum()} no compensation is
+     *         made for rounding error, and a parallel run may round
+     *         differently.
+     */
+    public double sum() {
+        double sum = 0;
+        for (double part : run((lo, hi) -> {
+            double[] acc = { 0 };
+            source.push(lo, hi, d -> {
+                acc[0] += d;
+                return true;
+            });
+            return acc[0];
+        }))
+            sum += part;
+        return sum;
+    }
+    
+    /**
+     * @return The number of doubles.
+     */
+    public long count() {
+        long count = 0;
+        for (long part : run((lo, hi) -> {
+            long[] acc = { 0 };
+            source.push(lo, hi, d -> {
+                acc[0]++;
+                return true;
+            });
+            return acc[0];
+        }))
+            count += part;
+        return count;
+    }
+    
+    /**
+     * @return All of the doubles, in order.
+     */
+    public double[] toArray() {
+        List<double[]> parts = run((lo, hi) -> {
+            double[][] acc = { new double[indexed ? hi - lo : 16] };
+            int[] n = { 0 };
+            source.push(lo, hi, d -> {
+                if (n[0] == acc[0].length)
+                    acc[0] = Arrays.copyOf(acc[0], n[0] * 2);
+                acc[0][n[0]++] = d;
+                return true;
+            });
+            return Arrays.copyOf(acc[0], n[0]);
+        });
+        if (parts.size() == 1)
+            return parts.get(0);
+        int length = 0;
+        for (double[] part : parts)
+            length += part.length;
+        double[] result = new double[length];
+        int at = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, result, at, part.length);
+            at += part.length;
+        }
+        return result;
+    }
+    
+    /**
+     * Test whether any double passes a test, stopping at the first which does.
+     * 
+     * @param predicate The test.
+     * @return True if any double passes.
+     */
+    public boolean anyMatch(DoublePredicate predicate) {
+        Objects.requireNonNull(predicate);
+        AtomicBoolean found = new AtomicBoolean();
+        boolean shared = workers() > 1;
+        run((lo, hi) -> source.push(lo, hi, d -> {
+            if (predicate.test(d)) {
+                found.set(true);
+                return false;
+            }
+            // Only other workers can have found one since the last element
+            return !shared || !found.get();
+        }));
+        return found.get();
+    }
+    
+    /**
+     * Test whether every double passes a test, stopping at the first which
+     * does not.
+     * 
+     * @param predicate The test.
+     * @return True if every double passes, including when there are none.
+     */
+    public boolean allMatch(DoublePredicate predicate) {
+        Objects.requireNonNull(predicate);
+        return !anyMatch(d -> !predicate.test(d));
+    }
+    
+    /**
+     * Test whether no double passes a test, stopping at the first which does.
+     * 
+     * @param predicate The test.
+     * @return True if no double passes, including when there are none.
+     */
+    public boolean noneMatch(DoublePredicate predicate) {
+        return !anyMatch(predicate);
+    }
+    
+    /**
+     * Find the first double, stopping as soon as it is found. When run in
+     * parallel, workers stop once an earlier range has found one.
+     * 
+     * @return The first double, or nothing if there are none.
+     */
+    public OptionalDouble findFirst() {
+        AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+        for (OptionalDouble part : run((lo, hi) -> {
+            OptionalDouble[] acc = { OptionalDouble.empty() };
+            source.push(lo, hi, d -> {
+                if (first.get() < lo)
+                    return false;
+                acc[0] = OptionalDouble.of(d);
+                Seq.lower(first, lo);
+                return false;
+            });
+            return acc[0];
+        }))
+            if (part.isPresent())
+                return part;
+        return OptionalDouble.empty();
+    }
+    
+    private int workers() {
+        return indexed ? parallelism : 1;
+    }
+    
+    private <R> List<R> run(Parallel.Range<R> body) {
+        return Parallel.ranges(size, workers(), body);
+    }
+}
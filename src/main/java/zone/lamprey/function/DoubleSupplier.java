@@ -24,6 +24,12 @@
 package zone.lamprey.function;
 
 import java.util.Objects;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.DoubleFuture;
+import zone.lamprey.function.metrics.Recorder;
 
 /**
  * Represents a supplier of {@code double}-valued results. This is the
@@ -75,7 +81,7 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default Runnable consume(DoubleConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return () -> consumer.accept(getAsDouble());
+        return Composition.record("consume", this, consumer, () -> consumer.accept(Composition.checked(getAsDouble())));
     }
     
     /**
@@ -87,7 +93,7 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default DoubleSupplier map(DoubleUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsDouble(getAsDouble());
+        return Composition.record("map", this, functor, () -> functor.applyAsDouble(Composition.checked(getAsDouble())));
     }
     
     /**
@@ -100,7 +106,7 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default <R> Supplier<R> mapToObj(DoubleFunction<R> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.apply(getAsDouble());
+        return Composition.record("mapToObj", this, functor, () -> functor.apply(Composition.checked(getAsDouble())));
     }
     
     /**
@@ -112,7 +118,7 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default BooleanSupplier mapToBoolean(DoublePredicate functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.test(getAsDouble());
+        return Composition.record("mapToBoolean", this, functor, () -> functor.test(Composition.checked(getAsDouble())));
     }
     
     /**
@@ -124,7 +130,7 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default IntSupplier mapToInt(DoubleToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsInt(getAsDouble());
+        return Composition.record("mapToInt", this, functor, () -> functor.applyAsInt(Composition.checked(getAsDouble())));
     }
     
     /**
@@ -136,6 +142,54 @@ public interface DoubleSupplier extends Supplier<Double>, java.util.function.Dou
      */
     default LongSupplier mapToLong(DoubleToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsLong(getAsDouble());
+        return Composition.record("mapToLong", this, functor, () -> functor.applyAsLong(Composition.checked(getAsDouble())));
+    }
+    
+    /**
+     * Run a supplier asynchronously.
+     * 
+     * @param executor The executor to run this supplier with.
+     * @return An asynchronous supplier which runs this one with the given
+     *         executor each time it is called.
+     */
+    @Override
+    default AsyncDoubleSupplier async(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("async", this, executor, () -> DoubleFuture.supplyAsync(this, executor));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default DoubleSupplier timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                return getAsDouble();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default DoubleSupplier withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return getAsDouble();
+        });
     }
 }
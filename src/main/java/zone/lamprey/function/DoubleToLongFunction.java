@@ -23,6 +23,12 @@
  */
 package zone.lamprey.function;
 
+import java.util.Objects;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts a double-valued argument and produces a
  * long-valued result. This is the {@code double}-to-{@code long} primitive
@@ -89,4 +95,39 @@ public interface DoubleToLongFunction extends DoubleFunction<Long>, ToLongFuncti
     default Long apply(Double t) {
         return applyAsLong(t.doubleValue());
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default DoubleToLongFunction timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsLong(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default DoubleToLongFunction withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsLong(t);
+        });
+    }
 }
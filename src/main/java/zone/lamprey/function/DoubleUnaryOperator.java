@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation on a single {@code double}-valued operand that
  * produces a {@code double}-valued result. This is the primitive type
@@ -100,7 +104,7 @@ public interface DoubleUnaryOperator extends
      */
     @Override
     default DoubleSupplier applyPartial(double t) {
-        return () -> applyAsDouble(t);
+        return Composition.record("applyPartial", this, t, () -> applyAsDouble(t));
     }
     
     /**
@@ -113,7 +117,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default DoubleConsumer consume(DoubleConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsDouble(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -127,7 +131,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default <S> DoubleFunction<S> mapToObj(DoubleFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsDouble(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -140,7 +144,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default DoublePredicate mapToPredicate(DoublePredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsDouble(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -153,7 +157,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default DoubleToIntFunction mapToInt(DoubleToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(applyAsDouble(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -166,7 +170,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default DoubleToLongFunction mapToLong(DoubleToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(applyAsDouble(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -179,7 +183,7 @@ public interface DoubleUnaryOperator extends
     @Override
     default DoubleUnaryOperator map(UnaryOperator<Double> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsDouble(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -242,7 +246,7 @@ public interface DoubleUnaryOperator extends
      */
     default DoubleUnaryOperator recursive(DoublePredicate terminalCondition) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition);
+        return Composition.record("recursive", this, terminalCondition, t -> recurse(t, terminalCondition));
     }
     
     /**
@@ -259,7 +263,7 @@ public interface DoubleUnaryOperator extends
      */
     default DoubleUnaryOperator recursive(DoublePredicate terminalCondition, int maxDepth) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition, maxDepth);
+        return Composition.record("recursive", this, terminalCondition, maxDepth, t -> recurse(t, terminalCondition, maxDepth));
     }
     
     /**
@@ -274,7 +278,7 @@ public interface DoubleUnaryOperator extends
      */
     @Override
     default DoubleUnaryOperator recursive(int depth) {
-        return t -> recurse(t, depth);
+        return Composition.record("recursive", this, depth, t -> recurse(t, depth));
     }
     
     /**
@@ -285,4 +289,39 @@ public interface DoubleUnaryOperator extends
     static DoubleUnaryOperator identity() {
         return t -> t;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default DoubleUnaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsDouble(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default DoubleUnaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsDouble(t);
+        });
+    }
 }
@@ -23,7 +23,23 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.AdaptiveLimit;
+import zone.lamprey.function.concurrent.CircuitBreaker;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.Hedge;
+import zone.lamprey.function.concurrent.MappingProcessor;
+import zone.lamprey.function.concurrent.RejectedException;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.metrics.Recorder;
+import zone.lamprey.function.metrics.Tracing;
 
 /**
  * Represents a function that accepts one argument and produces a result.
@@ -38,7 +54,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface Function<T, R> extends java.util.function.Function<T, R> {
+public interface Function<T, R> extends java.util.function.Function<T, R>, Composable {
     
     /**
      * Functional interface to {@link java.util.Objects#toString}
@@ -62,7 +78,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      * @return A partially-applied function.
      */
     default Supplier<? extends R> applyPartial(T t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -74,7 +90,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default Consumer<T> consume(Consumer<R> consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(apply(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(apply(t))));
     }
     
     /**
@@ -87,7 +103,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default <S> Function<T, S> map(Function<? super R, ? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(apply(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(apply(t))));
     }
     
     /**
@@ -99,7 +115,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default Predicate<T> mapToPredicate(Predicate<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(apply(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(apply(t))));
     }
     
     /**
@@ -111,7 +127,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default ToDoubleFunction<T> mapToDouble(ToDoubleFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(apply(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(apply(t))));
     }
     
     /**
@@ -123,7 +139,7 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default ToIntFunction<T> mapToInt(ToIntFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(apply(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(apply(t))));
     }
     
     /**
@@ -135,7 +151,20 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
      */
     default ToLongFunction<T> mapToLong(ToLongFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(apply(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(apply(t))));
+    }
+    
+    /**
+     * Memoize a function. The result for each distinct argument is computed
+     * once and then returned from a cache for as long as the memoized function
+     * is in use, so this should only be used on functions without side effects.
+     * A {@code null} argument is never cached.
+     * 
+     * @return A function which caches the results of this one. It implements
+     *         {@link zone.lamprey.function.metrics.CacheStatistics}.
+     */
+    default Function<T, R> memoized() {
+        return Composition.record("memoized", this, new Memoized<>(this));
     }
     
     /**
@@ -147,4 +176,245 @@ public interface Function<T, R> extends java.util.function.Function<T, R> {
     static <T> Function<T, T> identity() {
         return t -> t;
     }
+    
+    /**
+     * Batch individual lookups. Concurrent calls to the returned function are
+     * gathered into one call to the given bulk function, which is made once
+     * the batch holds {@code maxBatch} distinct keys or {@code maxDelay} after
+     * it was opened, whichever is first. Equal keys within a batch are looked
+     * up once, and every caller waiting on them gets the same value.
+     * 
+     * <pre>{@code
+     *     Function<UserId, User> users = Function.batching(repository::findAll, 100, Duration.ofMillis(2));
+     * }</pre>
+     * 
+     * <p>
+     * The bulk call is made on the thread of one of the callers in the batch.
+     * Keys missing from the map it returns are looked up as {@code null}, and
+     * if it throws, every caller in the batch throws the same exception.
+     * 
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param bulk The function to look up a batch of distinct keys with.
+     * @param maxBatch The most keys to look up in one bulk call.
+     * @param maxDelay The longest to hold a batch open for more keys.
+     * @return A function which looks up keys in batches.
+     */
+    static <K, V> Function<K, V> batching(java.util.function.Function<? super List<K>, ? extends Map<K, ? extends V>> bulk, int maxBatch, Duration maxDelay) {
+        Objects.requireNonNull(bulk);
+        Batcher<K, V> batcher = new Batcher<>(bulk, maxBatch, maxDelay.toNanos());
+        return batcher::get;
+    }
+    
+    /**
+     * Apply a function asynchronously.
+     * 
+     * @param executor The executor to apply this function with.
+     * @return An asynchronous function which applies this one with the given
+     *         executor each time it is called.
+     * @see CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)
+     */
+    default AsyncFunction<T, R> asyncApply(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("asyncApply", this, executor, t -> CompletableFuture.supplyAsync(Deadline.propagate(() -> apply(t)), executor));
+    }
+    
+    /**
+     * Hedge a slow function. See {@link Hedge}.
+     * 
+     * @param delay How long to wait for a call before starting a duplicate.
+     * @param maxAttempts The most calls to start at once.
+     * @param executor The executor to make calls with.
+     * @return A function which returns the result of whichever call succeeds
+     *         first and cancels the others.
+     */
+    default Function<T, R> hedged(Duration delay, int maxAttempts, Executor executor) {
+        return hedged(Hedge.after(delay, maxAttempts, executor));
+    }
+    
+    /**
+     * Hedge a slow function. See {@link Hedge}.
+     * 
+     * @param hedge The hedging policy, which also counts how often hedging
+     *            fired and won.
+     * @return A function which returns the result of whichever call succeeds
+     *         first and cancels the others.
+     */
+    default Function<T, R> hedged(Hedge hedge) {
+        Objects.requireNonNull(hedge);
+        return Composition.record("hedged", this, hedge, t -> hedge.call(() -> apply(t)));
+    }
+    
+    /**
+     * Protect a function with a new circuit breaker. See
+     * {@link CircuitBreaker}.
+     * 
+     * @param config The configuration of the breaker.
+     * @return A function which calls this one while the breaker is closed.
+     */
+    default Function<T, R> withCircuitBreaker(CircuitBreaker.Config config) {
+        return withCircuitBreaker(CircuitBreaker.of(config));
+    }
+    
+    /**
+     * Protect a function with a circuit breaker.
+     * 
+     * @param breaker The breaker, which may be shared with other functions.
+     * @return A function which calls this one while the breaker is closed, and
+     *         throws {@link RejectedException#CIRCUIT_OPEN} otherwise.
+     */
+    default Function<T, R> withCircuitBreaker(CircuitBreaker breaker) {
+        Objects.requireNonNull(breaker);
+        return Composition.record("withCircuitBreaker", this, breaker, t -> {
+            CircuitBreaker.Permit permit = breaker.acquire();
+            long start = System.nanoTime();
+            try {
+                R result = apply(t);
+                breaker.onSuccess(permit, System.nanoTime() - start);
+                return result;
+            } catch (Throwable e) {
+                breaker.onFailure(permit, System.nanoTime() - start);
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * Limit how many calls to a function may be in flight at once. See
+     * {@link AdaptiveLimit}.
+     * 
+     * @param limit The limit, which may be shared with other functions.
+     * @return A function which calls this one while the limit allows, and
+     *         throws {@link RejectedException#LIMIT_EXCEEDED} otherwise.
+     */
+    default Function<T, R> withConcurrencyLimit(AdaptiveLimit limit) {
+        Objects.requireNonNull(limit);
+        return Composition.record("withConcurrencyLimit", this, limit, t -> {
+            limit.acquire();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                R result = apply(t);
+                failed = false;
+                return result;
+            } finally {
+                limit.release(System.nanoTime() - start, failed);
+            }
+        });
+    }
+    
+    /**
+     * Retry a function when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return A function which calls this one until it succeeds or the policy
+     *         gives up.
+     */
+    default Function<T, R> retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, t -> policy.call(() -> apply(t)));
+    }
+    
+    /**
+     * Give each call a deadline. See {@link Deadline}.
+     * 
+     * @param timeout How long each call may take.
+     * @return A function which attaches the deadline to the calling thread
+     *         for the length of each call. The stages within it which check
+     *         the deadline, such as those of a {@code map} or {@code andThen}
+     *         chain, throw a {@link DeadlineExceededException} once it has
+     *         passed.
+     */
+    default Function<T, R> withTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout);
+        return Composition.record("withTimeout", this, timeout, t -> Deadline.after(timeout).call(() -> apply(t)));
+    }
+    
+    /**
+     * Coalesce concurrent calls with equal arguments. While a call is in
+     * flight, other calls with an equal argument wait for its result instead
+     * of making the same call again. Behind {@link #memoized()}, which
+     * computes a new argument once for every thread that misses it at the
+     * same time, this makes sure each result is computed only once.
+     * 
+     * @return A function which shares the outcome of calls in flight.
+     */
+    default Function<T, R> singleFlight() {
+        SingleFlight<R> flights = new SingleFlight<>();
+        return Composition.record("singleFlight", this, t -> flights.call(t, () -> apply(t)));
+    }
+    
+    /**
+     * Apply this function to each item of a stream, requesting items upstream
+     * in batches. See {@link MappingProcessor}.
+     * 
+     * @param batch The number of items to request upstream at first, and the
+     *            most results to buffer.
+     * @return A processor which publishes the result for each item.
+     */
+    default MappingProcessor<T, R> processor(int batch) {
+        return new MappingProcessor<>(this, batch);
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default Function<T, R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return apply(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Trace this function with Java Flight Recorder, describing it by its
+     * {@link #describe() composition}. See {@link Tracing}.
+     * 
+     * @return A function which records an event for each of its calls that
+     *         takes longer than the event threshold, or this function if Flight
+     *         Recorder is not available.
+     */
+    default Function<T, R> traced() {
+        return traced(describe().toString());
+    }
+    
+    /**
+     * Trace this function with Java Flight Recorder. See {@link Tracing}.
+     * 
+     * @param stage The description to record with each event.
+     * @return A function which records an event for each of its calls that
+     *         takes longer than the event threshold, or this function if Flight
+     *         Recorder is not available.
+     */
+    default Function<T, R> traced(String stage) {
+        Objects.requireNonNull(stage);
+        if (!Tracing.isAvailable())
+            return this;
+        return Composition.record("traced", this, Tracing.trace(this, stage));
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default Function<T, R> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return apply(t);
+        });
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+/**
+ * The functional interfaces of this package and their arities. Types are
+ * listed from the most to the least derived, so the first match for an
+ * instance is always its most specific functional interface.
+ */
+final class FunctionTypes {
+    
+    private static final FunctionType[] TYPES = {
+        type(DoubleUnaryOperator.class, 1),
+        type(IntUnaryOperator.class, 1),
+        type(LongUnaryOperator.class, 1),
+        type(DoublePredicate.class, 1),
+        type(IntPredicate.class, 1),
+        type(LongPredicate.class, 1),
+        type(DoubleToIntFunction.class, 1),
+        type(DoubleToLongFunction.class, 1),
+        type(IntToDoubleFunction.class, 1),
+        type(IntToLongFunction.class, 1),
+        type(LongToDoubleFunction.class, 1),
+        type(LongToIntFunction.class, 1),
+        type(DoubleFunction.class, 1),
+        type(IntFunction.class, 1),
+        type(LongFunction.class, 1),
+        type(ToDoubleFunction.class, 1),
+        type(ToIntFunction.class, 1),
+        type(ToLongFunction.class, 1),
+        type(UnaryOperator.class, 1),
+        type(Predicate.class, 1),
+        type(Function.class, 1),
+        type(DoubleBinaryOperator.class, 2),
+        type(IntBinaryOperator.class, 2),
+        type(LongBinaryOperator.class, 2),
+        type(BinaryOperator.class, 2),
+        type(BiPredicate.class, 2),
+        type(ToDoubleBiFunction.class, 2),
+        type(ToIntBiFunction.class, 2),
+        type(ToLongBiFunction.class, 2),
+        type(BiFunction.class, 2),
+        type(TernaryOperator.class, 3),
+        type(TriFunction.class, 3),
+        type(BooleanSupplier.class, 0),
+        type(DoubleSupplier.class, 0),
+        type(IntSupplier.class, 0),
+        type(LongSupplier.class, 0),
+        type(Supplier.class, 0),
+        type(DoubleConsumer.class, 1),
+        type(IntConsumer.class, 1),
+        type(LongConsumer.class, 1),
+        type(Consumer.class, 1),
+        type(ObjDoubleConsumer.class, 2),
+        type(ObjIntConsumer.class, 2),
+        type(ObjLongConsumer.class, 2),
+        type(BiConsumer.class, 2),
+        type(TriConsumer.class, 3),
+        type(Runnable.class, 0),
+        type(AsyncDoubleSupplier.class, 0),
+        type(AsyncIntSupplier.class, 0),
+        type(AsyncLongSupplier.class, 0),
+        type(AsyncSupplier.class, 0),
+        type(AsyncFunction.class, 1),
+        type(AsyncRunnable.class, 0)
+    };
+    
+    private FunctionTypes() {
+    }
+    
+    /**
+     * @param function Any object.
+     * @return The most specific functional interface of this package which the
+     *         given object implements, or null if there is none.
+     */
+    static Class<?> typeOf(Object function) {
+        FunctionType type = find(function);
+        return type == null ? null : type.type;
+    }
+    
+    /**
+     * @param function Any object.
+     * @return The number of arguments taken by the functional method of the
+     *         given object, or -1 if it is not a functional interface of this
+     *         package.
+     */
+    static int arityOf(Object function) {
+        FunctionType type = find(function);
+        return type == null ? -1 : type.arity;
+    }
+    
+    private static FunctionType find(Object function) {
+        for (FunctionType type : TYPES)
+            if (type.type.isInstance(function))
+                return type;
+        return null;
+    }
+    
+    private static FunctionType type(Class<?> type, int arity) {
+        return new FunctionType(type, arity);
+    }
+    
+    private static final class FunctionType {
+        private final Class<?> type;
+        private final int      arity;
+        
+        FunctionType(Class<?> type, int arity) {
+            this.type = type;
+            this.arity = arity;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+/**
+ * The source of a fused sequence, such as {@link IntSeq}. A sequence is a
+ * source and a chain of stages which is only put together when a terminal
+ * operation runs: each stage wraps the sink it is given in one which applies
+ * it, and passes the result on to the stage before it, so the source ends up
+ * pushing each element through every stage with one nested call per stage
+ * and no buffering in between.
+ * 
+ * <p>
+ * A sink returns false to stop the source early, which is how short-circuiting
+ * operations such as {@code anyMatch} end without reading the rest of the
+ * elements.
+ * 
+ * @param <S> the type of the sink, such as
+ *            {@link java.util.function.IntPredicate}
+ */
+@FunctionalInterface
+interface Fused<S> {
+    
+    /**
+     * Push the elements at a range of positions to a sink, stopping as soon as
+     * it returns false.
+     * 
+     * @param from The first position.
+     * @param to The position after the last.
+     * @param sink The sink.
+     * @return False if the sink stopped the push early.
+     */
+    boolean push(int from, int to, S sink);
+}
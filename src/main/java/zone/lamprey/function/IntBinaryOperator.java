@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation upon two {@code int}-valued operands and producing an
  * {@code int}-valued result. This is the primitive type specialization of
@@ -82,7 +86,7 @@ public interface IntBinaryOperator extends BinaryOperator<Integer>, java.util.fu
      * @return the function result
      */
     default IntSupplier applyPartial(int t, int u) {
-        return () -> applyAsInt(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsInt(t, u));
     }
     
     /**
@@ -93,7 +97,7 @@ public interface IntBinaryOperator extends BinaryOperator<Integer>, java.util.fu
      * @return the function result
      */
     default IntUnaryOperator applyPartialL(int t) {
-        return u -> applyAsInt(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsInt(t, u));
     }
     
     /**
@@ -104,7 +108,7 @@ public interface IntBinaryOperator extends BinaryOperator<Integer>, java.util.fu
      * @return the function result
      */
     default IntUnaryOperator applyPartialR(int u) {
-        return t -> applyAsInt(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsInt(t, u));
     }
     
     /**
@@ -116,7 +120,7 @@ public interface IntBinaryOperator extends BinaryOperator<Integer>, java.util.fu
      */
     default ObjIntConsumer<Integer> consume(IntConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsInt(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -128,6 +132,41 @@ public interface IntBinaryOperator extends BinaryOperator<Integer>, java.util.fu
      */
     default IntBinaryOperator map(IntUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsInt(applyAsInt(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsInt(Composition.checked(applyAsInt(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default IntBinaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsInt(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default IntBinaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsInt(t, u);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts an int-valued argument and produces a
  * result. This is the {@code int}-consuming primitive specialization for
@@ -75,7 +79,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
      * @return A partially-applied function.
      */
     default Supplier<R> applyPartial(int t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -88,7 +92,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default IntConsumer consume(Consumer<R> consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(apply(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(apply(t))));
     }
     
     /**
@@ -101,7 +105,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default IntPredicate mapToPredicate(Predicate<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(apply(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(apply(t))));
     }
     
     /**
@@ -115,7 +119,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default <S> IntFunction<S> map(Function<? super R, ? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(apply(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(apply(t))));
     }
     
     /**
@@ -128,7 +132,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default IntToDoubleFunction mapToDouble(ToDoubleFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(apply(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(apply(t))));
     }
     
     /**
@@ -141,7 +145,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default IntUnaryOperator mapToInt(ToIntFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(apply(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(apply(t))));
     }
     
     /**
@@ -154,7 +158,7 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     @Override
     default IntToLongFunction mapToLong(ToLongFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(apply(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(apply(t))));
     }
     
     /**
@@ -165,4 +169,39 @@ public interface IntFunction<R> extends Function<Integer, R>, java.util.function
     static DoubleUnaryOperator identity() {
         return t -> t;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default IntFunction<R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return apply(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default IntFunction<R> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return apply(t);
+        });
+    }
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lightweight sequence of ints, in the spirit of
+ * {@link java.util.stream.IntStream} but built on the functional interfaces of
+ * this package. Stages such as {@link #map} and {@link #filter} only record
+ * what to do. When a terminal operation such as {@link #sum} runs, the stages
+ * are fused into one chain of sinks and the source pushes every element
+ * through it from a counted loop, with no spliterators and no boxing between
+ * primitive stages.
+ * 
+ * <pre>{@code
+ *     int sum = IntSeq.range(0, 1_000_000).filter(i -> i % 3 == 0).map(i -> i * i).sum();
+ * }</pre>
+ * 
+ * <p>
+ * A sequence can be run any number of times, and every run starts again from
+ * its source. Sequences whose elements can be found from their position, such
+ * as {@link #range} and {@link #of}, can be split between workers with
+ * {@link #parallel}; sequences drawn from a supplier always run on the calling
+ * thread.
+ */
+public final class IntSeq {
+    
+    private final int                                     size;
+    private final boolean                                 indexed;
+    private final int                                     parallelism;
+    private final Fused<java.util.function.IntPredicate>  source;
+    
+    IntSeq(int size, boolean indexed, int parallelism, Fused<java.util.function.IntPredicate> source) {
+        this.size = size;
+        this.indexed = indexed;
+        this.parallelism = parallelism;
+        this.source = source;
+    }
+    
+    /**
+     * @param from The first int, inclusive.
+     * @param to The last int, exclusive.
+     * @return A sequence of the ints from one up to another.
+     */
+    public static IntSeq range(int from, int to) {
+        int size = (int) Math.max(0, Math.min(Integer.MAX_VALUE, (long) to - from));
+        return new IntSeq(size, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(from + i))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param values The ints. The array is not copied, so changes to it are
+     *            seen by later runs.
+     * @return A sequence of the given ints.
+     */
+    public static IntSeq of(int... values) {
+        Objects.requireNonNull(values);
+        return new IntSeq(values.length, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(values[i]))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param size The number of ints.
+     * @param at Computes the int at each position. It must be safe to call
+     *            from several threads if the sequence is run in parallel.
+     * @return A sequence of the ints computed for each position from zero up
+     *         to a size.
+     */
+    public static IntSeq tabulate(int size, IntUnaryOperator at) {
+        Seq.checkSize(size);
+        Objects.requireNonNull(at);
+        return new IntSeq(size, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(at.applyAsInt(i)))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param supplier The supplier.
+     * @param size The number of ints.
+     * @return A sequence of a number of ints from a supplier. It is never run
+     *         in parallel.
+     */
+    public static IntSeq generate(IntSupplier supplier, int size) {
+        Seq.checkSize(size);
+        Objects.requireNonNull(supplier);
+        return new IntSeq(size, false, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(supplier.getAsInt()))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * Split runs of this sequence between workers on the common
+     * {@link java.util.concurrent.ForkJoinPool}, with the calling thread as
+     * one of them. Each worker takes one contiguous range of positions. Every
+     * function in the sequence must then be safe to call from several threads.
+     * Terminal operations still return what they would sequentially, except
+     * that {@link #forEach} calls its action in no particular order.
+     * 
+     * @param parallelism The number of workers. One runs sequentially.
+     * @return This sequence, split between the given number of workers.
+     */
+    public IntSeq parallel(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least one: " + parallelism);
+        return new IntSeq(size, indexed, parallelism, source);
+    }
+    
+    /**
+     * @param functor The function to apply to each int.
+     * @return A sequence of the results.
+     */
+    public IntSeq map(IntUnaryOperator functor) {
+        Objects.requireNonNull(functor);
+        return new IntSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, i -> sink.test(functor.applyAsInt(i))));
+    }
+    
+    /**
+     * @param <R> the type of the results
+     * @param functor The function to apply to each int.
+     * @return A sequence of the results.
+     */
+    public <R> Seq<R> mapToObj(IntFunction<? extends R> functor) {
+        Objects.requireNonNull(functor);
+        return new Seq<>(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, i -> sink.test(functor.apply(i))));
+    }
+    
+    /**
+     * @param functor The function to apply to each int.
+     * @return A sequence of the results.
+     */
+    public DoubleSeq mapToDouble(IntToDoubleFunction functor) {
+        Objects.requireNonNull(functor);
+        return new DoubleSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, i -> sink.test(functor.applyAsDouble(i))));
+    }
+    
+    /**
+     * @param predicate The test for the ints to keep.
+     * @return A sequence of the ints which pass the test.
+     */
+    public IntSeq filter(IntPredicate predicate) {
+        Objects.requireNonNull(predicate);
+        return new IntSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, i -> !predicate.test(i) || sink.test(i)));
+    }
+    
+    /**
+     * @param action The action to perform on each int.
+     */
+    public void forEach(IntConsumer action) {
+        Objects.requireNonNull(action);
+        run((lo, hi) -> source.push(lo, hi, i -> {
+            action.accept(i);
+            return true;
+        }));
+    }
+    
+    /**
+     * @param identity The identity of the operator.
+     * @param operator An associative operator.
+     * @return The ints combined in order with the operator, or the identity if
+     *         there are none.
+     */
+    public int reduce(int identity, IntBinaryOperator operator) {
+        Objects.requireNonNull(operator);
+        int result = identity;
+        for (int part : run((lo, hi) -> {
+            int[] acc = { identity };
+            source.push(lo, hi, i -> {
+                acc[0] = operator.applyAsInt(acc[0], i);
+                return true;
+            });
+            return acc[0];
+        }))
+            result = operator.applyAsInt(result, part);
+        return result;
+    }
+    
+    /**
+     * @return The sum of the ints, which overflows as int arithmetic does.
+     */
+    public int sum() {
+        int sum = 0;
+        for (int part : run((lo, hi) -> {
+            int[] acc = { 0 };
+            source.push(lo, hi, i -> {
+                acc[0] += i;
+                return true;
+            });
+            return acc[0];
+        }))
+            sum += part;
+        return sum;
+    }
+    
+    /**
+     * @return The number of ints.
+     */
+    public long count() {
+        long count = 0;
+        for (long part : run((lo, hi) -> {
+            long[] acc = { 0 };
+            source.push(lo, hi, i -> {
+                acc[0]++;
+                return true;
+            });
+            return acc[0];
+        }))
+            count += part;
+        return count;
+    }
+    
+    /**
+     * @return All of the ints, in order.
+     */
+    public int[] toArray() {
+        List<int[]> parts = run((lo, hi) -> {
+            int[][] acc = { new int[indexed ? hi - lo : 16] };
+            int[] n = { 0 };
+            source.push(lo, hi, i -> {
+                if (n[0] == acc[0].length)
+                    acc[0] = Arrays.copyOf(acc[0], n[0] * 2);
+                acc[0][n[0]++] = i;
+                return true;
+            });
+            return Arrays.copyOf(acc[0], n[0]);
+        });
+        if (parts.size() == 1)
+            return parts.get(0);
+        int length = 0;
+        for (int[] part : parts)
+            length += part.length;
+        int[] result = new int[length];
+        int at = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, result, at, part.length);
+            at += part.length;
+        }
+        return result;
+    }
+    
+    /**
+     * Test whether any int passes a test, stopping at the first which does.
+     * 
+     * @param predicate The test.
+     * @return True if any int passes.
+     */
+    public boolean anyMatch(IntPredicate predicate) {
+        Objects.requireNonNull(predicate);
+        AtomicBoolean found = new AtomicBoolean();
+        boolean shared = workers() > 1;
+        run((lo, hi) -> source.push(lo, hi, i -> {
+            if (predicate.test(i)) {
+                found.set(true);
+                return false;
+            }
+            // Only other workers can have found one since the last element
+            return !shared || !found.get();
+        }));
+        return found.get();
+    }
+    
+    /**
+     * Test whether every int passes a test, stopping at the first which does
+     * not.
+     * 
+     * @param predicate The test.
+     * @return True if every int passes, including when there are none.
+     */
+    public boolean allMatch(IntPredicate predicate) {
+        Objects.requireNonNull(predicate);
+        return !anyMatch(i -> !predicate.test(i));
+    }
+    
+    /**
+     * Test whether no int passes a test, stopping at the first which does.
+     * 
+     * @param predicate The test.
+     * @return True if no int passes, including when there are none.
+     */
+    public boolean noneMatch(IntPredicate predicate) {
+        return !anyMatch(predicate);
+    }
+    
+    /**
+     * Find the first int, stopping as soon as it is found. When run in
+     * parallel, workers stop once an earlier range has found one.
+     * 
+     * @return The first int, or nothing if there are none.
+     */
+    public OptionalInt findFirst() {
+        AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+        for (OptionalInt part : run((lo, hi) -> {
+            OptionalInt[] acc = { OptionalInt.empty() };
+            source.push(lo, hi, i -> {
+                if (first.get() < lo)
+                    return false;
+                acc[0] = OptionalInt.of(i);
+                Seq.lower(first, lo);
+                return false;
+            });
+            return acc[0];
+        }))
+            if (part.isPresent())
+                return part;
+        return OptionalInt.empty();
+    }
+    
+    private int workers() {
+        return indexed ? parallelism : 1;
+    }
+    
+    private <R> List<R> run(Parallel.Range<R> body) {
+        return Parallel.ranges(size, workers(), body);
+    }
+}
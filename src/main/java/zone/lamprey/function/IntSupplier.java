@@ -24,6 +24,12 @@
 package zone.lamprey.function;
 
 import java.util.Objects;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.IntFuture;
+import zone.lamprey.function.metrics.Recorder;
 
 /**
  * Represents a supplier of {@code int}-valued results. This is the
@@ -70,7 +76,7 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default Runnable consume(IntConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return () -> consumer.accept(getAsInt());
+        return Composition.record("consume", this, consumer, () -> consumer.accept(Composition.checked(getAsInt())));
     }
     
     /**
@@ -82,7 +88,7 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default BooleanSupplier predicate(IntPredicate functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.test(getAsInt());
+        return Composition.record("predicate", this, functor, () -> functor.test(getAsInt()));
     }
     
     /**
@@ -94,7 +100,7 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default IntSupplier map(IntUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsInt(getAsInt());
+        return Composition.record("map", this, functor, () -> functor.applyAsInt(Composition.checked(getAsInt())));
     }
     
     /**
@@ -107,7 +113,7 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default <R> Supplier<R> mapToObj(IntFunction<R> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.apply(getAsInt());
+        return Composition.record("mapToObj", this, functor, () -> functor.apply(Composition.checked(getAsInt())));
     }
     
     /**
@@ -119,7 +125,7 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default DoubleSupplier mapToDouble(IntToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsDouble(getAsInt());
+        return Composition.record("mapToDouble", this, functor, () -> functor.applyAsDouble(Composition.checked(getAsInt())));
     }
     
     /**
@@ -131,6 +137,54 @@ public interface IntSupplier extends Supplier<Integer>, java.util.function.IntSu
      */
     default LongSupplier mapToLong(IntToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsLong(getAsInt());
+        return Composition.record("mapToLong", this, functor, () -> functor.applyAsLong(Composition.checked(getAsInt())));
+    }
+    
+    /**
+     * Run a supplier asynchronously.
+     * 
+     * @param executor The executor to run this supplier with.
+     * @return An asynchronous supplier which runs this one with the given
+     *         executor each time it is called.
+     */
+    @Override
+    default AsyncIntSupplier async(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("async", this, executor, () -> IntFuture.supplyAsync(this, executor));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default IntSupplier timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                return getAsInt();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default IntSupplier withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return getAsInt();
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation on a single {@code int}-valued operand that produces
  * an {@code int}-valued result. This is the primitive type specialization of
@@ -100,7 +104,7 @@ public interface IntUnaryOperator extends
      */
     @Override
     default IntSupplier applyPartial(int t) {
-        return () -> applyAsInt(t);
+        return Composition.record("applyPartial", this, t, () -> applyAsInt(t));
     }
     
     /**
@@ -113,7 +117,7 @@ public interface IntUnaryOperator extends
     @Override
     default IntConsumer consume(IntConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsInt(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -127,7 +131,7 @@ public interface IntUnaryOperator extends
     @Override
     default <S> IntFunction<S> mapToObj(IntFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsInt(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -140,7 +144,7 @@ public interface IntUnaryOperator extends
     @Override
     default IntPredicate mapToPredicate(IntPredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsInt(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -153,7 +157,7 @@ public interface IntUnaryOperator extends
     @Override
     default IntToDoubleFunction mapToDouble(IntToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(applyAsInt(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -166,7 +170,7 @@ public interface IntUnaryOperator extends
     @Override
     default IntToLongFunction mapToLong(IntToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(applyAsInt(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -179,7 +183,7 @@ public interface IntUnaryOperator extends
     @Override
     default IntUnaryOperator map(UnaryOperator<Integer> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsInt(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -242,7 +246,7 @@ public interface IntUnaryOperator extends
      */
     default IntUnaryOperator recursive(IntPredicate terminalCondition) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition);
+        return Composition.record("recursive", this, terminalCondition, t -> recurse(t, terminalCondition));
     }
     
     /**
@@ -259,7 +263,7 @@ public interface IntUnaryOperator extends
      */
     default IntUnaryOperator recursive(IntPredicate terminalCondition, int maxDepth) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition, maxDepth);
+        return Composition.record("recursive", this, terminalCondition, maxDepth, t -> recurse(t, terminalCondition, maxDepth));
     }
     
     /**
@@ -274,7 +278,7 @@ public interface IntUnaryOperator extends
      */
     @Override
     default IntUnaryOperator recursive(int depth) {
-        return t -> recurse(t, depth);
+        return Composition.record("recursive", this, depth, t -> recurse(t, depth));
     }
     
     /**
@@ -285,4 +289,39 @@ public interface IntUnaryOperator extends
     static IntUnaryOperator identity() {
         return t -> t;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default IntUnaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsInt(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default IntUnaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsInt(t);
+        });
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry which hash-conses composed functions. Two compositions are
+ * structurally identical when they were built by the same composing method
+ * (such as {@code map} or {@code applyPartialL}) on structurally identical
+ * sources with equal arguments. Interning any of them returns one canonical
+ * instance, so anything attached to that instance is shared by every copy of
+ * the pipeline.
+ * 
+ * <pre>{@code
+ *     // Built thousands of times from configuration...
+ *     DoubleFunction<String> fmt = Interner.global().intern(source.map(ABS).mapToObj(FORMAT));
+ *     // ...but always the same instance.
+ * }</pre>
+ * 
+ * <p>
+ * Functions which were not produced by a composing method of this package are
+ * compared by their own {@code equals} method, which for lambdas is identity.
+ * So are functions whose composing method gave them state of their own, such
+ * as a cache from {@code memoized}, or a consumer thread from {@code async} or
+ * {@code partitioned}: two of them are never interchangeable, and merging them
+ * would leave the second one's thread running with nothing to close it.
+ * Creating an interner turns on the {@link Stage#setRecording(boolean)
+ * recording} of compositions, so functions composed before then are also
+ * compared by identity. Canonical instances are only weakly held, so pipelines
+ * which are no longer used anywhere else may be garbage collected.
+ */
+public final class Interner {
+    
+    private static final Interner GLOBAL = new Interner();
+    
+    private final ConcurrentHashMap<Key, Canonical> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object>            queue = new ReferenceQueue<>();
+    
+    /**
+     * Create an interner, and start recording compositions.
+     */
+    public Interner() {
+        Composition.setRecording(true);
+    }
+    
+    /**
+     * @return A process-wide interner.
+     */
+    public static Interner global() {
+        return GLOBAL;
+    }
+    
+    /**
+     * Get the canonical instance of a function.
+     *
+     * @param <F> The type of the function.
+     * @param function The function to intern.
+     * @return The canonical instance structurally identical to the given
+     *         function. If there is none, the given function becomes the
+     *         canonical instance and is returned.
+     */
+    @SuppressWarnings("unchecked")
+    public <F> F intern(F function) {
+        Objects.requireNonNull(function);
+        expungeStaleEntries();
+        return (F) canonicalize(function);
+    }
+    
+    /**
+     * @return The number of canonical instances currently held.
+     */
+    public int size() {
+        expungeStaleEntries();
+        return table.size();
+    }
+    
+    private Object canonicalize(Object function) {
+        Composition composition = Composition.of(function);
+        if (composition == null || composition.isStateful())
+            return function;
+        Object[] arguments = composition.arguments();
+        Object[] parts = new Object[arguments.length + 2];
+        parts[0] = composition.kind();
+        parts[1] = canonicalize(composition.source());
+        for (int i = 0; i < arguments.length; i++)
+            parts[i + 2] = canonicalize(arguments[i]);
+        
+        Key key = new Key(parts);
+        for (;;) {
+            Canonical existing = table.get(key);
+            if (existing != null) {
+                Object canonical = existing.get();
+                if (canonical != null)
+                    return canonical;
+                table.remove(key, existing);
+            }
+            if (table.putIfAbsent(key, new Canonical(function, key, queue)) == null)
+                return function;
+        }
+    }
+    
+    private void expungeStaleEntries() {
+        for (Object ref; (ref = queue.poll()) != null;) {
+            Canonical stale = (Canonical) ref;
+            table.remove(stale.key, stale);
+        }
+    }
+    
+    /**
+     * The structure of a composition: its kind followed by the canonical
+     * instances of its source and arguments.
+     */
+    private static final class Key {
+        private final Object[] parts;
+        private final int      hash;
+        
+        Key(Object[] parts) {
+            this.parts = parts;
+            this.hash = Arrays.hashCode(parts);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(parts, ((Key) obj).parts);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    /**
+     * A weakly held canonical instance which remembers its key so it can be
+     * removed from the table once collected.
+     */
+    private static final class Canonical extends WeakReference<Object> {
+        private final Key key;
+        
+        Canonical(Object referent, Key key, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+}
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation upon two {@code long}-valued operands and producing a
  * {@code long}-valued result. This is the primitive type specialization of
@@ -82,7 +86,7 @@ public interface LongBinaryOperator extends BinaryOperator<Long>, java.util.func
      * @return the function result
      */
     default LongSupplier applyPartial(long t, long u) {
-        return () -> applyAsLong(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsLong(t, u));
     }
     
     /**
@@ -93,7 +97,7 @@ public interface LongBinaryOperator extends BinaryOperator<Long>, java.util.func
      * @return the function result
      */
     default LongUnaryOperator applyPartialL(long t) {
-        return u -> applyAsLong(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsLong(t, u));
     }
     
     /**
@@ -104,7 +108,7 @@ public interface LongBinaryOperator extends BinaryOperator<Long>, java.util.func
      * @return the function result
      */
     default LongUnaryOperator applyPartialR(long u) {
-        return t -> applyAsLong(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsLong(t, u));
     }
     
     /**
@@ -116,7 +120,7 @@ public interface LongBinaryOperator extends BinaryOperator<Long>, java.util.func
      */
     default ObjLongConsumer<Long> consume(LongConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsLong(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -128,6 +132,41 @@ public interface LongBinaryOperator extends BinaryOperator<Long>, java.util.func
      */
     default LongBinaryOperator map(LongUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsLong(applyAsLong(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsLong(Composition.checked(applyAsLong(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default LongBinaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsLong(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default LongBinaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsLong(t, u);
+        });
     }
 }
@@ -23,8 +23,18 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.BatchBuffer;
+import zone.lamprey.function.concurrent.BatchBuffer.Overflow;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.RingBuffer;
+import zone.lamprey.function.concurrent.RingBuffer.ProducerType;
+import zone.lamprey.function.concurrent.WaitStrategy;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation that accepts a single {@code long}-valued argument
  * and returns no result. This is the primitive type specialization of
@@ -73,10 +83,11 @@ public interface LongConsumer extends Consumer<Long>, java.util.function.LongCon
      */
     default LongConsumer andThen(LongConsumer after) {
         Objects.requireNonNull(after);
-        return (long t) -> {
+        return Composition.record("andThen", this, after, (long t) -> {
             accept(t);
+            Composition.checkDeadline();
             after.accept(t);
-        };
+        });
     }
     
     /**
@@ -87,6 +98,102 @@ public interface LongConsumer extends Consumer<Long>, java.util.function.LongCon
      * @return A partially-applied function.
      */
     default Runnable applyPartial(long t) {
-        return () -> accept(t);
+        return Composition.record("applyPartial", this, t, () -> accept(t));
+    }
+    
+    /**
+     * Buffer longs and consume them in bulk. Values accepted by the returned
+     * consumer are stored in arrays of {@code size}, which are handed to
+     * {@code flush} along with the number of values in them on a background
+     * thread once full or once {@code maxLinger} has passed since their first
+     * value, whichever is first. The arrays are reused once {@code flush}
+     * returns. See {@link BatchBuffer}.
+     * 
+     * @param size The most values in a batch.
+     * @param maxLinger The longest to hold a value before flushing it.
+     * @param overflow What to do with values when the flusher falls behind.
+     * @param flush The bulk operation to consume each batch with.
+     * @return A buffer which accepts values for the bulk operation. Close it to
+     *         flush what remains.
+     */
+    static BatchBuffer.OfLong batched(int size, Duration maxLinger, Overflow overflow, java.util.function.ObjIntConsumer<long[]> flush) {
+        return BatchBuffer.ofLongs(size, maxLinger, overflow, flush);
+    }
+    
+    /**
+     * Consume longs on a thread of their own, through a {@link RingBuffer}
+     * which stores them unboxed and which any number of threads may add to.
+     * 
+     * @param capacity The number of values which may wait to be consumed,
+     *            rounded up to a power of two.
+     * @param wait How producers and the consuming thread wait for each other.
+     * @return A consumer which hands values to this one asynchronously. Closing it
+     *         stops the consuming thread.
+     */
+    @Override
+    default CloseableLongConsumer async(int capacity, WaitStrategy wait) {
+        return async(capacity, ProducerType.MULTI, wait);
+    }
+    
+    /**
+     * Consume longs on a thread of their own, through a {@link RingBuffer}
+     * which stores them unboxed, with a choice of which threads may add to it.
+     * 
+     * @param capacity The number of values which may wait to be consumed,
+     *            rounded up to a power of two.
+     * @param producers Which threads may call the returned consumer.
+     * @param wait How producers and the consuming thread wait for each other.
+     * @return A consumer which hands values to this one asynchronously. Closing it
+     *         stops the consuming thread.
+     */
+    @Override
+    default CloseableLongConsumer async(int capacity, ProducerType producers, WaitStrategy wait) {
+        RingBuffer.OfLong ring = RingBuffer.ofLongs(capacity, producers, wait, this);
+        return Composition.record("async", this, capacity, producers, wait, new CloseableLongConsumer() {
+            @Override
+            public void accept(long value) {
+                ring.accept(value);
+            }
+            
+            @Override
+            public void close() {
+                ring.close();
+            }
+        });
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default LongConsumer timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                accept(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default LongConsumer withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            accept(t);
+        });
     }
 }
@@ -23,8 +23,16 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts a long-valued argument and produces a
  * result. This is the {@code long}-consuming primitive specialization for
@@ -75,7 +83,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
      * @return A partially-applied function.
      */
     default Supplier<R> applyPartial(long t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -88,7 +96,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default LongConsumer consume(Consumer<R> consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(apply(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(apply(t))));
     }
     
     /**
@@ -101,7 +109,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default LongPredicate mapToPredicate(Predicate<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(apply(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(apply(t))));
     }
     
     /**
@@ -115,7 +123,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default <S> LongFunction<S> map(Function<? super R, ? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(apply(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(apply(t))));
     }
     
     /**
@@ -128,7 +136,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default LongUnaryOperator mapToLong(ToLongFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(apply(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(apply(t))));
     }
     
     /**
@@ -141,7 +149,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default LongToIntFunction mapToInt(ToIntFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(apply(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(apply(t))));
     }
     
     /**
@@ -154,7 +162,7 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     @Override
     default LongToDoubleFunction mapToDouble(ToDoubleFunction<? super R> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(apply(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(apply(t))));
     }
     
     /**
@@ -165,4 +173,80 @@ public interface LongFunction<R> extends Function<Long, R>, java.util.function.L
     static LongUnaryOperator identity() {
         return t -> t;
     }
+    
+    /**
+     * Batch individual lookups by numeric id. Works like
+     * {@link Function#batching}, except that the bulk function is given the
+     * distinct ids of a batch as an array and returns their values in the
+     * same order. Values missing from the end of the list it returns are
+     * looked up as {@code null}.
+     * 
+     * @param <R> the type of the values
+     * @param bulk The function to look up a batch of distinct ids with.
+     * @param maxBatch The most ids to look up in one bulk call.
+     * @param maxDelay The longest to hold a batch open for more ids.
+     * @return A function which looks up ids in batches.
+     */
+    static <R> LongFunction<R> batching(java.util.function.Function<long[], ? extends List<? extends R>> bulk, int maxBatch, Duration maxDelay) {
+        Objects.requireNonNull(bulk);
+        Batcher<Long, R> batcher = new Batcher<>(keys -> {
+            long[] ids = new long[keys.size()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = keys.get(i);
+            List<? extends R> values = bulk.apply(ids);
+            Map<Long, R> results = new HashMap<>(ids.length * 2);
+            for (int i = 0; i < ids.length && values != null && i < values.size(); i++)
+                results.put(ids[i], values.get(i));
+            return results;
+        }, maxBatch, maxDelay.toNanos());
+        return batcher::get;
+    }
+    
+    /**
+     * Coalesce concurrent calls with equal arguments. While a call is in
+     * flight, other calls with an equal argument wait for its result instead
+     * of making the same call again.
+     * 
+     * @return A function which shares the outcome of calls in flight.
+     */
+    @Override
+    default LongFunction<R> singleFlight() {
+        SingleFlight<R> flights = new SingleFlight<>();
+        return Composition.record("singleFlight", this, t -> flights.call(t, () -> apply(t)));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default LongFunction<R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return apply(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default LongFunction<R> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return apply(t);
+        });
+    }
 }
@@ -24,6 +24,12 @@
 package zone.lamprey.function;
 
 import java.util.Objects;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.LongFuture;
+import zone.lamprey.function.metrics.Recorder;
 
 /**
  * Represents a supplier of {@code long}-valued results. This is the
@@ -70,7 +76,7 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default Runnable consume(LongConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return () -> consumer.accept(getAsLong());
+        return Composition.record("consume", this, consumer, () -> consumer.accept(Composition.checked(getAsLong())));
     }
     
     /**
@@ -82,7 +88,7 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default LongSupplier map(LongUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsLong(getAsLong());
+        return Composition.record("map", this, functor, () -> functor.applyAsLong(Composition.checked(getAsLong())));
     }
     
     /**
@@ -95,7 +101,7 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default <R> Supplier<R> mapToObj(LongFunction<R> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.apply(getAsLong());
+        return Composition.record("mapToObj", this, functor, () -> functor.apply(Composition.checked(getAsLong())));
     }
     
     /**
@@ -107,7 +113,7 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default BooleanSupplier mapToPredicate(LongPredicate functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.test(getAsLong());
+        return Composition.record("mapToPredicate", this, functor, () -> functor.test(Composition.checked(getAsLong())));
     }
     
     /**
@@ -119,7 +125,7 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default IntSupplier mapToInt(LongToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsInt(getAsLong());
+        return Composition.record("mapToInt", this, functor, () -> functor.applyAsInt(Composition.checked(getAsLong())));
     }
     
     /**
@@ -131,6 +137,54 @@ public interface LongSupplier extends Supplier<Long>, java.util.function.LongSup
      */
     default DoubleSupplier mapToDouble(LongToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsDouble(getAsLong());
+        return Composition.record("mapToDouble", this, functor, () -> functor.applyAsDouble(Composition.checked(getAsLong())));
+    }
+    
+    /**
+     * Run a supplier asynchronously.
+     * 
+     * @param executor The executor to run this supplier with.
+     * @return An asynchronous supplier which runs this one with the given
+     *         executor each time it is called.
+     */
+    @Override
+    default AsyncLongSupplier async(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("async", this, executor, () -> LongFuture.supplyAsync(this, executor));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default LongSupplier timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                return getAsLong();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default LongSupplier withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return getAsLong();
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation on a single {@code long}-valued operand that produces
  * a {@code long}-valued result. This is the primitive type specialization of
@@ -100,7 +104,7 @@ public interface LongUnaryOperator extends
      */
     @Override
     default LongSupplier applyPartial(long t) {
-        return () -> applyAsLong(t);
+        return Composition.record("applyPartial", this, t, () -> applyAsLong(t));
     }
     
     /**
@@ -113,7 +117,7 @@ public interface LongUnaryOperator extends
     @Override
     default LongConsumer consume(LongConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsLong(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -127,7 +131,7 @@ public interface LongUnaryOperator extends
     @Override
     default <S> LongFunction<S> mapToObj(LongFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsLong(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -140,7 +144,7 @@ public interface LongUnaryOperator extends
     @Override
     default LongPredicate mapToPredicate(LongPredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsLong(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -153,7 +157,7 @@ public interface LongUnaryOperator extends
     @Override
     default LongToDoubleFunction mapToDouble(LongToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(applyAsLong(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -166,7 +170,7 @@ public interface LongUnaryOperator extends
     @Override
     default LongToIntFunction mapToInt(LongToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(applyAsLong(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -179,7 +183,7 @@ public interface LongUnaryOperator extends
     @Override
     default LongUnaryOperator map(UnaryOperator<Long> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsLong(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -242,7 +246,7 @@ public interface LongUnaryOperator extends
      */
     default LongUnaryOperator recursive(LongPredicate terminalCondition) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition);
+        return Composition.record("recursive", this, terminalCondition, t -> recurse(t, terminalCondition));
     }
     
     /**
@@ -259,7 +263,7 @@ public interface LongUnaryOperator extends
      */
     default LongUnaryOperator recursive(LongPredicate terminalCondition, int maxDepth) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition, maxDepth);
+        return Composition.record("recursive", this, terminalCondition, maxDepth, t -> recurse(t, terminalCondition, maxDepth));
     }
     
     /**
@@ -274,7 +278,7 @@ public interface LongUnaryOperator extends
      */
     @Override
     default LongUnaryOperator recursive(int depth) {
-        return t -> recurse(t, depth);
+        return Composition.record("recursive", this, depth, t -> recurse(t, depth));
     }
     
     /**
@@ -285,4 +289,39 @@ public interface LongUnaryOperator extends
     static LongUnaryOperator identity() {
         return t -> t;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default LongUnaryOperator timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsLong(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default LongUnaryOperator withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsLong(t);
+        });
+    }
 }
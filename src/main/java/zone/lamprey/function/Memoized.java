@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import zone.lamprey.function.metrics.CacheStatistics;
+
+/**
+ * A function which caches the result for each argument it is called with. Two
+ * threads calling it with the same new argument at once may both compute the
+ * result, in which case the first to finish is kept.
+ * 
+ * @param <T> the type of the input to the function
+ * @param <R> the type of the result of the function
+ */
+final class Memoized<T, R> implements Function<T, R>, CacheStatistics {
+    
+    private static final Object NULL = new Object();
+    
+    private final Function<T, R>                function;
+    private final ConcurrentHashMap<T, Object>  cache  = new ConcurrentHashMap<>();
+    private final LongAdder                     hits   = new LongAdder();
+    private final LongAdder                     misses = new LongAdder();
+    
+    Memoized(Function<T, R> function) {
+        this.function = function;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public R apply(T t) {
+        if (t == null) {
+            misses.increment();
+            return function.apply(t);
+        }
+        Object cached = cache.get(t);
+        if (cached != null) {
+            hits.increment();
+            return cached == NULL ? null : (R) cached;
+        }
+        misses.increment();
+        R result = function.apply(t);
+        Object previous = cache.putIfAbsent(t, result == null ? NULL : result);
+        return previous == null || previous == NULL ? result : (R) previous;
+    }
+    
+    @Override
+    public long hits() {
+        return hits.sum();
+    }
+    
+    @Override
+    public long misses() {
+        return misses.sum();
+    }
+    
+    @Override
+    public long size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A set of listeners called in turn as one. Unlike a chain built with
+ * {@code andThen}, which nests one call inside another for each listener, the
+ * listeners are kept in a flat array and called by a single loop, so any
+ * number of them can be called without deepening the stack, and each can be
+ * removed again.
+ * 
+ * <p>
+ * The array is copied on every change and swapped in with a compare-and-set,
+ * so adding and removing listeners never blocks, and calls in progress go on
+ * with the listeners they started with. This suits listeners which change
+ * rarely and are called often. If a listener throws, the exception is relayed
+ * to the caller and the remaining listeners are not called.
+ * 
+ * @param <L> the type of the listeners
+ */
+public abstract class Multicast<L> {
+    
+    private static final Object[] EMPTY = {};
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Multicast, Object[]> LISTENERS = AtomicReferenceFieldUpdater.newUpdater(Multicast.class, Object[].class, "listeners");
+    
+    private volatile Object[] listeners = EMPTY;
+    
+    Multicast() {
+    }
+    
+    /**
+     * Add a listener. A listener added more than once is called once for each
+     * time it was added.
+     * 
+     * @param listener The listener to call after the current ones.
+     */
+    public void add(L listener) {
+        Objects.requireNonNull(listener);
+        for (;;) {
+            Object[] current = listeners;
+            Object[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            if (LISTENERS.compareAndSet(this, current, next))
+                return;
+        }
+    }
+    
+    /**
+     * Remove the last occurrence of a listener.
+     * 
+     * @param listener The listener to remove.
+     * @return True if the listener was found and removed.
+     */
+    public boolean remove(L listener) {
+        for (;;) {
+            Object[] current = listeners;
+            int i = current.length - 1;
+            while (i >= 0 && !current[i].equals(listener))
+                i--;
+            if (i < 0)
+                return false;
+            Object[] next = current.length == 1 ? EMPTY : new Object[current.length - 1];
+            System.arraycopy(current, 0, next, 0, i);
+            System.arraycopy(current, i + 1, next, i, next.length - i);
+            if (LISTENERS.compareAndSet(this, current, next))
+                return true;
+        }
+    }
+    
+    /**
+     * Remove every listener.
+     */
+    public void clear() {
+        listeners = EMPTY;
+    }
+    
+    /**
+     * @return The number of listeners.
+     */
+    public int size() {
+        return listeners.length;
+    }
+    
+    /**
+     * @return The current listeners, in the order they are called.
+     */
+    @SuppressWarnings("unchecked")
+    public List<L> listeners() {
+        return (List<L>) Collections.unmodifiableList(Arrays.asList(listeners));
+    }
+    
+    /**
+     * @return The current listeners. The array must not be modified.
+     */
+    final Object[] snapshot() {
+        return listeners;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+/**
+ * A {@link Consumer} which passes each element to every one of a changing set
+ * of listeners. See {@link Multicast}.
+ * 
+ * <pre>{@code
+ *     MulticastConsumer<Tick> onTick = new MulticastConsumer<>();
+ *     onTick.add(chart::update);
+ *     onTick.add(strategy::evaluate);
+ *     feed.subscribe(onTick);
+ * }</pre>
+ * 
+ * @param <T> the type of the elements
+ */
+public final class MulticastConsumer<T> extends Multicast<java.util.function.Consumer<? super T>> implements Consumer<T> {
+    
+    /**
+     * Performs every listener on the given argument, in the order they were
+     * added.
+     * 
+     * @param t the input argument
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void accept(T t) {
+        for (Object listener : snapshot())
+            ((java.util.function.Consumer<? super T>) listener).accept(t);
+    }
+}
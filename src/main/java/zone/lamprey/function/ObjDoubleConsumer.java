@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation that accepts an object-valued and a
  * {@code double}-valued argument, and returns no result. This is the
@@ -80,10 +84,11 @@ public interface ObjDoubleConsumer<T> extends BiConsumer<T, Double>, java.util.f
     default ObjDoubleConsumer<T> andThen(BiConsumer<? super T, ? super Double> after) {
         Objects.requireNonNull(after);
         
-        return (l, r) -> {
+        return Composition.record("andThen", this, after, (l, r) -> {
             accept(l, r);
+            Composition.checkDeadline();
             after.accept(l, r);
-        };
+        });
     }
     
     /**
@@ -95,7 +100,7 @@ public interface ObjDoubleConsumer<T> extends BiConsumer<T, Double>, java.util.f
      * @return A partially-applied function.
      */
     default Runnable applyPartial(T t, double u) {
-        return () -> accept(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> accept(t, u));
     }
     
     /**
@@ -107,7 +112,7 @@ public interface ObjDoubleConsumer<T> extends BiConsumer<T, Double>, java.util.f
      */
     @Override
     default DoubleConsumer applyPartialL(T t) {
-        return u -> accept(t, u);
+        return Composition.record("applyPartialL", this, t, u -> accept(t, u));
     }
     
     /**
@@ -118,6 +123,41 @@ public interface ObjDoubleConsumer<T> extends BiConsumer<T, Double>, java.util.f
      * @return the function result
      */
     default Consumer<T> applyPartialR(double u) {
-        return t -> accept(t, u);
+        return Composition.record("applyPartialR", this, u, t -> accept(t, u));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ObjDoubleConsumer<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                accept(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ObjDoubleConsumer<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            accept(t, u);
+        });
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import zone.lamprey.function.concurrent.Deadline;
+
+/**
+ * Loops split across the common {@link java.util.concurrent.ForkJoinPool},
+ * with the calling thread taking a share of the work. The first failure stops
+ * every worker at its next iteration and is rethrown to the caller as it was
+ * thrown. The caller's {@link Deadline}, if it has one, is checked by every
+ * worker before each iteration.
+ */
+final class Parallel {
+    
+    private Parallel() {
+    }
+    
+    /**
+     * @param times The number of iterations.
+     * @param parallelism The number of workers.
+     * @throws IllegalArgumentException If either is out of range.
+     */
+    static void check(int times, int parallelism) {
+        if (times < 0)
+            throw new IllegalArgumentException("Times must not be negative: " + times);
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least one: " + parallelism);
+    }
+    
+    /**
+     * Call a body once for each index from zero up to a number of times. Each
+     * worker is given one contiguous range of indices, so no counter is shared
+     * between them.
+     * 
+     * @param times The number of iterations.
+     * @param parallelism The number of workers.
+     * @param body The body of the loop.
+     */
+    static void loop(int times, int parallelism, IntConsumer body) {
+        int workers = Math.max(1, Math.min(parallelism, times));
+        Deadline deadline = Deadline.current();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+        for (int k = 0; k < workers; k++) {
+            int from = (int) ((long) times * k / workers);
+            int to = (int) ((long) times * (k + 1) / workers);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    for (int i = from; i < to && failure.get() == null; i++) {
+                        if (deadline != null)
+                            deadline.check();
+                        body.accept(i);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        invokeAll(tasks, failure);
+    }
+    
+    /**
+     * Call a body from every worker for as long as a shared condition holds.
+     * 
+     * @param condition The condition, tested by each worker before each
+     *            iteration. It must be safe to call from several threads.
+     * @param parallelism The number of workers.
+     * @param body The body of the loop.
+     */
+    static void whileTrue(BooleanSupplier condition, int parallelism, java.lang.Runnable body) {
+        Deadline deadline = Deadline.current();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(parallelism);
+        for (int k = 0; k < parallelism; k++) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    while (failure.get() == null && condition.getAsBoolean()) {
+                        if (deadline != null)
+                            deadline.check();
+                        body.run();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        invokeAll(tasks, failure);
+    }
+    
+    /**
+     * Compute a result for each of a number of contiguous ranges of indices
+     * from zero up to a size. With a single worker the range is computed on
+     * the calling thread. Unlike the loops, this leaves any deadline to the
+     * body.
+     * 
+     * @param <R> the type of the results
+     * @param size The number of indices.
+     * @param parallelism The number of workers.
+     * @param body Computes the result for the indices from its first argument
+     *            up to its second.
+     * @return The results, in the order of their ranges.
+     */
+    static <R> List<R> ranges(int size, int parallelism, Range<R> body) {
+        int workers = Math.max(1, Math.min(parallelism, size));
+        if (workers == 1)
+            return Collections.singletonList(body.compute(0, size));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(workers);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+        for (int k = 0; k < workers; k++) {
+            int index = k;
+            int from = (int) ((long) size * k / workers);
+            int to = (int) ((long) size * (k + 1) / workers);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    if (failure.get() == null)
+                        results.set(index, body.compute(from, to));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        invokeAll(tasks, failure);
+        List<R> list = new ArrayList<>(workers);
+        for (int k = 0; k < workers; k++)
+            list.add(results.get(k));
+        return list;
+    }
+    
+    private static void invokeAll(List<ForkJoinTask<?>> tasks, AtomicReference<Throwable> failure) {
+        ForkJoinTask.invokeAll(tasks);
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        if (e != null)
+            throw new CompletionException(e);
+    }
+    
+    /**
+     * Computes a result for a range of indices.
+     * 
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    interface Range<R> {
+        R compute(int from, int to);
+    }
+}
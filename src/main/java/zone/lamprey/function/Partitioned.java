@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.function.ToIntFunction;
+
+import zone.lamprey.function.concurrent.RingBuffer;
+import zone.lamprey.function.concurrent.RingBuffer.ProducerType;
+import zone.lamprey.function.concurrent.WaitStrategy;
+import zone.lamprey.function.metrics.QueueStatistics;
+
+/**
+ * A consumer which routes each element by the hash of its key to one of a
+ * fixed set of workers. Each worker is a single thread draining its own
+ * {@link RingBuffer}, so elements with equal keys are consumed one at a time
+ * and in the order they were accepted. Closing it closes every worker.
+ * 
+ * @param <T> the type of the elements
+ */
+final class Partitioned<T> implements CloseableConsumer<T>, QueueStatistics {
+    
+    private final ToIntFunction<? super T>  keyHash;
+    private final RingBuffer.OfObject<T>[]  workers;
+    
+    @SuppressWarnings("unchecked")
+    Partitioned(java.util.function.Consumer<? super T> sink, ToIntFunction<? super T> keyHash, int workers, int capacity, WaitStrategy wait) {
+        if (workers < 1)
+            throw new IllegalArgumentException("There must be at least one worker: " + workers);
+        this.keyHash = keyHash;
+        this.workers = (RingBuffer.OfObject<T>[]) new RingBuffer.OfObject<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            try {
+                this.workers[i] = RingBuffer.of(capacity, ProducerType.MULTI, wait, sink);
+            } catch (Throwable e) {
+                // Nothing else can reach the workers already started
+                for (int j = 0; j < i; j++) {
+                    try {
+                        this.workers[j].close();
+                    } catch (Throwable suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+    
+    @Override
+    public void accept(T t) {
+        workers[Math.floorMod(keyHash.applyAsInt(t), workers.length)].accept(t);
+    }
+    
+    @Override
+    public void close() {
+        for (RingBuffer.OfObject<T> worker : workers)
+            worker.close();
+    }
+    
+    @Override
+    public int queues() {
+        return workers.length;
+    }
+    
+    @Override
+    public int depth(int queue) {
+        return workers[queue].size();
+    }
+}
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a predicate (boolean-valued function) of one argument.
  *
@@ -69,7 +73,7 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
      */
     @Override
     default BooleanSupplier applyPartial(T t) {
-        return () -> test(t);
+        return Composition.record("applyPartial", this, t, () -> test(t));
     }
     
     /**
@@ -90,7 +94,7 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
      */
     default Predicate<T> and(Predicate<? super T> other) {
         Objects.requireNonNull(other);
-        return t -> test(t) && other.test(t);
+        return Composition.record("and", this, other, t -> test(t) && other.test(t));
     }
     
     /**
@@ -100,7 +104,7 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
      */
     @Override
     default Predicate<T> negate() {
-        return t -> !test(t);
+        return Composition.record("negate", this, t -> !test(t));
     }
     
     /**
@@ -120,7 +124,7 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
      */
     default Predicate<T> or(Predicate<? super T> other) {
         Objects.requireNonNull(other);
-        return t -> test(t) || other.test(t);
+        return Composition.record("or", this, other, t -> test(t) || other.test(t));
     }
     
     /**
@@ -133,7 +137,7 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
     @Override
     default Predicate<T> mapToPredicate(Predicate<? super Boolean> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(test(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.apply(Composition.checked(test(t))));
     }
     
     /**
@@ -188,4 +192,39 @@ public interface Predicate<T> extends Function<T, Boolean>, java.util.function.P
     static <T> Predicate<T> alwaysFalse() {
         return t -> false;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default Predicate<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return test(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default Predicate<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return test(t);
+        });
+    }
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import zone.lamprey.function.metrics.Recorder;
+
+/**
+ * An instrumented copy of a composed function which counts the calls to, and
+ * the time spent in, each of its stages. The report produced by
+ * {@link #toString()} breaks the total time down per stage, in the same tree
+ * layout as {@link Composable#describe()}:
+ * 
+ * <pre>{@code
+ *     Profile<Runnable> profile = Profile.of(pipeline);
+ *     profile.function().run();
+ *     profile.print(System.out);
+ * }</pre>
+ * 
+ * <p>
+ * The instrumented copy is rebuilt from the stages of the original using the
+ * same composing methods, so it behaves exactly like the original. The
+ * original function is not modified. Timing adds a pair of calls to
+ * {@link System#nanoTime()} to every stage, so the figures are best read
+ * relative to each other. Only functions composed while
+ * {@link Stage#setRecording(boolean) recording} was on can be broken down.
+ * 
+ * <p>
+ * A stage which holds state of its own, such as one built by {@code async},
+ * {@code partitioned}, {@code memoized} or {@code singleFlight}, is never
+ * rebuilt, since the copy would start its own threads or keep its own cache.
+ * It is timed as a whole, and the stages it was built from are reported as not
+ * instrumented. So are the stages of a function whose composing method cannot
+ * be found.
+ * 
+ * @param <F> The type of the profiled function.
+ */
+public final class Profile<F> {
+    
+    private final Node root;
+    
+    private Profile(Node root) {
+        this.root = root;
+    }
+    
+    /**
+     * Create an instrumented copy of a function.
+     * 
+     * @param <F> The type of the function.
+     * @param function The function to profile.
+     * @return A profile of the given function.
+     */
+    public static <F> Profile<F> of(F function) {
+        Objects.requireNonNull(function);
+        return new Profile<>(new Node(Stage.of(function), true));
+    }
+    
+    /**
+     * @return The instrumented copy of the profiled function. Calls to it are
+     *         recorded in this profile.
+     */
+    @SuppressWarnings("unchecked")
+    public F function() {
+        return (F) root.instrumented;
+    }
+    
+    /**
+     * @return The number of times the instrumented function has been called.
+     */
+    public long calls() {
+        return root.recorder.calls();
+    }
+    
+    /**
+     * @return The total time spent in the instrumented function, in nanoseconds.
+     */
+    public long totalNanos() {
+        return root.recorder.latency().sum();
+    }
+    
+    /**
+     * Clear all recorded calls and timings.
+     */
+    public void reset() {
+        root.reset();
+    }
+    
+    /**
+     * Print the per-stage report to a stream.
+     * 
+     * @param out The stream to print to.
+     */
+    public void print(PrintStream out) {
+        out.print(this);
+    }
+    
+    /**
+     * @return A per-stage report of calls, total time including child stages,
+     *         and time spent in the stage itself.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        root.render(report, "", "", Math.max(1, totalNanos()));
+        return report.toString();
+    }
+    
+    private static final class Node {
+        private final Stage      stage;
+        private final List<Node> children = new ArrayList<>();
+        private final Recorder   recorder = new Recorder();
+        private final Object     instrumented;
+        private boolean          timed;
+        
+        Node(Stage stage, boolean instrument) {
+            this.stage = stage;
+            Composition composition = instrument ? Composition.of(stage.function()) : null;
+            boolean expand = composition != null && !composition.isStateful();
+            for (Stage child : stage.stages())
+                children.add(new Node(child, expand));
+            Object rebuilt = expand ? rebuild(composition) : null;
+            if (rebuilt == null) {
+                rebuilt = stage.function();
+                for (Node child : children)
+                    child.skip();
+            }
+            this.timed = instrument && rebuilt instanceof Composable;
+            this.instrumented = timed ? ((Composable) rebuilt).timed(recorder) : rebuilt;
+        }
+        
+        /**
+         * Mark this stage and the stages below it as not instrumented, because
+         * the function above them was used as-is rather than rebuilt.
+         */
+        private void skip() {
+            timed = false;
+            for (Node child : children)
+                child.skip();
+        }
+        
+        /**
+         * Compose the instrumented children the same way the original stage was
+         * composed. A flattened sequence is rebuilt by appending its steps in
+         * turn. If the composing method throws, the exception is relayed.
+         * 
+         * @return The rebuilt function, or null if no matching composing method
+         *         could be found.
+         */
+        private Object rebuild(Composition composition) {
+            Object source = children.get(0).instrumented;
+            Object[] arguments = composition.arguments().clone();
+            for (int i = 0, child = 1; i < arguments.length; i++)
+                if (FunctionTypes.typeOf(arguments[i]) != null)
+                    arguments[i] = children.get(child++).instrumented;
+            Method method = resolve(source, composition.kind(), stage.function(), arguments);
+            if (method != null)
+                return invoke(method, source, arguments);
+            if (!composition.kind().equals("andThen") || arguments.length < 2)
+                return null;
+            // A flattened sequence: append its steps one at a time
+            Object rebuilt = source;
+            Class<?> resolved = null;
+            for (Object argument : arguments) {
+                Object[] step = { argument };
+                if (rebuilt.getClass() != resolved || !accepts(method.getParameterTypes(), step)) {
+                    method = resolve(rebuilt, "andThen", stage.function(), step);
+                    if (method == null)
+                        return null;
+                    resolved = rebuilt.getClass();
+                }
+                rebuilt = invoke(method, rebuilt, step);
+                if (rebuilt == null)
+                    return null;
+            }
+            return rebuilt;
+        }
+        
+        private Object invoke(Method method, Object receiver, Object[] arguments) {
+            try {
+                return method.invoke(receiver, arguments);
+            } catch (IllegalAccessException e) {
+                return null;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+        
+        void reset() {
+            recorder.reset();
+            for (Node child : children)
+                child.reset();
+        }
+        
+        void render(StringBuilder report, String lead, String indent, long total) {
+            report.append(lead).append(stage.label());
+            if (timed) {
+                long inclusive = recorder.latency().sum();
+                long self = inclusive;
+                for (Node child : children)
+                    if (child.timed)
+                        self -= child.recorder.latency().sum();
+                report.append(String.format("  calls=%d total=%.3fms self=%.3fms (%.1f%%)",
+                                            recorder.calls(),
+                                            inclusive / 1e6,
+                                            self / 1e6,
+                                            100.0 * self / total));
+            } else {
+                report.append("  not instrumented");
+            }
+            report.append(System.lineSeparator());
+            for (int i = 0; i < children.size(); i++) {
+                boolean last = i == children.size() - 1;
+                children.get(i).render(report, indent + (last ? "\\- " : "|- "), indent + (last ? "   " : "|  "), total);
+            }
+        }
+    }
+    
+    /**
+     * Find the composing method a stage was built with. Composing methods are
+     * overloaded, so this picks the most specific one applicable to the
+     * arguments whose return type matches the original stage.
+     */
+    private static Method resolve(Object receiver, String name, Object composed, Object[] arguments) {
+        Method best = null;
+        for (Method method : receiver.getClass().getMethods()) {
+            if (method.getName().equals(name)
+                && !method.isBridge()
+                && method.getReturnType().isInstance(composed)
+                && accepts(method.getParameterTypes(), arguments)
+                && (best == null || moreSpecific(method, best)))
+                best = method;
+        }
+        return best;
+    }
+    
+    private static boolean accepts(Class<?>[] parameters, Object[] arguments) {
+        if (parameters.length != arguments.length)
+            return false;
+        for (int i = 0; i < parameters.length; i++) {
+            Class<?> parameter = parameters[i];
+            Object argument = arguments[i];
+            if (parameter.isPrimitive() ? !isBoxOf(parameter, argument)
+                                        : argument != null && !parameter.isInstance(argument))
+                return false;
+        }
+        return true;
+    }
+    
+    private static boolean isBoxOf(Class<?> primitive, Object argument) {
+        return primitive == int.class && argument instanceof Integer
+               || primitive == long.class && argument instanceof Long
+               || primitive == double.class && argument instanceof Double
+               || primitive == boolean.class && argument instanceof Boolean;
+    }
+    
+    private static boolean moreSpecific(Method method, Method than) {
+        if (!than.getReturnType().isAssignableFrom(method.getReturnType()))
+            return false;
+        Class<?>[] parameters = method.getParameterTypes();
+        Class<?>[] others = than.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++)
+            if (!others[i].isAssignableFrom(parameters[i]))
+                return false;
+        return true;
+    }
+}
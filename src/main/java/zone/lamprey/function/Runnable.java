@@ -21,13 +21,30 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.CancellationToken;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.FanOut;
+import zone.lamprey.function.concurrent.RateLimiter;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.concurrent.TimerWheel;
+import zone.lamprey.function.concurrent.WaitStrategy;
+import zone.lamprey.function.metrics.Recorder;
+import zone.lamprey.function.metrics.Tracing;
 
 /**
  * This is a functional interface that accepts nothing and returns nothing.
  */
 @FunctionalInterface
-public interface Runnable extends java.lang.Runnable {
+public interface Runnable extends java.lang.Runnable, Composable {
     
     /**
      * @see java.lang.Runnable#run()
@@ -49,10 +66,7 @@ public interface Runnable extends java.lang.Runnable {
      */
     default Runnable andThen(Runnable after) {
         Objects.requireNonNull(after);
-        return () -> {
-            run();
-            after.run();
-        };
+        return Sequence.runnables(this, after);
     }
     
     /**
@@ -67,10 +81,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, F extends Supplier<T>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (Supplier<T>) () -> {
+        return Composition.record("andThen", this, after, (F) (Supplier<T>) () -> {
             run();
+            Composition.checkDeadline();
             return after.get();
-        };
+        });
     }
     
     /**
@@ -85,10 +100,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, F extends Consumer<T>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (Consumer<T>) t -> {
+        return Composition.record("andThen", this, after, (F) (Consumer<T>) t -> {
             run();
+            Composition.checkDeadline();
             after.accept(t);
-        };
+        });
     }
     
     /**
@@ -104,10 +120,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, U, F extends BiConsumer<T, U>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (BiConsumer<T, U>) (t, u) -> {
+        return Composition.record("andThen", this, after, (F) (BiConsumer<T, U>) (t, u) -> {
             run();
+            Composition.checkDeadline();
             after.accept(t, u);
-        };
+        });
     }
     
     /**
@@ -124,10 +141,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, U, V, F extends TriConsumer<T, U, V>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (TriConsumer<T, U, V>) (t, u, v) -> {
+        return Composition.record("andThen", this, after, (F) (TriConsumer<T, U, V>) (t, u, v) -> {
             run();
+            Composition.checkDeadline();
             after.accept(t, u, v);
-        };
+        });
     }
     
     /**
@@ -143,10 +161,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, R, F extends Function<T, R>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (Function<T, R>) t -> {
+        return Composition.record("andThen", this, after, (F) (Function<T, R>) t -> {
             run();
+            Composition.checkDeadline();
             return after.apply(t);
-        };
+        });
     }
     
     /**
@@ -163,10 +182,11 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, U, R, F extends BiFunction<T, U, R>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (BiFunction<T, U, R>) (t, u) -> {
+        return Composition.record("andThen", this, after, (F) (BiFunction<T, U, R>) (t, u) -> {
             run();
+            Composition.checkDeadline();
             return after.apply(t, u);
-        };
+        });
     }
     
     /**
@@ -184,31 +204,88 @@ public interface Runnable extends java.lang.Runnable {
     @SuppressWarnings("unchecked")
     default <T, U, V, R, F extends TriFunction<T, U, V, R>> F andThen(F after) {
         Objects.requireNonNull(after);
-        return (F) (TriFunction<T, U, V, R>) (t, u, v) -> {
+        return Composition.record("andThen", this, after, (F) (TriFunction<T, U, V, R>) (t, u, v) -> {
             run();
+            Composition.checkDeadline();
             return after.apply(t, u, v);
-        };
+        });
     }
     
     /**
      * @return A version of this Runnable that calls the {@link #run} method
      *         repeatedly forever. This will never terminate unexceptionally.
+     *         If the calling thread has a {@link Deadline}, it is checked
+     *         before each call.
      */
     default Runnable forever() {
-        return () -> {
-            for (;;) run();
-        };
+        return Composition.record("forever", this, () -> {
+            Deadline deadline = Deadline.current();
+            if (deadline == null)
+                for (;;) run();
+            for (;;) {
+                deadline.check();
+                run();
+            }
+        });
+    }
+    
+    /**
+     * @param cancel The token to stop the loop with.
+     * @return A version of this Runnable that calls the {@link #run} method
+     *         repeatedly until the given token is cancelled. The token is
+     *         checked before each call, as is the calling thread's
+     *         {@link Deadline} if it has one. A body which can tell when it
+     *         found nothing to do should be a {@link BooleanSupplier} run with
+     *         {@link BooleanSupplier#poll(CancellationToken, WaitStrategy)},
+     *         which backs off while idle.
+     */
+    default Runnable forever(CancellationToken cancel) {
+        Objects.requireNonNull(cancel);
+        return Composition.record("forever", this, cancel, () -> {
+            Deadline deadline = Deadline.current();
+            if (deadline == null)
+                while (!cancel.isCancelled()) run();
+            else
+                while (!cancel.isCancelled()) {
+                    deadline.check();
+                    run();
+                }
+        });
     }
     
     /**
      * @param times The number of times to loop.
      * @return A version of this Runnable that calls the {@link #run} method a given
-     *         number of times
+     *         number of times. If the calling thread has a {@link Deadline}, it
+     *         is checked before each call.
      */
     default Runnable loopFor(int times) {
-        return () -> {
-            for (int i = 0; i < times; i++) run();
-        };
+        return Composition.record("loopFor", this, times, () -> {
+            Deadline deadline = Deadline.current();
+            if (deadline == null)
+                for (int i = 0; i < times; i++) run();
+            else
+                for (int i = 0; i < times; i++) {
+                    deadline.check();
+                    run();
+                }
+        });
+    }
+    
+    /**
+     * @param times The number of times to loop.
+     * @param parallelism The number of workers to split the loop between.
+     * @return A version of this Runnable that calls the {@link #run} method a
+     *         given number of times, split evenly between workers on the common
+     *         {@link java.util.concurrent.ForkJoinPool}, one of which is the
+     *         calling thread. It returns once every call has finished. If a
+     *         call throws, the others stop and the exception is rethrown. If
+     *         the calling thread has a {@link Deadline}, every worker checks it
+     *         before each call.
+     */
+    default Runnable loopForParallel(int times, int parallelism) {
+        Parallel.check(times, parallelism);
+        return Composition.record("loopForParallel", this, times, parallelism, () -> Parallel.loop(times, parallelism, i -> run()));
     }
     
     /**
@@ -216,12 +293,369 @@ public interface Runnable extends java.lang.Runnable {
      * @return A version of this Runnable that calls the {@link #run} method
      *         repeatedly until the given BooleanSupplier returns false. If the
      *         BooleanSupplier returns false on its initial test, the {@link #run}
-     *         method will never be called.
+     *         method will never be called. If the calling thread has a
+     *         {@link Deadline}, it is checked before each call.
      */
     default Runnable whileTrue(BooleanSupplier terminationCondition) {
         Objects.requireNonNull(terminationCondition);
-        return () -> {
-            while (terminationCondition.getAsBoolean()) run();
-        };
+        return Composition.record("whileTrue", this, terminationCondition, () -> {
+            Deadline deadline = Deadline.current();
+            if (deadline == null)
+                while (terminationCondition.getAsBoolean()) run();
+            else
+                while (terminationCondition.getAsBoolean()) {
+                    deadline.check();
+                    run();
+                }
+        });
+    }
+    
+    /**
+     * @param ready The condition under which to call the {@link #run} method.
+     * @param cancel The token to stop the loop with.
+     * @param idle How to wait after a test of the condition which returned
+     *            false.
+     * @return A version of this Runnable that calls the {@link #run} method
+     *         whenever the given BooleanSupplier returns true, until the given
+     *         token is cancelled. While the BooleanSupplier returns false, the
+     *         loop waits with the given strategy, which backs off the longer
+     *         it stays false, and tests it again. The token is checked before
+     *         each test, as is the calling thread's {@link Deadline} if it has
+     *         one.
+     */
+    default Runnable whileTrue(BooleanSupplier ready, CancellationToken cancel, WaitStrategy idle) {
+        Objects.requireNonNull(ready);
+        Objects.requireNonNull(cancel);
+        Objects.requireNonNull(idle);
+        return Composition.record("whileTrue", this, ready, cancel, idle, () -> {
+            Deadline deadline = Deadline.current();
+            int idleTests = 0;
+            while (!cancel.isCancelled()) {
+                if (deadline != null)
+                    deadline.check();
+                if (ready.getAsBoolean()) {
+                    idleTests = 0;
+                    run();
+                } else {
+                    idle.idle(idleTests < Integer.MAX_VALUE ? ++idleTests : idleTests);
+                }
+            }
+        });
+    }
+    
+    /**
+     * @param terminationCondition The condition upon which to terminate. It is
+     *            tested by several threads at once, so it must be thread-safe.
+     * @param parallelism The number of workers to run the loop on.
+     * @return A version of this Runnable that calls the {@link #run} method
+     *         from each of the given number of workers on the common
+     *         {@link java.util.concurrent.ForkJoinPool}, one of which is the
+     *         calling thread, until the given BooleanSupplier returns false.
+     *         Each worker tests the condition before each of its calls. If a
+     *         call throws, the others stop and the exception is rethrown. If
+     *         the calling thread has a {@link Deadline}, every worker checks it
+     *         before each call.
+     */
+    default Runnable whileTrueParallel(BooleanSupplier terminationCondition, int parallelism) {
+        Objects.requireNonNull(terminationCondition);
+        Parallel.check(0, parallelism);
+        return Composition.record("whileTrueParallel", this, terminationCondition, parallelism, () -> Parallel.whileTrue(terminationCondition, parallelism, this));
+    }
+    
+    /**
+     * Run a loop over a supplier pipeline a chunk at a time. If this Runnable
+     * was built as {@code supplier.consume(sink).loopFor(n)}, where the
+     * supplier is a chain of {@code map} and {@code mapToX} calls, the
+     * returned Runnable fills an array with a chunk of values from the start
+     * of the chain, applies each stage to the whole chunk in turn, and then
+     * passes the chunk to the sink. Each stage becomes a tight loop over a
+     * primitive array rather than one call through the whole chain per value.
+     * 
+     * <p>
+     * Every stage sees the same values in the same order as before, but all
+     * of a chunk's calls to one stage are made before any to the next, so the
+     * stages must not depend on each other's side effects. If the calling
+     * thread has a {@link Deadline}, it is checked before each chunk. The
+     * shape of the loop is read from its recorded composition, so it must have
+     * been built while {@link Stage#setRecording(boolean) recording} was on.
+     * 
+     * @param chunkSize The most values in a chunk.
+     * @return A Runnable which runs the loop in chunks, or this Runnable if it
+     *         was not built that way.
+     */
+    default Runnable chunked(int chunkSize) {
+        Chunked.check(chunkSize);
+        Runnable chunked = Chunked.loop(this, chunkSize);
+        return chunked == null ? this : Composition.recordRebuilt("chunked", this, new Object[] { chunkSize }, chunked);
+    }
+    
+    /**
+     * Run asynchronously.
+     * 
+     * @param executor The executor to run this with.
+     * @return An asynchronous operation which runs this one with the given
+     *         executor each time it is called.
+     * @see CompletableFuture#runAsync(java.lang.Runnable, Executor)
+     */
+    default AsyncRunnable async(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("async", this, executor, () -> CompletableFuture.runAsync(Deadline.propagate(this), executor));
+    }
+    
+    /**
+     * Run on a virtual thread, or on a shared pool of platform threads where
+     * virtual threads are not available. See {@link FanOut}.
+     * 
+     * @return An asynchronous operation which runs this one on a thread of its
+     *         own each time it is called.
+     */
+    default AsyncRunnable onVirtualThread() {
+        return async(FanOut.executor());
+    }
+    
+    /**
+     * Pace this Runnable, waiting for a permit before each run. See
+     * {@link RateLimiter}.
+     * 
+     * @param permitsPerSecond The most runs per second.
+     * @param burst The most runs allowed back to back after being idle.
+     * @return A Runnable which runs this one at most at the given rate.
+     */
+    default Runnable rateLimited(double permitsPerSecond, int burst) {
+        return rateLimited(RateLimiter.of(permitsPerSecond, burst));
+    }
+    
+    /**
+     * Pace this Runnable, waiting for a permit before each run.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @return A Runnable which runs this one once it has a permit.
+     */
+    default Runnable rateLimited(RateLimiter limiter) {
+        Objects.requireNonNull(limiter);
+        return Composition.record("rateLimited", this, limiter, () -> {
+            limiter.acquire();
+            run();
+        });
+    }
+    
+    /**
+     * Pace this Runnable, skipping runs for which there is no permit.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @return A Runnable which runs this one only if a permit is available.
+     */
+    default Runnable rateLimitedOrDrop(RateLimiter limiter) {
+        Objects.requireNonNull(limiter);
+        return Composition.record("rateLimitedOrDrop", this, limiter, () -> {
+            if (limiter.tryAcquire())
+                run();
+        });
+    }
+    
+    /**
+     * Pace this Runnable, running a fallback instead when there is no permit.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @param fallback The Runnable to run when no permit is available.
+     * @return A Runnable which runs this one if a permit is available, or the
+     *         fallback otherwise.
+     */
+    default Runnable rateLimitedOrElse(RateLimiter limiter, Runnable fallback) {
+        Objects.requireNonNull(limiter);
+        Objects.requireNonNull(fallback);
+        return Composition.record("rateLimitedOrElse", this, limiter, fallback, () -> {
+            if (limiter.tryAcquire())
+                run();
+            else
+                fallback.run();
+        });
+    }
+    
+    /**
+     * Retry a Runnable when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return A Runnable which runs this one until it succeeds or the policy
+     *         gives up.
+     */
+    default Runnable retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, () -> policy.call(() -> {
+            run();
+            return null;
+        }));
+    }
+    
+    /**
+     * Give each call a deadline. See {@link Deadline}.
+     * 
+     * @param timeout How long each call may take.
+     * @return A Runnable which attaches the deadline to the calling thread
+     *         for the length of each call. The stages within it which check
+     *         the deadline, such as those of a {@code map} or {@code andThen}
+     *         chain, throw a {@link DeadlineExceededException} once it has
+     *         passed.
+     */
+    default Runnable withTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout);
+        return Composition.record("withTimeout", this, timeout, () -> Deadline.after(timeout).call(() -> {
+            run();
+            return null;
+        }));
+    }
+    
+    /**
+     * Run this once after a delay, on the {@link TimerWheel#shared() shared}
+     * timer wheel. It must be short and must not block.
+     * 
+     * @param delay How long to wait before running.
+     * @return A handle to cancel the run with.
+     */
+    default TimerWheel.Timeout scheduleAfter(Duration delay) {
+        return scheduleAfter(delay, TimerWheel.shared());
+    }
+    
+    /**
+     * Run this once after a delay, on the given timer wheel.
+     * 
+     * @param delay How long to wait before running.
+     * @param wheel The wheel to schedule the run on.
+     * @return A handle to cancel the run with.
+     */
+    default TimerWheel.Timeout scheduleAfter(Duration delay, TimerWheel wheel) {
+        return wheel.schedule(this, delay);
+    }
+    
+    /**
+     * Run this repeatedly at a fixed rate, on the {@link TimerWheel#shared()
+     * shared} timer wheel. It must be short and must not block.
+     * 
+     * @param initialDelay How long to wait before the first run.
+     * @param period The time between runs.
+     * @return A handle to cancel all further runs with.
+     */
+    default TimerWheel.Timeout scheduleAtFixedRate(Duration initialDelay, Duration period) {
+        return scheduleAtFixedRate(initialDelay, period, TimerWheel.shared());
+    }
+    
+    /**
+     * Run this repeatedly at a fixed rate, on the given timer wheel.
+     * 
+     * @param initialDelay How long to wait before the first run.
+     * @param period The time between runs.
+     * @param wheel The wheel to schedule the runs on.
+     * @return A handle to cancel all further runs with.
+     */
+    default TimerWheel.Timeout scheduleAtFixedRate(Duration initialDelay, Duration period, TimerWheel wheel) {
+        return wheel.scheduleAtFixedRate(this, initialDelay, period);
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default Runnable timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                run();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Trace this runnable with Java Flight Recorder, describing it by its
+     * {@link #describe() composition}. See {@link #traced(String)}.
+     * 
+     * @return A runnable which records an event for each of its runs that takes
+     *         longer than the event threshold, or this runnable if Flight
+     *         Recorder is not available.
+     */
+    default Runnable traced() {
+        return traced(describe().toString());
+    }
+    
+    /**
+     * Trace this runnable with Java Flight Recorder. If this runnable was
+     * created by {@link #forever()}, {@link #forever(CancellationToken)},
+     * {@link #loopFor(int)} or {@link #whileTrue(BooleanSupplier)} while
+     * {@link Stage#setRecording(boolean) recording} was on, every iteration of
+     * the loop is traced as well, so slow iterations of a loop which never ends
+     * still show up. See {@link Tracing}.
+     * 
+     * @param stage The description to record with each event.
+     * @return A runnable which records an event for each of its runs that takes
+     *         longer than the event threshold, or this runnable if Flight
+     *         Recorder is not available.
+     */
+    default Runnable traced(String stage) {
+        Objects.requireNonNull(stage);
+        if (!Tracing.isAvailable())
+            return this;
+        Runnable traced = this;
+        Composition composition = Composition.of(this);
+        if (composition != null) {
+            Object[] arguments = composition.arguments();
+            switch (composition.kind()) {
+            case "forever":
+                if (arguments.length == 0)
+                    traced = ((Runnable) composition.source()).traced().forever();
+                else
+                    traced = ((Runnable) composition.source()).traced().forever((CancellationToken) arguments[0]);
+                break;
+            case "loopFor":
+                traced = ((Runnable) composition.source()).traced().loopFor((Integer) arguments[0]);
+                break;
+            case "whileTrue":
+                if (arguments.length == 1)
+                    traced = ((Runnable) composition.source()).traced().whileTrue((BooleanSupplier) arguments[0]);
+                else
+                    traced = ((Runnable) composition.source()).traced().whileTrue((BooleanSupplier) arguments[0], (CancellationToken) arguments[1], (WaitStrategy) arguments[2]);
+                break;
+            default:
+                break;
+            }
+        }
+        return traced == this ? Composition.record("traced", this, Tracing.trace(this, stage))
+                              : Composition.recordRebuilt("traced", this, new Object[0], Tracing.trace(traced, stage));
+    }
+    
+    /**
+     * Run operations concurrently, cancelling the others as soon as one fails.
+     * See {@link FanOut#fanOut(Collection)}.
+     * 
+     * @param operations The operations to run.
+     */
+    static void fanOut(Collection<? extends java.lang.Runnable> operations) {
+        List<java.util.function.Supplier<Void>> suppliers = new ArrayList<>(operations.size());
+        for (java.lang.Runnable operation : operations)
+            suppliers.add(() -> {
+                operation.run();
+                return null;
+            });
+        FanOut.fanOut(suppliers);
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default Runnable withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            run();
+        });
     }
 }
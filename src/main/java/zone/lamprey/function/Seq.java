@@ -0,0 +1,342 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lightweight sequence of objects, in the spirit of
+ * {@link java.util.stream.Stream}. See {@link IntSeq} for how its stages are
+ * fused and run.
+ * 
+ * <pre>{@code
+ *     List<String> names = Seq.from(users).filter(User::isActive).map(User::getName).toList();
+ * }</pre>
+ * 
+ * @param <T> the type of the elements
+ */
+public final class Seq<T> {
+    
+    private final int                                    size;
+    private final boolean                                indexed;
+    private final int                                    parallelism;
+    private final Fused<java.util.function.Predicate<T>> source;
+    
+    Seq(int size, boolean indexed, int parallelism, Fused<java.util.function.Predicate<T>> source) {
+        this.size = size;
+        this.indexed = indexed;
+        this.parallelism = parallelism;
+        this.source = source;
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param elements The elements. The array is not copied, so changes to it
+     *            are seen by later runs.
+     * @return A sequence of the given elements.
+     */
+    @SafeVarargs
+    public static <T> Seq<T> of(T... elements) {
+        Objects.requireNonNull(elements);
+        return new Seq<>(elements.length, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(elements[i]))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param list The elements. The list is not copied, so it should support
+     *            fast random access and must not change size while a run is in
+     *            progress.
+     * @return A sequence of the elements of the list.
+     */
+    public static <T> Seq<T> from(List<? extends T> list) {
+        Objects.requireNonNull(list);
+        return new Seq<>(list.size(), true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(list.get(i)))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param size The number of elements.
+     * @param at Computes the element at each position. It must be safe to call
+     *            from several threads if the sequence is run in parallel.
+     * @return A sequence of the elements computed for each position from zero
+     *         up to a size.
+     */
+    public static <T> Seq<T> tabulate(int size, IntFunction<? extends T> at) {
+        checkSize(size);
+        Objects.requireNonNull(at);
+        return new Seq<>(size, true, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(at.apply(i)))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param supplier The supplier.
+     * @param size The number of elements.
+     * @return A sequence of a number of elements from a supplier. It is never
+     *         run in parallel.
+     */
+    public static <T> Seq<T> generate(Supplier<? extends T> supplier, int size) {
+        checkSize(size);
+        Objects.requireNonNull(supplier);
+        return new Seq<>(size, false, 1, (lo, hi, sink) -> {
+            for (int i = lo; i < hi; i++)
+                if (!sink.test(supplier.get()))
+                    return false;
+            return true;
+        });
+    }
+    
+    /**
+     * Split runs of this sequence between workers. See
+     * {@link IntSeq#parallel(int)}.
+     * 
+     * @param parallelism The number of workers. One runs sequentially.
+     * @return This sequence, split between the given number of workers.
+     */
+    public Seq<T> parallel(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least one: " + parallelism);
+        return new Seq<>(size, indexed, parallelism, source);
+    }
+    
+    /**
+     * @param <R> the type of the results
+     * @param functor The function to apply to each element.
+     * @return A sequence of the results.
+     */
+    public <R> Seq<R> map(Function<? super T, ? extends R> functor) {
+        Objects.requireNonNull(functor);
+        return new Seq<>(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, t -> sink.test(functor.apply(t))));
+    }
+    
+    /**
+     * @param functor The function to apply to each element.
+     * @return A sequence of the results.
+     */
+    public IntSeq mapToInt(ToIntFunction<? super T> functor) {
+        Objects.requireNonNull(functor);
+        return new IntSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, t -> sink.test(functor.applyAsInt(t))));
+    }
+    
+    /**
+     * @param functor The function to apply to each element.
+     * @return A sequence of the results.
+     */
+    public DoubleSeq mapToDouble(ToDoubleFunction<? super T> functor) {
+        Objects.requireNonNull(functor);
+        return new DoubleSeq(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, t -> sink.test(functor.applyAsDouble(t))));
+    }
+    
+    /**
+     * @param predicate The test for the elements to keep.
+     * @return A sequence of the elements which pass the test.
+     */
+    public Seq<T> filter(Predicate<? super T> predicate) {
+        Objects.requireNonNull(predicate);
+        return new Seq<>(size, indexed, parallelism, (lo, hi, sink) -> source.push(lo, hi, t -> !predicate.test(t) || sink.test(t)));
+    }
+    
+    /**
+     * @param action The action to perform on each element.
+     */
+    public void forEach(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        run((lo, hi) -> source.push(lo, hi, t -> {
+            action.accept(t);
+            return true;
+        }));
+    }
+    
+    /**
+     * @param identity The identity of the operator.
+     * @param operator An associative operator.
+     * @return The elements combined in order with the operator, or the
+     *         identity if there are none.
+     */
+    public T reduce(T identity, BinaryOperator<T> operator) {
+        Objects.requireNonNull(operator);
+        T result = identity;
+        for (T part : run((lo, hi) -> {
+            List<T> acc = new ArrayList<>(1);
+            acc.add(identity);
+            source.push(lo, hi, t -> {
+                acc.set(0, operator.apply(acc.get(0), t));
+                return true;
+            });
+            return acc.get(0);
+        }))
+            result = operator.apply(result, part);
+        return result;
+    }
+    
+    /**
+     * @return The number of elements.
+     */
+    public long count() {
+        long count = 0;
+        for (long part : run((lo, hi) -> {
+            long[] acc = { 0 };
+            source.push(lo, hi, t -> {
+                acc[0]++;
+                return true;
+            });
+            return acc[0];
+        }))
+            count += part;
+        return count;
+    }
+    
+    /**
+     * @return A new list of all of the elements, in order.
+     */
+    public List<T> toList() {
+        List<List<T>> parts = run((lo, hi) -> {
+            List<T> acc = new ArrayList<>(indexed ? hi - lo : 16);
+            source.push(lo, hi, acc::add);
+            return acc;
+        });
+        if (parts.size() == 1)
+            return parts.get(0);
+        List<T> result = new ArrayList<>();
+        for (List<T> part : parts)
+            result.addAll(part);
+        return result;
+    }
+    
+    /**
+     * Test whether any element passes a test, stopping at the first which
+     * does.
+     * 
+     * @param predicate The test.
+     * @return True if any element passes.
+     */
+    public boolean anyMatch(Predicate<? super T> predicate) {
+        Objects.requireNonNull(predicate);
+        AtomicBoolean found = new AtomicBoolean();
+        boolean shared = workers() > 1;
+        run((lo, hi) -> source.push(lo, hi, t -> {
+            if (predicate.test(t)) {
+                found.set(true);
+                return false;
+            }
+            // Only other workers can have found one since the last element
+            return !shared || !found.get();
+        }));
+        return found.get();
+    }
+    
+    /**
+     * Test whether every element passes a test, stopping at the first which
+     * does not.
+     * 
+     * @param predicate The test.
+     * @return True if every element passes, including when there are none.
+     */
+    public boolean allMatch(Predicate<? super T> predicate) {
+        Objects.requireNonNull(predicate);
+        return !anyMatch(t -> !predicate.test(t));
+    }
+    
+    /**
+     * Test whether no element passes a test, stopping at the first which does.
+     * 
+     * @param predicate The test.
+     * @return True if no element passes, including when there are none.
+     */
+    public boolean noneMatch(Predicate<? super T> predicate) {
+        return !anyMatch(predicate);
+    }
+    
+    /**
+     * Find the first element, stopping as soon as it is found. When run in
+     * parallel, workers stop once an earlier range has found one.
+     * 
+     * @return The first element, or nothing if there are none.
+     * @throws NullPointerException If the first element is null.
+     */
+    public Optional<T> findFirst() {
+        AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+        for (Optional<T> part : run((lo, hi) -> {
+            List<Optional<T>> acc = new ArrayList<>(1);
+            acc.add(Optional.empty());
+            source.push(lo, hi, t -> {
+                if (first.get() < lo)
+                    return false;
+                acc.set(0, Optional.of(t));
+                lower(first, lo);
+                return false;
+            });
+            return acc.get(0);
+        }))
+            if (part.isPresent())
+                return part;
+        return Optional.empty();
+    }
+    
+    private int workers() {
+        return indexed ? parallelism : 1;
+    }
+    
+    private <R> List<R> run(Parallel.Range<R> body) {
+        return Parallel.ranges(size, workers(), body);
+    }
+    
+    /**
+     * @param size The number of elements in a sequence.
+     * @throws IllegalArgumentException If it is negative.
+     */
+    static void checkSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+    }
+    
+    /**
+     * Lower the position of the first range to have found an element.
+     * 
+     * @param first The lowest position found so far.
+     * @param position The position of another range which has found one.
+     */
+    static void lower(AtomicInteger first, int position) {
+        for (int current; (current = first.get()) > position;)
+            if (first.compareAndSet(current, position))
+                return;
+    }
+}
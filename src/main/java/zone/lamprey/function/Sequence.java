@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The steps of a composed operation such as {@code a.andThen(b).andThen(c)},
+ * kept in a flat array rather than as lambdas nested one inside the other.
+ * Running the operation is then a loop, so its stack depth does not grow with
+ * the number of steps.
+ * 
+ * <p>
+ * Sequences are immutable, but appending to one shares its array with the
+ * result whenever the slot after its last step is still free, so building a
+ * sequence one step at a time takes amortized constant time per step. Each
+ * sequence only ever reads its own prefix of the array.
+ * 
+ * <p>
+ * A sequence is recorded as a single {@code andThen} composition whose source
+ * is its first step and whose arguments are the rest, so describing,
+ * interning or profiling it does not recurse once per step either. A step
+ * added by one of the {@code TriConsumer.andThenL/M/R/LM/LR/MR} methods is
+ * recorded as a composition of that method's kind over the operation given to
+ * it.
+ */
+final class Sequence {
+    
+    private final Object[]      steps;
+    private final AtomicInteger claimed;
+    private final int           length;
+    
+    private Sequence(Object[] steps, AtomicInteger claimed, int length) {
+        this.steps = steps;
+        this.claimed = claimed;
+        this.length = length;
+    }
+    
+    private static Sequence of(Object step) {
+        Object[] steps = new Object[4];
+        steps[0] = step;
+        return new Sequence(steps, new AtomicInteger(1), 1);
+    }
+    
+    private Sequence append(Object step) {
+        if (length < steps.length && claimed.compareAndSet(length, length + 1)) {
+            steps[length] = step;
+            return new Sequence(steps, claimed, length + 1);
+        }
+        Object[] grown = Arrays.copyOf(steps, length * 2);
+        grown[length] = step;
+        return new Sequence(grown, new AtomicInteger(length + 1), length + 1);
+    }
+    
+    private Sequence appendAll(Sequence other) {
+        Sequence result = this;
+        for (int i = 0; i < other.length; i++)
+            result = result.append(other.steps[i]);
+        return result;
+    }
+    
+    /**
+     * @param first The operation to run first.
+     * @param after The operation to run after it.
+     * @return An operation which runs the steps of both in turn.
+     */
+    static Runnable runnables(java.lang.Runnable first, java.lang.Runnable after) {
+        Sequence steps = first instanceof OfRunnable ? ((OfRunnable) first).steps : of(first);
+        Sequence all = after instanceof OfRunnable ? steps.appendAll(((OfRunnable) after).steps) : steps.append(after);
+        return all.record(new OfRunnable(all));
+    }
+    
+    /**
+     * @param <T> the type of the first argument
+     * @param <U> the type of the second argument
+     * @param <V> the type of the third argument
+     * @param first The operation to perform first.
+     * @param after The operation to perform after it.
+     * @return An operation which performs the steps of both in turn.
+     */
+    static <T, U, V> TriConsumer<T, U, V> triConsumers(TriConsumer<T, U, V> first, TriConsumer<? super T, ? super U, ? super V> after) {
+        Sequence steps = first instanceof OfTriConsumer ? ((OfTriConsumer<?, ?, ?>) first).steps : of(first);
+        Sequence all = after instanceof OfTriConsumer ? steps.appendAll(((OfTriConsumer<?, ?, ?>) after).steps) : steps.append(after);
+        return all.record(new OfTriConsumer<>(all));
+    }
+    
+    private <F> F record(F composed) {
+        return Composition.recordSteps("andThen", steps, length, composed);
+    }
+    
+    /**
+     * A sequence of runnables.
+     */
+    private static final class OfRunnable implements Runnable {
+        private final Sequence steps;
+        
+        OfRunnable(Sequence steps) {
+            this.steps = steps;
+        }
+        
+        @Override
+        public void run() {
+            Object[] array = steps.steps;
+            ((java.lang.Runnable) array[0]).run();
+            for (int i = 1, n = steps.length; i < n; i++) {
+                Composition.checkDeadline();
+                ((java.lang.Runnable) array[i]).run();
+            }
+        }
+    }
+    
+    /**
+     * A sequence of tri-consumers.
+     */
+    private static final class OfTriConsumer<T, U, V> implements TriConsumer<T, U, V> {
+        private final Sequence steps;
+        
+        OfTriConsumer(Sequence steps) {
+            this.steps = steps;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(T t, U u, V v) {
+            Object[] array = steps.steps;
+            ((TriConsumer<? super T, ? super U, ? super V>) array[0]).accept(t, u, v);
+            for (int i = 1, n = steps.length; i < n; i++) {
+                Composition.checkDeadline();
+                ((TriConsumer<? super T, ? super U, ? super V>) array[i]).accept(t, u, v);
+            }
+        }
+    }
+}
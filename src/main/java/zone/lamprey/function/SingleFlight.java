@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent calls with equal keys. The first caller for a key makes
+ * the call, and everyone else who arrives with that key before it finishes
+ * waits for and shares its outcome. Once a call has finished the next caller
+ * makes a new one, so nothing is cached.
+ * 
+ * @param <R> the type of the result of the calls
+ */
+final class SingleFlight<R> {
+    
+    private static final Object NULL = new Object();
+    
+    private final ConcurrentHashMap<Object, CompletableFuture<R>> flights = new ConcurrentHashMap<>();
+    
+    /**
+     * Make a blocking call, or wait for the one already in flight. Waiters park
+     * until the call finishes.
+     * 
+     * @param key The key of the call.
+     * @param call Makes the call.
+     * @return The result of the call.
+     */
+    R call(Object key, java.util.function.Supplier<? extends R> call) {
+        Object k = key == null ? NULL : key;
+        CompletableFuture<R> flight = new CompletableFuture<>();
+        CompletableFuture<R> leader = flights.putIfAbsent(k, flight);
+        if (leader != null)
+            return join(leader);
+        try {
+            R result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(k, flight);
+        }
+    }
+    
+    /**
+     * Start an asynchronous call, or share the one already in flight.
+     * 
+     * @param key The key of the call.
+     * @param call Starts the call.
+     * @return The future of the call, shared by everyone who asked for it while
+     *         it was in flight.
+     */
+    CompletableFuture<R> callAsync(Object key, java.util.function.Supplier<? extends CompletionStage<R>> call) {
+        Object k = key == null ? NULL : key;
+        CompletableFuture<R> flight = new CompletableFuture<>();
+        CompletableFuture<R> leader = flights.putIfAbsent(k, flight);
+        if (leader != null)
+            return leader;
+        CompletionStage<R> started;
+        try {
+            started = call.get();
+        } catch (Throwable e) {
+            flights.remove(k, flight);
+            flight.completeExceptionally(e);
+            return flight;
+        }
+        started.whenComplete((result, e) -> {
+            flights.remove(k, flight);
+            if (e == null)
+                flight.complete(result);
+            else
+                flight.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        });
+        return flight;
+    }
+    
+    /**
+     * Wait for a future, rethrowing the exception it failed with as it was
+     * thrown where possible.
+     * 
+     * @param <R> The type of the result.
+     * @param flight The future to wait for.
+     * @return The result.
+     */
+    static <R> R join(CompletableFuture<R> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        }
+    }
+}
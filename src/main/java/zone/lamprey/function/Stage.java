@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A description of one stage of a composed function, along with the stages it
+ * was built from. Obtained through {@link Composable#describe()}.
+ * 
+ * <p>
+ * A stage built by a composing method has the name of that method as its kind,
+ * the function it was called on as its first child stage, and any functional
+ * arguments it was given as its remaining child stages. Arguments which are
+ * not functions (such as the value given to {@code applyPartialL} or the count
+ * given to {@code loopFor}) are listed by {@link #arguments()}. Any other
+ * function is a leaf stage of kind {@value #LEAF}.
+ * 
+ * <p>
+ * Composing methods only remember what they built while recording is
+ * {@link #setRecording(boolean) on}, which it is not by default, so that
+ * composing costs nothing extra in programs which never look at the
+ * structure. A function composed while recording was off is a leaf stage.
+ */
+public final class Stage {
+    
+    /**
+     * The kind of a stage which was not built by a composing method.
+     */
+    public static final String LEAF = "function";
+    
+    /**
+     * The system property which turns recording on from startup when set to
+     * {@code true}.
+     */
+    public static final String RECORDING_PROPERTY = "zone.lamprey.function.recordCompositions";
+    
+    private final Object       function;
+    private final String       kind;
+    private final Class<?>     type;
+    private final int          arity;
+    private final String       origin;
+    private final List<Stage>  stages;
+    private final List<Object> arguments;
+    
+    private Stage(Object function, String kind, List<Stage> stages, List<Object> arguments) {
+        this.function = function;
+        this.kind = kind;
+        this.type = FunctionTypes.typeOf(function);
+        this.arity = FunctionTypes.arityOf(function);
+        this.origin = originOf(function);
+        this.stages = Collections.unmodifiableList(stages);
+        this.arguments = Collections.unmodifiableList(arguments);
+    }
+    
+    /**
+     * Turn the recording of compositions on or off. While it is on, each
+     * composing method remembers the function it was called on and the
+     * arguments it was given, which is what {@link Composable#describe()},
+     * {@link Profile}, {@link Interner}, {@code Runnable.chunked} and
+     * {@code Runnable.traced} read back. Recording is off unless the
+     * {@value #RECORDING_PROPERTY} system property is {@code true}, and
+     * creating an {@link Interner} turns it on.
+     * 
+     * @param recording Whether to record the functions composed from now on.
+     */
+    public static void setRecording(boolean recording) {
+        Composition.setRecording(recording);
+    }
+    
+    /**
+     * @return True if compositions are being recorded.
+     */
+    public static boolean isRecording() {
+        return Composition.isRecording();
+    }
+    
+    /**
+     * @param function The function to describe.
+     * @return A description of the given function and every stage it was built
+     *         from.
+     */
+    static Stage of(Object function) {
+        Composition composition = Composition.of(function);
+        if (composition == null)
+            return new Stage(function, LEAF, Collections.emptyList(), Collections.emptyList());
+        List<Stage> stages = new ArrayList<>();
+        List<Object> arguments = new ArrayList<>();
+        stages.add(of(composition.source()));
+        for (Object argument : composition.arguments()) {
+            if (FunctionTypes.typeOf(argument) != null)
+                stages.add(of(argument));
+            else
+                arguments.add(argument);
+        }
+        return new Stage(function, composition.kind(), stages, arguments);
+    }
+    
+    /**
+     * @return The name of the composing method which built this stage, or
+     *         {@value #LEAF} if it was not built by a composing method.
+     */
+    public String kind() {
+        return kind;
+    }
+    
+    /**
+     * @return The most specific functional interface of this package which the
+     *         stage implements, or null if it implements none of them.
+     */
+    public Class<?> type() {
+        return type;
+    }
+    
+    /**
+     * @return The number of arguments taken by the functional method of this
+     *         stage, or -1 if it is not a functional interface of this package.
+     */
+    public int arity() {
+        return arity;
+    }
+    
+    /**
+     * @return The name of the class this stage's code was defined in. For a
+     *         lambda or method reference this is the class containing the
+     *         expression, and for a composed stage it is the interface
+     *         declaring the composing method.
+     */
+    public String origin() {
+        return origin;
+    }
+    
+    /**
+     * @return The stages this stage was built from. The first is the function
+     *         the composing method was called on, followed by any functional
+     *         arguments. A leaf stage has none.
+     */
+    public List<Stage> stages() {
+        return stages;
+    }
+    
+    /**
+     * @return The non-functional arguments this stage was built with.
+     */
+    public List<Object> arguments() {
+        return arguments;
+    }
+    
+    /**
+     * @return True if this stage was built by a composing method.
+     */
+    public boolean isComposed() {
+        return !stages.isEmpty();
+    }
+    
+    /**
+     * @return The number of stages in this tree, including this one.
+     */
+    public int size() {
+        int size = 1;
+        for (Stage stage : stages)
+            size += stage.size();
+        return size;
+    }
+    
+    /**
+     * @return The function this stage describes.
+     */
+    public Object function() {
+        return function;
+    }
+    
+    /**
+     * @return A one-line summary of this stage alone.
+     */
+    String label() {
+        StringBuilder label = new StringBuilder(kind);
+        if (!arguments.isEmpty())
+            label.append(arguments);
+        label.append(": ").append(type == null ? "?" : type.getSimpleName()).append('/').append(arity);
+        return label.append(" (").append(origin).append(')').toString();
+    }
+    
+    /**
+     * @return This stage and all of the stages it was built from, one per line,
+     *         indented to show the tree structure.
+     */
+    @Override
+    public String toString() {
+        StringBuilder tree = new StringBuilder();
+        render(tree, "", "");
+        return tree.toString();
+    }
+    
+    private void render(StringBuilder tree, String lead, String indent) {
+        tree.append(lead).append(label()).append(System.lineSeparator());
+        for (int i = 0; i < stages.size(); i++) {
+            boolean last = i == stages.size() - 1;
+            stages.get(i).render(tree, indent + (last ? "\\- " : "|- "), indent + (last ? "   " : "|  "));
+        }
+    }
+    
+    private static String originOf(Object function) {
+        if (function == null)
+            return "null";
+        String name = function.getClass().getName();
+        int lambda = name.indexOf("$$Lambda");
+        return lambda < 0 ? name : name.substring(0, lambda);
+    }
+}
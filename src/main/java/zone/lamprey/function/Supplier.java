@@ -23,7 +23,27 @@
  */
 package zone.lamprey.function;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import zone.lamprey.function.concurrent.AdaptiveLimit;
+import zone.lamprey.function.concurrent.CircuitBreaker;
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.concurrent.FanOut;
+import zone.lamprey.function.concurrent.Flow;
+import zone.lamprey.function.concurrent.Hedge;
+import zone.lamprey.function.concurrent.RateLimiter;
+import zone.lamprey.function.concurrent.RejectedException;
+import zone.lamprey.function.concurrent.RetryPolicy;
+import zone.lamprey.function.concurrent.SupplierPublisher;
+import zone.lamprey.function.concurrent.TimerWheel;
+import zone.lamprey.function.metrics.Recorder;
+import zone.lamprey.function.metrics.Tracing;
 
 /**
  * Represents a supplier of results.
@@ -41,7 +61,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface Supplier<T> extends java.util.function.Supplier<T> {
+public interface Supplier<T> extends java.util.function.Supplier<T>, Composable {
     
     /**
      * Gets a result.
@@ -60,7 +80,7 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default Runnable consume(Consumer<T> consumer) {
         Objects.requireNonNull(consumer);
-        return () -> consumer.accept(get());
+        return Composition.record("consume", this, consumer, () -> consumer.accept(Composition.checked(get())));
     }
     
     /**
@@ -72,7 +92,7 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default BooleanSupplier predicate(Predicate<T> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.test(get());
+        return Composition.record("predicate", this, functor, () -> functor.test(get()));
     }
     
     /**
@@ -85,7 +105,7 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default <R> Supplier<R> map(Function<T, R> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.apply(get());
+        return Composition.record("map", this, functor, () -> functor.apply(Composition.checked(get())));
     }
     
     /**
@@ -97,7 +117,7 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default DoubleSupplier mapToDouble(ToDoubleFunction<T> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsDouble(get());
+        return Composition.record("mapToDouble", this, functor, () -> functor.applyAsDouble(Composition.checked(get())));
     }
     
     /**
@@ -109,7 +129,7 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default IntSupplier mapToInt(ToIntFunction<T> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsInt(get());
+        return Composition.record("mapToInt", this, functor, () -> functor.applyAsInt(Composition.checked(get())));
     }
     
     /**
@@ -121,6 +141,343 @@ public interface Supplier<T> extends java.util.function.Supplier<T> {
      */
     default LongSupplier mapToLong(ToLongFunction<T> functor) {
         Objects.requireNonNull(functor);
-        return () -> functor.applyAsLong(get());
+        return Composition.record("mapToLong", this, functor, () -> functor.applyAsLong(Composition.checked(get())));
+    }
+    
+    /**
+     * Run a supplier asynchronously.
+     * 
+     * @param executor The executor to run this supplier with.
+     * @return An asynchronous supplier which runs this one with the given
+     *         executor each time it is called.
+     * @see CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)
+     */
+    default AsyncSupplier<T> async(Executor executor) {
+        Objects.requireNonNull(executor);
+        return Composition.record("async", this, executor, () -> CompletableFuture.supplyAsync(Deadline.propagate(this), executor));
+    }
+    
+    /**
+     * Run on a virtual thread, or on a shared pool of platform threads where
+     * virtual threads are not available. See {@link FanOut}.
+     * 
+     * @return An asynchronous supplier which runs this one on a thread of its
+     *         own each time it is called.
+     */
+    default AsyncSupplier<T> onVirtualThread() {
+        return async(FanOut.executor());
+    }
+    
+    /**
+     * Hedge a slow supplier. See {@link Hedge}.
+     * 
+     * @param delay How long to wait for a call before starting a duplicate.
+     * @param maxAttempts The most calls to start at once.
+     * @param executor The executor to make calls with.
+     * @return A supplier which returns the result of whichever call succeeds
+     *         first and cancels the others.
+     */
+    default Supplier<T> hedged(Duration delay, int maxAttempts, Executor executor) {
+        return hedged(Hedge.after(delay, maxAttempts, executor));
+    }
+    
+    /**
+     * Hedge a slow supplier. See {@link Hedge}.
+     * 
+     * @param hedge The hedging policy, which also counts how often hedging
+     *            fired and won.
+     * @return A supplier which returns the result of whichever call succeeds
+     *         first and cancels the others.
+     */
+    default Supplier<T> hedged(Hedge hedge) {
+        Objects.requireNonNull(hedge);
+        return Composition.record("hedged", this, hedge, () -> hedge.call(this));
+    }
+    
+    /**
+     * Pace this supplier, waiting for a permit before each call. See
+     * {@link RateLimiter}.
+     * 
+     * @param permitsPerSecond The most calls per second.
+     * @param burst The most calls allowed back to back after being idle.
+     * @return A supplier which calls this one at most at the given rate.
+     */
+    default Supplier<T> rateLimited(double permitsPerSecond, int burst) {
+        return rateLimited(RateLimiter.of(permitsPerSecond, burst));
+    }
+    
+    /**
+     * Pace this supplier, waiting for a permit before each call.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @return A supplier which calls this one once it has a permit.
+     */
+    default Supplier<T> rateLimited(RateLimiter limiter) {
+        Objects.requireNonNull(limiter);
+        return Composition.record("rateLimited", this, limiter, () -> {
+            limiter.acquire();
+            return get();
+        });
+    }
+    
+    /**
+     * Pace this supplier, calling a fallback instead when there is no permit.
+     * 
+     * @param limiter The limiter to take permits from.
+     * @param fallback The supplier to call when no permit is available.
+     * @return A supplier which returns the result of this one if a permit is
+     *         available, or that of the fallback otherwise.
+     */
+    default Supplier<T> rateLimitedOrElse(RateLimiter limiter, Supplier<? extends T> fallback) {
+        Objects.requireNonNull(limiter);
+        Objects.requireNonNull(fallback);
+        return Composition.record("rateLimitedOrElse", this, limiter, fallback, () -> limiter.tryAcquire() ? get() : fallback.get());
+    }
+    
+    /**
+     * Protect a supplier with a new circuit breaker. See
+     * {@link CircuitBreaker}.
+     * 
+     * @param config The configuration of the breaker.
+     * @return A supplier which calls this one while the breaker is closed.
+     */
+    default Supplier<T> withCircuitBreaker(CircuitBreaker.Config config) {
+        return withCircuitBreaker(CircuitBreaker.of(config));
+    }
+    
+    /**
+     * Protect a supplier with a circuit breaker.
+     * 
+     * @param breaker The breaker, which may be shared with other suppliers.
+     * @return A supplier which calls this one while the breaker is closed, and
+     *         throws {@link RejectedException#CIRCUIT_OPEN} otherwise.
+     */
+    default Supplier<T> withCircuitBreaker(CircuitBreaker breaker) {
+        Objects.requireNonNull(breaker);
+        return Composition.record("withCircuitBreaker", this, breaker, () -> {
+            CircuitBreaker.Permit permit = breaker.acquire();
+            long start = System.nanoTime();
+            try {
+                T result = get();
+                breaker.onSuccess(permit, System.nanoTime() - start);
+                return result;
+            } catch (Throwable e) {
+                breaker.onFailure(permit, System.nanoTime() - start);
+                throw e;
+            }
+        });
+    }
+    
+    /**
+     * Limit how many calls to a supplier may be in flight at once. See
+     * {@link AdaptiveLimit}.
+     * 
+     * @param limit The limit, which may be shared with other suppliers.
+     * @return A supplier which calls this one while the limit allows, and
+     *         throws {@link RejectedException#LIMIT_EXCEEDED} otherwise.
+     */
+    default Supplier<T> withConcurrencyLimit(AdaptiveLimit limit) {
+        Objects.requireNonNull(limit);
+        return Composition.record("withConcurrencyLimit", this, limit, () -> {
+            limit.acquire();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                T result = get();
+                failed = false;
+                return result;
+            } finally {
+                limit.release(System.nanoTime() - start, failed);
+            }
+        });
+    }
+    
+    /**
+     * Retry a supplier when it fails. See {@link RetryPolicy}.
+     * 
+     * @param policy When and how often to retry.
+     * @return A supplier which calls this one until it succeeds or the policy
+     *         gives up.
+     */
+    default Supplier<T> retrying(RetryPolicy policy) {
+        Objects.requireNonNull(policy);
+        return Composition.record("retrying", this, policy, () -> policy.call(this));
+    }
+    
+    /**
+     * Give each call a deadline. See {@link Deadline}.
+     * 
+     * @param timeout How long each call may take.
+     * @return A supplier which attaches the deadline to the calling thread
+     *         for the length of each call. The stages within it which check
+     *         the deadline, such as those of a {@code map} or {@code andThen}
+     *         chain, throw a {@link DeadlineExceededException} once it has
+     *         passed.
+     */
+    default Supplier<T> withTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout);
+        return Composition.record("withTimeout", this, timeout, () -> Deadline.after(timeout).call(this));
+    }
+    
+    /**
+     * Get a result after a delay, on the {@link TimerWheel#shared() shared}
+     * timer wheel. This must be short and must not block.
+     * 
+     * @param delay How long to wait before getting the result.
+     * @return A future of the result. Cancelling it cancels the call if it has
+     *         not been made yet.
+     */
+    default CompletableFuture<T> scheduleAfter(Duration delay) {
+        return scheduleAfter(delay, TimerWheel.shared());
+    }
+    
+    /**
+     * Get a result after a delay, on the given timer wheel.
+     * 
+     * @param delay How long to wait before getting the result.
+     * @param wheel The wheel to schedule the call on.
+     * @return A future of the result. Cancelling it cancels the call if it has
+     *         not been made yet.
+     */
+    default CompletableFuture<T> scheduleAfter(Duration delay, TimerWheel wheel) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        TimerWheel.Timeout timeout = wheel.schedule(() -> {
+            try {
+                result.complete(get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, delay);
+        result.whenComplete((t, e) -> {
+            if (result.isCancelled())
+                timeout.cancel();
+        });
+        return result;
+    }
+    
+    /**
+     * Get a number of results and hand them to a bulk consumer a chunk at a
+     * time, such as {@code container::addAll}. If this supplier is a chain of
+     * {@code map} and {@code mapToX} calls, each stage is applied to a whole
+     * chunk at a time, as described for {@link Runnable#chunked(int)}.
+     * 
+     * @param times The number of results to get.
+     * @param chunkSize The most results in a chunk.
+     * @param bulk The consumer to hand each chunk to. The list is only valid
+     *            until it returns.
+     * @return A Runnable which gets the results and consumes them in chunks.
+     */
+    default Runnable consumeChunked(int times, int chunkSize, java.util.function.Consumer<? super List<T>> bulk) {
+        Objects.requireNonNull(bulk);
+        Chunked.check(chunkSize);
+        return Composition.recordRebuilt("consumeChunked", this, new Object[] { times, chunkSize, bulk }, Chunked.consume(this, times, chunkSize, bulk));
+    }
+    
+    /**
+     * Publish an endless stream of results, getting each one only once a
+     * subscriber has requested it. Results are sent from the
+     * {@link FanOut#executor() shared executor}.
+     * 
+     * @return A publisher of results from this supplier.
+     */
+    default Flow.Publisher<T> publisher() {
+        return publisher(FanOut.executor());
+    }
+    
+    /**
+     * Publish an endless stream of results from the given executor. See
+     * {@link SupplierPublisher}.
+     * 
+     * @param executor The executor to send results from.
+     * @return A publisher of results from this supplier.
+     */
+    default Flow.Publisher<T> publisher(Executor executor) {
+        return new SupplierPublisher<>(this, executor);
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default Supplier<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, () -> {
+            long start = recorder.start();
+            try {
+                return get();
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Trace this supplier with Java Flight Recorder, describing it by its
+     * {@link #describe() composition}. See {@link Tracing}.
+     * 
+     * @return A supplier which records an event for each of its calls that
+     *         takes longer than the event threshold, or this supplier if Flight
+     *         Recorder is not available.
+     */
+    default Supplier<T> traced() {
+        return traced(describe().toString());
+    }
+    
+    /**
+     * Trace this supplier with Java Flight Recorder. See {@link Tracing}.
+     * 
+     * @param stage The description to record with each event.
+     * @return A supplier which records an event for each of its calls that
+     *         takes longer than the event threshold, or this supplier if Flight
+     *         Recorder is not available.
+     */
+    default Supplier<T> traced(String stage) {
+        Objects.requireNonNull(stage);
+        if (!Tracing.isAvailable())
+            return this;
+        return Composition.record("traced", this, Tracing.trace(this, stage));
+    }
+    
+    /**
+     * Call suppliers concurrently and wait for all of them to finish. See
+     * {@link FanOut#invokeAll(Collection)}.
+     * 
+     * @param <T> The type of the results.
+     * @param suppliers The suppliers to call.
+     * @return The results, in the order of the suppliers.
+     */
+    static <T> List<T> invokeAll(Collection<? extends java.util.function.Supplier<? extends T>> suppliers) {
+        return FanOut.invokeAll(suppliers);
+    }
+    
+    /**
+     * Call suppliers concurrently, cancelling the others as soon as one fails.
+     * See {@link FanOut#fanOut(Collection)}.
+     * 
+     * @param <T> The type of the results.
+     * @param suppliers The suppliers to call.
+     * @return The results, in the order of the suppliers.
+     */
+    static <T> List<T> fanOut(Collection<? extends java.util.function.Supplier<? extends T>> suppliers) {
+        return FanOut.fanOut(suppliers);
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default Supplier<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, () -> {
+            Deadline.checkCurrent();
+            return get();
+        });
     }
 }
@@ -23,6 +23,12 @@
  */
 package zone.lamprey.function;
 
+import java.util.Objects;
+
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation upon three operands of the same type, producing a
  * result of the same type as the operands. This is a specialization of
@@ -52,7 +58,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default Supplier<T> applyPartial(T t, T u, T v) {
-        return () -> apply(t, u, v);
+        return Composition.record("applyPartial", this, t, u, v, () -> apply(t, u, v));
     }
     
     /**
@@ -65,7 +71,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default UnaryOperator<T> applyPartialLM(T t, T u) {
-        return v -> apply(t, u, v);
+        return Composition.record("applyPartialLM", this, t, u, v -> apply(t, u, v));
     }
     
     /**
@@ -78,7 +84,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default UnaryOperator<T> applyPartialLR(T t, T v) {
-        return u -> apply(t, u, v);
+        return Composition.record("applyPartialLR", this, t, v, u -> apply(t, u, v));
     }
     
     /**
@@ -91,7 +97,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default UnaryOperator<T> applyPartialMR(T u, T v) {
-        return t -> apply(t, u, v);
+        return Composition.record("applyPartialMR", this, u, v, t -> apply(t, u, v));
     }
     
     /**
@@ -103,7 +109,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default BinaryOperator<T> applyPartialL(T t) {
-        return (u, v) -> apply(t, u, v);
+        return Composition.record("applyPartialL", this, t, (u, v) -> apply(t, u, v));
     }
     
     /**
@@ -115,7 +121,7 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default BinaryOperator<T> applyPartialM(T u) {
-        return (t, v) -> apply(t, u, v);
+        return Composition.record("applyPartialM", this, u, (t, v) -> apply(t, u, v));
     }
     
     /**
@@ -127,6 +133,41 @@ public interface TernaryOperator<T> extends TriFunction<T, T, T, T> {
      */
     @Override
     default BinaryOperator<T> applyPartialR(T v) {
-        return (t, u) -> apply(t, u, v);
+        return Composition.record("applyPartialR", this, v, (t, u) -> apply(t, u, v));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default TernaryOperator<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u, v) -> {
+            long start = recorder.start();
+            try {
+                return apply(t, u, v);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default TernaryOperator<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u, v) -> {
+            Deadline.checkCurrent();
+            return apply(t, u, v);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts two arguments and produces a double-valued
  * result. This is the {@code double}-producing primitive specialization for
@@ -75,7 +79,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     @Override
     default DoubleSupplier applyPartial(T t, U u) {
-        return () -> applyAsDouble(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsDouble(t, u));
     }
     
     /**
@@ -87,7 +91,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     @Override
     default ToDoubleFunction<U> applyPartialL(T t) {
-        return u -> applyAsDouble(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsDouble(t, u));
     }
     
     /**
@@ -99,7 +103,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     @Override
     default ToDoubleFunction<T> applyPartialR(U u) {
-        return t -> applyAsDouble(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsDouble(t, u));
     }
     
     /**
@@ -111,7 +115,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default BiConsumer<T, U> consume(DoubleConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsDouble(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -123,7 +127,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default ToDoubleBiFunction<T, U> map(DoubleUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsDouble(applyAsDouble(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsDouble(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -136,7 +140,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default <S> BiFunction<T, U, S> mapToObj(DoubleFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(applyAsDouble(t, u));
+        return Composition.record("mapToObj", this, functor, (t, u) -> functor.apply(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -148,7 +152,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default BiPredicate<T, U> mapToPredicate(DoublePredicate functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.test(applyAsDouble(t, u));
+        return Composition.record("mapToPredicate", this, functor, (t, u) -> functor.test(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -160,7 +164,7 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default ToIntBiFunction<T, U> mapToInt(DoubleToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsInt(applyAsDouble(t, u));
+        return Composition.record("mapToInt", this, functor, (t, u) -> functor.applyAsInt(Composition.checked(applyAsDouble(t, u))));
     }
     
     /**
@@ -172,6 +176,41 @@ public interface ToDoubleBiFunction<T, U> extends BiFunction<T, U, Double>, java
      */
     default ToLongBiFunction<T, U> mapToLong(DoubleToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsLong(applyAsDouble(t, u));
+        return Composition.record("mapToLong", this, functor, (t, u) -> functor.applyAsLong(Composition.checked(applyAsDouble(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToDoubleBiFunction<T, U> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsDouble(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToDoubleBiFunction<T, U> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsDouble(t, u);
+        });
     }
 }
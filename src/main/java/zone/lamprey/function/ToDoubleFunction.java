@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that produces a double-valued result. This is the
  * {@code double}-producing primitive specialization for {@link Function}.
@@ -70,7 +74,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     @Override
     default DoubleSupplier applyPartial(T t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -82,7 +86,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default Consumer<T> consume(DoubleConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsDouble(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -94,7 +98,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default ToDoubleFunction<T> map(DoubleUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(applyAsDouble(t));
+        return Composition.record("map", this, functor, t -> functor.applyAsDouble(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -107,7 +111,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default <S> Function<T, S> mapToObj(DoubleFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsDouble(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -119,7 +123,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default Predicate<T> mapToPredicate(DoublePredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsDouble(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -131,7 +135,7 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default ToIntFunction<T> mapToInt(DoubleToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(applyAsDouble(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(applyAsDouble(t))));
     }
     
     /**
@@ -143,6 +147,41 @@ public interface ToDoubleFunction<T> extends Function<T, Double>, java.util.func
      */
     default ToLongFunction<T> mapToLong(DoubleToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(applyAsDouble(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(applyAsDouble(t))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToDoubleFunction<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsDouble(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToDoubleFunction<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsDouble(t);
+        });
     }
 }
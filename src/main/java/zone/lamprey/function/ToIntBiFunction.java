@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts two arguments and produces an int-valued
  * result. This is the {@code int}-producing primitive specialization for
@@ -75,7 +79,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     @Override
     default IntSupplier applyPartial(T t, U u) {
-        return () -> applyAsInt(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsInt(t, u));
     }
     
     /**
@@ -87,7 +91,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     @Override
     default ToIntFunction<U> applyPartialL(T t) {
-        return u -> applyAsInt(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsInt(t, u));
     }
     
     /**
@@ -99,7 +103,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     @Override
     default ToIntFunction<T> applyPartialR(U u) {
-        return t -> applyAsInt(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsInt(t, u));
     }
     
     /**
@@ -111,7 +115,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default BiConsumer<T, U> consume(IntConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsInt(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -123,7 +127,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default ToIntBiFunction<T, U> map(IntUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsInt(applyAsInt(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsInt(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -136,7 +140,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default <S> BiFunction<T, U, S> mapToObj(IntFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(applyAsInt(t, u));
+        return Composition.record("mapToObj", this, functor, (t, u) -> functor.apply(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -148,7 +152,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default BiPredicate<T, U> mapToPredicate(IntPredicate functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.test(applyAsInt(t, u));
+        return Composition.record("mapToPredicate", this, functor, (t, u) -> functor.test(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -160,7 +164,7 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default ToDoubleBiFunction<T, U> mapToDouble(IntToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsDouble(applyAsInt(t, u));
+        return Composition.record("mapToDouble", this, functor, (t, u) -> functor.applyAsDouble(Composition.checked(applyAsInt(t, u))));
     }
     
     /**
@@ -172,6 +176,41 @@ public interface ToIntBiFunction<T, U> extends BiFunction<T, U, Integer>, java.u
      */
     default ToLongBiFunction<T, U> mapToLong(IntToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsLong(applyAsInt(t, u));
+        return Composition.record("mapToLong", this, functor, (t, u) -> functor.applyAsLong(Composition.checked(applyAsInt(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToIntBiFunction<T, U> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsInt(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToIntBiFunction<T, U> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsInt(t, u);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that produces an int-valued result. This is the
  * {@code int}-producing primitive specialization for {@link Function}.
@@ -46,6 +50,12 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     public static final ToIntFunction<?> HASH_CODE = Objects::hashCode;
     
+    /**
+     * {@link #HASH_CODE}, {@link #mixed() mixed} so that every bit of the
+     * result depends on every bit of the hash code.
+     */
+    public static final ToIntFunction<?> MIXED_HASH_CODE = ((ToIntFunction<Object>) Objects::hashCode).mixed();
+    
     /**
      * Applies this function to the given argument.
      *
@@ -75,7 +85,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     @Override
     default IntSupplier applyPartial(T t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -87,7 +97,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default Consumer<T> consume(IntConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsInt(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -99,7 +109,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default ToIntFunction<T> map(IntUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(applyAsInt(t));
+        return Composition.record("map", this, functor, t -> functor.applyAsInt(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -112,7 +122,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default <S> Function<T, S> mapToObj(IntFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsInt(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -124,7 +134,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default Predicate<T> mapToPredicate(IntPredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsInt(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -136,7 +146,7 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default ToDoubleFunction<T> mapToDouble(IntToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(applyAsInt(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(applyAsInt(t))));
     }
     
     /**
@@ -148,6 +158,60 @@ public interface ToIntFunction<T> extends Function<T, Integer>, java.util.functi
      */
     default ToLongFunction<T> mapToLong(IntToLongFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(applyAsInt(t));
+        return Composition.record("mapToLong", this, functor, t -> functor.applyAsLong(Composition.checked(applyAsInt(t))));
+    }
+    
+    /**
+     * Mix the bits of this function's results with the finalizer of
+     * MurmurHash3. Weak hashes, such as those of small integers or of keys
+     * which differ only in a few bits, become evenly spread over both the low
+     * and the high bits, which suits them for partitioning or bucketing.
+     * 
+     * @return A function which returns the mixed result of this one.
+     */
+    default ToIntFunction<T> mixed() {
+        return Composition.record("mixed", this, t -> {
+            int h = applyAsInt(t);
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            return h ^ h >>> 16;
+        });
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToIntFunction<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsInt(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToIntFunction<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsInt(t);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts two arguments and produces a long-valued
  * result. This is the {@code long}-producing primitive specialization for
@@ -75,7 +79,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     @Override
     default LongSupplier applyPartial(T t, U u) {
-        return () -> applyAsLong(t, u);
+        return Composition.record("applyPartial", this, t, u, () -> applyAsLong(t, u));
     }
     
     /**
@@ -87,7 +91,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     @Override
     default ToLongFunction<U> applyPartialL(T t) {
-        return u -> applyAsLong(t, u);
+        return Composition.record("applyPartialL", this, t, u -> applyAsLong(t, u));
     }
     
     /**
@@ -99,7 +103,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     @Override
     default ToLongFunction<T> applyPartialR(U u) {
-        return t -> applyAsLong(t, u);
+        return Composition.record("applyPartialR", this, u, t -> applyAsLong(t, u));
     }
     
     /**
@@ -111,7 +115,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default BiConsumer<T, U> consume(LongConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u) -> consumer.accept(applyAsLong(t, u));
+        return Composition.record("consume", this, consumer, (t, u) -> consumer.accept(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -123,7 +127,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default ToLongBiFunction<T, U> map(LongUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsLong(applyAsLong(t, u));
+        return Composition.record("map", this, functor, (t, u) -> functor.applyAsLong(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -136,7 +140,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default <S> BiFunction<T, U, S> mapToObj(LongFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.apply(applyAsLong(t, u));
+        return Composition.record("mapToObj", this, functor, (t, u) -> functor.apply(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -148,7 +152,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default BiPredicate<T, U> mapToPredicate(LongPredicate functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.test(applyAsLong(t, u));
+        return Composition.record("mapToPredicate", this, functor, (t, u) -> functor.test(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -160,7 +164,7 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default ToIntBiFunction<T, U> mapToInt(LongToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsInt(applyAsLong(t, u));
+        return Composition.record("mapToInt", this, functor, (t, u) -> functor.applyAsInt(Composition.checked(applyAsLong(t, u))));
     }
     
     /**
@@ -172,6 +176,41 @@ public interface ToLongBiFunction<T, U> extends BiFunction<T, U, Long>, java.uti
      */
     default ToDoubleBiFunction<T, U> mapToDouble(LongToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return (t, u) -> functor.applyAsDouble(applyAsLong(t, u));
+        return Composition.record("mapToDouble", this, functor, (t, u) -> functor.applyAsDouble(Composition.checked(applyAsLong(t, u))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToLongBiFunction<T, U> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u) -> {
+            long start = recorder.start();
+            try {
+                return applyAsLong(t, u);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToLongBiFunction<T, U> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u) -> {
+            Deadline.checkCurrent();
+            return applyAsLong(t, u);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that produces a long-valued result. This is the
  * {@code long}-producing primitive specialization for {@link Function}.
@@ -70,7 +74,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     @Override
     default LongSupplier applyPartial(T t) {
-        return () -> apply(t);
+        return Composition.record("applyPartial", this, t, () -> apply(t));
     }
     
     /**
@@ -82,7 +86,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default Consumer<T> consume(LongConsumer consumer) {
         Objects.requireNonNull(consumer);
-        return t -> consumer.accept(applyAsLong(t));
+        return Composition.record("consume", this, consumer, t -> consumer.accept(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -94,7 +98,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default ToLongFunction<T> map(LongUnaryOperator functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsLong(applyAsLong(t));
+        return Composition.record("map", this, functor, t -> functor.applyAsLong(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -107,7 +111,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default <S> Function<T, S> mapToObj(LongFunction<? extends S> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(applyAsLong(t));
+        return Composition.record("mapToObj", this, functor, t -> functor.apply(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -119,7 +123,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default Predicate<T> mapToPredicate(LongPredicate functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.test(applyAsLong(t));
+        return Composition.record("mapToPredicate", this, functor, t -> functor.test(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -131,7 +135,7 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default ToIntFunction<T> mapToInt(LongToIntFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsInt(applyAsLong(t));
+        return Composition.record("mapToInt", this, functor, t -> functor.applyAsInt(Composition.checked(applyAsLong(t))));
     }
     
     /**
@@ -143,6 +147,41 @@ public interface ToLongFunction<T> extends Function<T, Long>, java.util.function
      */
     default ToDoubleFunction<T> mapToDouble(LongToDoubleFunction functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.applyAsDouble(applyAsLong(t));
+        return Composition.record("mapToDouble", this, functor, t -> functor.applyAsDouble(Composition.checked(applyAsLong(t))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default ToLongFunction<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return applyAsLong(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default ToLongFunction<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return applyAsLong(t);
+        });
     }
 }
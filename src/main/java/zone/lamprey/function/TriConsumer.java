@@ -23,6 +23,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * This class is a consumer that takes three arugments.
  * 
@@ -31,7 +35,7 @@ import java.util.Objects;
  * @param <V> The third parameter.
  */
 @FunctionalInterface
-public interface TriConsumer<T, U, V> {
+public interface TriConsumer<T, U, V> extends Composable {
     
     /**
      * Performs this operation on the given arguments.
@@ -57,10 +61,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThen(TriConsumer<? super T, ? super U, ? super V> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(l, r, p);
-        };
+        return Sequence.triConsumers(this, after);
     }
     
     /**
@@ -78,10 +79,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenLM(BiConsumer<? super T, ? super U> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(l, r);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenLM", after, (l, r, p) -> after.accept(l, r)));
     }
     
     /**
@@ -99,10 +97,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenLR(BiConsumer<? super T, ? super V> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(l, p);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenLR", after, (l, r, p) -> after.accept(l, p)));
     }
     
     /**
@@ -120,10 +115,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenMR(BiConsumer<? super U, ? super V> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(r, p);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenMR", after, (l, r, p) -> after.accept(r, p)));
     }
     
     /**
@@ -141,10 +133,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenL(Consumer<? super T> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(l);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenL", after, (l, r, p) -> after.accept(l)));
     }
     
     /**
@@ -162,10 +151,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenM(Consumer<? super U> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(r);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenM", after, (l, r, p) -> after.accept(r)));
     }
     
     /**
@@ -183,10 +169,7 @@ public interface TriConsumer<T, U, V> {
     default TriConsumer<T, U, V> andThenR(Consumer<? super V> after) {
         Objects.requireNonNull(after);
         
-        return (l, r, p) -> {
-            accept(l, r, p);
-            after.accept(p);
-        };
+        return Sequence.triConsumers(this, Composition.record("andThenR", after, (l, r, p) -> after.accept(p)));
     }
     
     /**
@@ -199,7 +182,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default Runnable applyPartial(T t, U u, V v) {
-        return () -> accept(t, u, v);
+        return Composition.record("applyPartial", this, t, u, v, () -> accept(t, u, v));
     }
     
     /**
@@ -211,7 +194,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default Consumer<V> applyPartialLM(T t, U u) {
-        return v -> accept(t, u, v);
+        return Composition.record("applyPartialLM", this, t, u, v -> accept(t, u, v));
     }
     
     /**
@@ -223,7 +206,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default Consumer<U> applyPartialLR(T t, V v) {
-        return u -> accept(t, u, v);
+        return Composition.record("applyPartialLR", this, t, v, u -> accept(t, u, v));
     }
     
     /**
@@ -235,7 +218,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default Consumer<T> applyPartialMR(U u, V v) {
-        return t -> accept(t, u, v);
+        return Composition.record("applyPartialMR", this, u, v, t -> accept(t, u, v));
     }
     
     /**
@@ -246,7 +229,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default BiConsumer<V, U> applyPartialL(T t) {
-        return (v, u) -> accept(t, u, v);
+        return Composition.record("applyPartialL", this, t, (v, u) -> accept(t, u, v));
     }
     
     /**
@@ -257,7 +240,7 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default BiConsumer<T, V> applyPartialM(U u) {
-        return (t, v) -> accept(t, u, v);
+        return Composition.record("applyPartialM", this, u, (t, v) -> accept(t, u, v));
     }
     
     /**
@@ -268,6 +251,41 @@ public interface TriConsumer<T, U, V> {
      * @return the function result
      */
     default BiConsumer<T, U> applyPartialR(V v) {
-        return (t, u) -> accept(t, u, v);
+        return Composition.record("applyPartialR", this, v, (t, u) -> accept(t, u, v));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default TriConsumer<T, U, V> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u, v) -> {
+            long start = recorder.start();
+            try {
+                accept(t, u, v);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default TriConsumer<T, U, V> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u, v) -> {
+            Deadline.checkCurrent();
+            accept(t, u, v);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents a function that accepts three arguments and produces a result.
  * This is the three-arity specialization of {@link Function}.
@@ -42,7 +46,7 @@ import java.util.Objects;
  * @since 1.8
  */
 @FunctionalInterface
-public interface TriFunction<T, U, V, R> {
+public interface TriFunction<T, U, V, R> extends Composable {
     
     /**
      * Applies this function to the given arguments.
@@ -64,7 +68,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default Supplier<R> applyPartial(T t, U u, V v) {
-        return () -> apply(t, u, v);
+        return Composition.record("applyPartial", this, t, u, v, () -> apply(t, u, v));
     }
     
     /**
@@ -76,7 +80,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default Function<V, R> applyPartialLM(T t, U u) {
-        return v -> apply(t, u, v);
+        return Composition.record("applyPartialLM", this, t, u, v -> apply(t, u, v));
     }
     
     /**
@@ -88,7 +92,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default Function<U, R> applyPartialLR(T t, V v) {
-        return u -> apply(t, u, v);
+        return Composition.record("applyPartialLR", this, t, v, u -> apply(t, u, v));
     }
     
     /**
@@ -100,7 +104,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default Function<T, R> applyPartialMR(U u, V v) {
-        return t -> apply(t, u, v);
+        return Composition.record("applyPartialMR", this, u, v, t -> apply(t, u, v));
     }
     
     /**
@@ -111,7 +115,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default BiFunction<V, U, R> applyPartialL(T t) {
-        return (v, u) -> apply(t, u, v);
+        return Composition.record("applyPartialL", this, t, (v, u) -> apply(t, u, v));
     }
     
     /**
@@ -122,7 +126,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default BiFunction<T, V, R> applyPartialM(U u) {
-        return (t, v) -> apply(t, u, v);
+        return Composition.record("applyPartialM", this, u, (t, v) -> apply(t, u, v));
     }
     
     /**
@@ -133,7 +137,7 @@ public interface TriFunction<T, U, V, R> {
      * @return the function result
      */
     default BiFunction<T, U, R> applyPartialR(V v) {
-        return (t, u) -> apply(t, u, v);
+        return Composition.record("applyPartialR", this, v, (t, u) -> apply(t, u, v));
     }
     
     /**
@@ -145,7 +149,7 @@ public interface TriFunction<T, U, V, R> {
      */
     default TriConsumer<T, U, V> consume(Consumer<R> consumer) {
         Objects.requireNonNull(consumer);
-        return (t, u, v) -> consumer.accept(apply(t, u, v));
+        return Composition.record("consume", this, consumer, (t, u, v) -> consumer.accept(Composition.checked(apply(t, u, v))));
     }
     
     /**
@@ -158,6 +162,41 @@ public interface TriFunction<T, U, V, R> {
      */
     default <S> TriFunction<T, U, V, S> map(Function<? super R, ? extends S> functor) {
         Objects.requireNonNull(functor);
-        return (t, u, v) -> functor.apply(apply(t, u, v));
+        return Composition.record("map", this, functor, (t, u, v) -> functor.apply(Composition.checked(apply(t, u, v))));
+    }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default TriFunction<T, U, V, R> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, (t, u, v) -> {
+            long start = recorder.start();
+            try {
+                return apply(t, u, v);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default TriFunction<T, U, V, R> withinDeadline() {
+        return Composition.record("withinDeadline", this, (t, u, v) -> {
+            Deadline.checkCurrent();
+            return apply(t, u, v);
+        });
     }
 }
@@ -25,6 +25,10 @@ package zone.lamprey.function;
 
 import java.util.Objects;
 
+import zone.lamprey.function.concurrent.Deadline;
+import zone.lamprey.function.concurrent.DeadlineExceededException;
+import zone.lamprey.function.metrics.Recorder;
+
 /**
  * Represents an operation on a single operand that produces a result of the
  * same type as its operand. This is a specialization of {@code Function} for
@@ -51,7 +55,7 @@ public interface UnaryOperator<T> extends Function<T, T>, java.util.function.Una
      */
     default UnaryOperator<T> map(UnaryOperator<T> functor) {
         Objects.requireNonNull(functor);
-        return t -> functor.apply(apply(t));
+        return Composition.record("map", this, functor, t -> functor.apply(Composition.checked(apply(t))));
     }
     
     /**
@@ -114,7 +118,7 @@ public interface UnaryOperator<T> extends Function<T, T>, java.util.function.Una
      *         number of times as specified by the depth parameter.
      */
     default UnaryOperator<T> recursive(int depth) {
-        return t -> recurse(t, depth);
+        return Composition.record("recursive", this, depth, t -> recurse(t, depth));
     }
     
     /**
@@ -128,7 +132,7 @@ public interface UnaryOperator<T> extends Function<T, T>, java.util.function.Una
      */
     default UnaryOperator<T> recursive(Predicate<T> terminalCondition) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition);
+        return Composition.record("recursive", this, terminalCondition, t -> recurse(t, terminalCondition));
     }
     
     /**
@@ -145,7 +149,7 @@ public interface UnaryOperator<T> extends Function<T, T>, java.util.function.Una
      */
     default UnaryOperator<T> recursive(Predicate<T> terminalCondition, int maxDepth) {
         Objects.requireNonNull(terminalCondition);
-        return t -> recurse(t, terminalCondition, maxDepth);
+        return Composition.record("recursive", this, terminalCondition, maxDepth, t -> recurse(t, terminalCondition, maxDepth));
     }
     
     /**
@@ -157,4 +161,39 @@ public interface UnaryOperator<T> extends Function<T, T>, java.util.function.Una
     static <T> UnaryOperator<T> identity() {
         return t -> t;
     }
+    
+    /**
+     * Time this function. Each call is counted by the given recorder, and
+     * timed according to its sample rate.
+     * 
+     * @param recorder The recorder to count and time calls with.
+     * @return A function which calls this one and records its latency.
+     */
+    @Override
+    default UnaryOperator<T> timed(Recorder recorder) {
+        Objects.requireNonNull(recorder);
+        return Composition.record("timed", this, recorder, t -> {
+            long start = recorder.start();
+            try {
+                return apply(t);
+            } finally {
+                recorder.stop(start);
+            }
+        });
+    }
+    
+    /**
+     * Check the {@link Deadline#current() deadline} of the calling thread
+     * before each call.
+     * 
+     * @return A function which calls this one, or throws a
+     *         {@link DeadlineExceededException} if the deadline has passed.
+     */
+    @Override
+    default UnaryOperator<T> withinDeadline() {
+        return Composition.record("withinDeadline", this, t -> {
+            Deadline.checkCurrent();
+            return apply(t);
+        });
+    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limit on the number of calls in flight which adapts to the latency of the
+ * calls it lets through. When a backend slows down the limit shrinks, so
+ * extra calls are rejected straight away with
+ * {@link RejectedException#LIMIT_EXCEEDED} instead of piling up behind it.
+ * 
+ * <p>
+ * Two algorithms are provided:
+ * <ul>
+ * <li>{@link #aimd AIMD}, which grows the limit by one after each successful
+ * call and cuts it by a tenth after each failed or timed out one.</li>
+ * <li>{@link #vegas Vegas}, which estimates how many calls are queued in the
+ * backend from how far the latency has risen above the lowest seen, and keeps
+ * that queue short.</li>
+ * </ul>
+ * 
+ * <p>
+ * Taking and rejecting a permit never locks or allocates.
+ */
+public abstract class AdaptiveLimit {
+    
+    private final int           minLimit;
+    private final int           maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder     rejected = new LongAdder();
+    
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max: " + minLimit + ", " + initialLimit + ", " + maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+    
+    /**
+     * @param initialLimit The limit to start with.
+     * @param minLimit The lowest the limit may go.
+     * @param maxLimit The highest the limit may go.
+     * @param timeout How long a successful call may take before it is treated
+     *            as a failure.
+     * @return An additive-increase, multiplicative-decrease limit.
+     */
+    public static AdaptiveLimit aimd(int initialLimit, int minLimit, int maxLimit, Duration timeout) {
+        return new Aimd(initialLimit, minLimit, maxLimit, timeout.toNanos());
+    }
+    
+    /**
+     * @param initialLimit The limit to start with.
+     * @param minLimit The lowest the limit may go.
+     * @param maxLimit The highest the limit may go.
+     * @return A limit which follows the delay-based TCP Vegas algorithm.
+     */
+    public static AdaptiveLimit vegas(int initialLimit, int minLimit, int maxLimit) {
+        return new Vegas(initialLimit, minLimit, maxLimit);
+    }
+    
+    /**
+     * Take a permit to make a call. Every permit taken must be given back with
+     * {@link #release(long, boolean)}.
+     * 
+     * @throws RejectedException If the limit has been reached.
+     */
+    public final void acquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                rejected.increment();
+                throw RejectedException.LIMIT_EXCEEDED;
+            }
+            if (inFlight.compareAndSet(current, current + 1))
+                return;
+        }
+    }
+    
+    /**
+     * Give back a permit once a call has finished, and adapt the limit to how
+     * it went.
+     * 
+     * @param nanos How long the call took.
+     * @param failed True if the call failed.
+     */
+    public final void release(long nanos, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        observe(nanos);
+        for (;;) {
+            int old = limit.get();
+            int updated = Math.max(minLimit, Math.min(maxLimit, adapt(old, current, nanos, failed)));
+            if (updated == old || limit.compareAndSet(old, updated))
+                return;
+        }
+    }
+    
+    /**
+     * @return The current limit.
+     */
+    public final int limit() {
+        return limit.get();
+    }
+    
+    /**
+     * @return The number of calls in flight.
+     */
+    public final int inFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * @return The number of calls rejected.
+     */
+    public final long rejected() {
+        return rejected.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName().toLowerCase() + " limit=" + limit() + " inFlight=" + inFlight() + " rejected=" + rejected();
+    }
+    
+    /**
+     * Take note of how long a call took, once per call.
+     * 
+     * @param nanos How long the call took.
+     */
+    void observe(long nanos) {
+    }
+    
+    /**
+     * @param limit The current limit.
+     * @param inFlight The number of calls in flight when the call finished,
+     *            including itself.
+     * @param nanos How long the call took.
+     * @param failed True if the call failed.
+     * @return The new limit, before it is clamped to the minimum and maximum.
+     */
+    abstract int adapt(int limit, int inFlight, long nanos, boolean failed);
+    
+    private static final class Aimd extends AdaptiveLimit {
+        private final long timeout;
+        
+        Aimd(int initialLimit, int minLimit, int maxLimit, long timeout) {
+            super(initialLimit, minLimit, maxLimit);
+            this.timeout = timeout;
+        }
+        
+        @Override
+        int adapt(int limit, int inFlight, long nanos, boolean failed) {
+            if (failed || nanos > timeout)
+                return (int) (limit * 0.9);
+            // Only grow while the limit is actually being used.
+            return inFlight * 2 >= limit ? limit + 1 : limit;
+        }
+    }
+    
+    private static final class Vegas extends AdaptiveLimit {
+        private static final int PROBE_INTERVAL = 1000;
+        
+        private final AtomicLong    noLoadLatency = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicInteger samples       = new AtomicInteger();
+        
+        Vegas(int initialLimit, int minLimit, int maxLimit) {
+            super(initialLimit, minLimit, maxLimit);
+        }
+        
+        @Override
+        void observe(long nanos) {
+            // Forget the lowest latency now and then, in case the backend has
+            // become slower for good.
+            if (samples.incrementAndGet() % PROBE_INTERVAL == 0)
+                noLoadLatency.set(nanos);
+            long lowest;
+            while (nanos < (lowest = noLoadLatency.get()) && !noLoadLatency.compareAndSet(lowest, nanos))
+                ;
+        }
+        
+        @Override
+        int adapt(int limit, int inFlight, long nanos, boolean failed) {
+            long lowest = noLoadLatency.get();
+            int step = Math.max(1, log10(limit));
+            if (failed)
+                return limit - step;
+            if (nanos == 0)
+                return limit;
+            int queued = (int) Math.ceil(limit * (1 - (double) lowest / nanos));
+            if (queued < 3 * step)
+                return inFlight * 2 >= limit ? limit + step : limit;
+            if (queued > 6 * step)
+                return limit - step;
+            return limit;
+        }
+        
+        private static int log10(int value) {
+            return (int) Math.log10(value);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Buffers elements and hands them to a bulk callback in batches. A batch is
+ * flushed once it holds the batch size, or once the linger time has passed
+ * since its first element was added, whichever is first. Flushes run one at a
+ * time and in order on {@link FanOut#executor()}, so the threads adding
+ * elements never wait for the sink.
+ * 
+ * <pre>{@code
+ *     try (BatchBuffer.OfObject<Event> buffer = BatchBuffer.of(512, Duration.ofMillis(5), Overflow.BLOCK, log::writeAll)) {
+ *         events.forEach(buffer);
+ *     }
+ * }</pre>
+ * 
+ * <p>
+ * Up to two full batches may wait while another is being flushed. When a
+ * batch fills up beyond that, the flusher has fallen behind and the
+ * {@link Overflow} policy decides what happens to further elements. The
+ * primitive buffers hand out the same arrays again once their flushes
+ * return, so they allocate nothing per element or per batch; a flush callback
+ * must copy anything it wants to keep. Closing a buffer flushes it, and any
+ * element added after that is rejected with an {@link IllegalStateException}.
+ * 
+ * @param <B> the type of the batches
+ */
+public abstract class BatchBuffer<B> implements AutoCloseable {
+    
+    /**
+     * What to do with an element when the buffer is full and the flusher has
+     * fallen behind.
+     */
+    public enum Overflow {
+        /**
+         * Wait for the flusher to catch up.
+         */
+        BLOCK,
+        /**
+         * Discard the element. Dropped elements are counted by
+         * {@link BatchBuffer#dropped()}.
+         */
+        DROP,
+        /**
+         * Throw {@link RejectedException#BUFFER_FULL}.
+         */
+        REJECT
+    }
+    
+    private static final int MAX_PENDING = 2;
+    
+    private final int                       size;
+    private final long                      linger;
+    private final Overflow                  overflow;
+    private final ObjIntConsumer<? super B> flush;
+    private final ReentrantLock             lock     = new ReentrantLock();
+    private final Condition                 room     = lock.newCondition();
+    private final ArrayDeque<Batch<B>>      full     = new ArrayDeque<>();
+    private final ArrayDeque<B>             spare    = new ArrayDeque<>();
+    private final LongAdder                 flushes  = new LongAdder();
+    private final LongAdder                 dropped  = new LongAdder();
+    private final LongAdder                 failures = new LongAdder();
+    private B                               current;
+    private int                             count;
+    private long                            generation;
+    private boolean                         due;
+    private boolean                         flushing;
+    private boolean                         closed;
+    
+    BatchBuffer(int size, Duration linger, Overflow overflow, ObjIntConsumer<? super B> flush) {
+        if (size < 1)
+            throw new IllegalArgumentException("Batches must hold at least one element: " + size);
+        if (linger.isNegative())
+            throw new IllegalArgumentException("Linger time must not be negative: " + linger);
+        this.size = size;
+        this.linger = linger.toNanos();
+        this.overflow = Objects.requireNonNull(overflow);
+        this.flush = Objects.requireNonNull(flush);
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param size The most elements in a batch.
+     * @param linger The longest to hold an element before flushing it.
+     * @param overflow What to do when the flusher falls behind.
+     * @param flush The callback to flush each batch with. It is given a new
+     *            list every time.
+     * @return A buffer of objects.
+     */
+    public static <T> OfObject<T> of(int size, Duration linger, Overflow overflow, Consumer<? super List<T>> flush) {
+        Objects.requireNonNull(flush);
+        return new OfObject<>(size, linger, overflow, (batch, n) -> flush.accept(batch));
+    }
+    
+    /**
+     * @param size The most elements in a batch.
+     * @param linger The longest to hold an element before flushing it.
+     * @param overflow What to do when the flusher falls behind.
+     * @param flush The callback to flush each batch with. It is given an array
+     *            and the number of elements at the start of it.
+     * @return A buffer of ints.
+     */
+    public static OfInt ofInts(int size, Duration linger, Overflow overflow, ObjIntConsumer<int[]> flush) {
+        return new OfInt(size, linger, overflow, flush);
+    }
+    
+    /**
+     * @param size The most elements in a batch.
+     * @param linger The longest to hold an element before flushing it.
+     * @param overflow What to do when the flusher falls behind.
+     * @param flush The callback to flush each batch with. It is given an array
+     *            and the number of elements at the start of it.
+     * @return A buffer of longs.
+     */
+    public static OfLong ofLongs(int size, Duration linger, Overflow overflow, ObjIntConsumer<long[]> flush) {
+        return new OfLong(size, linger, overflow, flush);
+    }
+    
+    /**
+     * @param size The most elements in a batch.
+     * @param linger The longest to hold an element before flushing it.
+     * @param overflow What to do when the flusher falls behind.
+     * @param flush The callback to flush each batch with. It is given an array
+     *            and the number of elements at the start of it.
+     * @return A buffer of doubles.
+     */
+    public static OfDouble ofDoubles(int size, Duration linger, Overflow overflow, ObjIntConsumer<double[]> flush) {
+        return new OfDouble(size, linger, overflow, flush);
+    }
+    
+    /**
+     * Flush whatever has been buffered, and wait until no batch is waiting or
+     * being flushed.
+     * 
+     * @throws CancellationException If the thread is interrupted while
+     *             waiting.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            while (!seal())
+                await();
+            while (flushing)
+                await();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Stop accepting elements, flush whatever has been buffered, and wait
+     * until no batch is waiting or being flushed.
+     * 
+     * @throws CancellationException If the thread is interrupted while
+     *             waiting.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return The number of batches flushed.
+     */
+    public long flushes() {
+        return flushes.sum();
+    }
+    
+    /**
+     * @return The number of elements discarded because the flusher had fallen
+     *         behind.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+    
+    /**
+     * @return The number of flushes which threw an exception or error. The
+     *         elements of those batches are lost.
+     */
+    public long failures() {
+        return failures.sum();
+    }
+    
+    /**
+     * Create an empty batch.
+     * 
+     * @param size The most elements it must hold.
+     * @return The batch.
+     */
+    abstract B allocate(int size);
+    
+    /**
+     * Make a flushed batch available for reuse.
+     * 
+     * @param batch The batch.
+     */
+    void recycle(B batch) {
+        spare.push(batch);
+    }
+    
+    /**
+     * Lock the buffer to add an element. Unless it returns null, this must be
+     * followed by storing the element at {@link #position()} and then calling
+     * {@link #commit()}.
+     * 
+     * @return The batch to add the element to, or null if the element is to be
+     *         dropped.
+     * @throws IllegalStateException If the buffer is closed.
+     */
+    final B claim() {
+        lock.lock();
+        if (closed) {
+            lock.unlock();
+            throw new IllegalStateException("Batch buffer is closed");
+        }
+        if (count == size && !seal()) {
+            try {
+                switch (overflow) {
+                    case BLOCK:
+                        do
+                            await();
+                        while (count == size && !seal());
+                        break;
+                    case DROP:
+                        dropped.increment();
+                        lock.unlock();
+                        return null;
+                    default:
+                        throw RejectedException.BUFFER_FULL;
+                }
+            } catch (RuntimeException e) {
+                lock.unlock();
+                throw e;
+            }
+        }
+        if (current == null)
+            current = spare.isEmpty() ? allocate(size) : spare.pop();
+        return current;
+    }
+    
+    /**
+     * @return The index to store the claimed element at.
+     */
+    final int position() {
+        return count;
+    }
+    
+    /**
+     * Count the claimed element and unlock the buffer.
+     */
+    final void commit() {
+        try {
+            if (count++ == 0 && count < size) {
+                long batch = generation;
+                TimerWheel.shared().schedule(() -> expire(batch), linger, TimeUnit.NANOSECONDS);
+            }
+            if (count == size)
+                seal();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void expire(long batch) {
+        lock.lock();
+        try {
+            if (batch == generation && !seal())
+                due = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Queue the current batch for flushing. Must be called with the lock held.
+     * 
+     * @return False if it could not be queued because too many batches are
+     *         already waiting.
+     */
+    private boolean seal() {
+        if (count == 0)
+            return true;
+        if (full.size() >= MAX_PENDING)
+            return false;
+        full.add(new Batch<>(current, count));
+        current = null;
+        count = 0;
+        generation++;
+        due = false;
+        if (!flushing) {
+            flushing = true;
+            FanOut.executor().execute(this::drain);
+        }
+        return true;
+    }
+    
+    private void drain() {
+        for (;;) {
+            Batch<B> batch;
+            lock.lock();
+            try {
+                if (due || count == size)
+                    seal();
+                batch = full.poll();
+                if (batch == null) {
+                    flushing = false;
+                    room.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush.accept(batch.elements, batch.count);
+                flushes.increment();
+            } catch (Throwable e) {
+                // Anything escaping would leave the buffer flushing forever
+                failures.increment();
+            }
+            lock.lock();
+            try {
+                recycle(batch.elements);
+                room.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    private void await() {
+        try {
+            room.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a flush");
+        }
+    }
+    
+    /**
+     * A full batch waiting to be flushed.
+     */
+    private static final class Batch<B> {
+        final B   elements;
+        final int count;
+        
+        Batch(B elements, int count) {
+            this.elements = elements;
+            this.count = count;
+        }
+    }
+    
+    /**
+     * A buffer of objects, flushed as lists.
+     * 
+     * @param <T> the type of the elements
+     */
+    public static final class OfObject<T> extends BatchBuffer<List<T>> implements Consumer<T> {
+        
+        OfObject(int size, Duration linger, Overflow overflow, ObjIntConsumer<? super List<T>> flush) {
+            super(size, linger, overflow, flush);
+        }
+        
+        /**
+         * Add an element to the buffer.
+         * 
+         * @param t The element.
+         * @throws RejectedException If the buffer rejects elements when full.
+         */
+        @Override
+        public void accept(T t) {
+            List<T> batch = claim();
+            if (batch != null) {
+                batch.add(t);
+                commit();
+            }
+        }
+        
+        @Override
+        List<T> allocate(int size) {
+            return new ArrayList<>(size);
+        }
+        
+        @Override
+        void recycle(List<T> batch) {
+            // Lists are handed to the flush callback to keep.
+        }
+    }
+    
+    /**
+     * A buffer of ints, flushed as reused arrays.
+     */
+    public static final class OfInt extends BatchBuffer<int[]> implements IntConsumer {
+        
+        OfInt(int size, Duration linger, Overflow overflow, ObjIntConsumer<int[]> flush) {
+            super(size, linger, overflow, flush);
+        }
+        
+        /**
+         * Add an element to the buffer.
+         * 
+         * @param value The element.
+         * @throws RejectedException If the buffer rejects elements when full.
+         */
+        @Override
+        public void accept(int value) {
+            int[] batch = claim();
+            if (batch != null) {
+                batch[position()] = value;
+                commit();
+            }
+        }
+        
+        @Override
+        int[] allocate(int size) {
+            return new int[size];
+        }
+    }
+    
+    /**
+     * A buffer of longs, flushed as reused arrays.
+     */
+    public static final class OfLong extends BatchBuffer<long[]> implements LongConsumer {
+        
+        OfLong(int size, Duration linger, Overflow overflow, ObjIntConsumer<long[]> flush) {
+            super(size, linger, overflow, flush);
+        }
+        
+        /**
+         * Add an element to the buffer.
+         * 
+         * @param value The element.
+         * @throws RejectedException If the buffer rejects elements when full.
+         */
+        @Override
+        public void accept(long value) {
+            long[] batch = claim();
+            if (batch != null) {
+                batch[position()] = value;
+                commit();
+            }
+        }
+        
+        @Override
+        long[] allocate(int size) {
+            return new long[size];
+        }
+    }
+    
+    /**
+     * A buffer of doubles, flushed as reused arrays.
+     */
+    public static final class OfDouble extends BatchBuffer<double[]> implements DoubleConsumer {
+        
+        OfDouble(int size, Duration linger, Overflow overflow, ObjIntConsumer<double[]> flush) {
+            super(size, linger, overflow, flush);
+        }
+        
+        /**
+         * Add an element to the buffer.
+         * 
+         * @param value The element.
+         * @throws RejectedException If the buffer rejects elements when full.
+         */
+        @Override
+        public void accept(double value) {
+            double[] batch = claim();
+            if (batch != null) {
+                batch[position()] = value;
+                commit();
+            }
+        }
+        
+        @Override
+        double[] allocate(int size) {
+            return new double[size];
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A flag which asks long-running work to stop at its next opportunity. Unlike
+ * interruption, it is never cleared and does not disturb blocking calls, and
+ * checking it is a single volatile read, so loops can afford to check it on
+ * every iteration:
+ * 
+ * <pre>{@code
+ *     CancellationToken stop = new CancellationToken();
+ *     executor.execute(pollQueue.poll(stop, WaitStrategy.PARK));
+ *     ...
+ *     stop.cancel();
+ * }</pre>
+ */
+public final class CancellationToken {
+    
+    private volatile boolean cancelled;
+    
+    /**
+     * Ask the work watching this token to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    /**
+     * @return True once {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * @throws CancellationException If the token has been cancelled.
+     */
+    public void check() {
+        if (cancelled)
+            throw new CancellationException("Cancelled");
+    }
+}
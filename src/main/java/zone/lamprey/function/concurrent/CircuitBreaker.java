@@ -0,0 +1,398 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A circuit breaker which stops calling a struggling backend. The outcomes of
+ * the last few calls are kept in a ring buffer. Once enough calls have been
+ * seen and the share of them which failed, or which took longer than the slow
+ * call threshold, reaches its limit, the breaker opens. While open every call
+ * is rejected straight away with {@link RejectedException#CIRCUIT_OPEN}.
+ * After a while the breaker lets a few trial calls through, and closes again
+ * if they go well.
+ * 
+ * <pre>{@code
+ *     CircuitBreaker breaker = CircuitBreaker.of(CircuitBreaker.Config.defaults()
+ *         .failureRateThreshold(25)
+ *         .slowCallDuration(Duration.ofMillis(200)));
+ *     Function<Key, Value> lookup = backend.withCircuitBreaker(breaker);
+ * }</pre>
+ * 
+ * <p>
+ * Recording an outcome is a few atomic updates, and neither admitting nor
+ * rejecting a call locks or allocates. The state and the outcomes recorded in
+ * it are kept together and replaced atomically, so a change of state starts
+ * from an empty window. Each admitted call holds a {@link Permit} for the
+ * window which admitted it, and its outcome is dropped if the window has been
+ * replaced by the time it finishes.
+ */
+public final class CircuitBreaker {
+    
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        /**
+         * Calls are let through and their outcomes recorded.
+         */
+        CLOSED,
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+        /**
+         * A limited number of trial calls are let through.
+         */
+        HALF_OPEN
+    }
+    
+    private static final int EMPTY   = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILED  = 2;
+    private static final int SLOW    = 4;
+    
+    private final Config config;
+    private final long   slowCallNanos;
+    private final long   waitNanos;
+    
+    private final AtomicReference<Window> window;
+    private final LongAdder               rejected = new LongAdder();
+    
+    private CircuitBreaker(Config config) {
+        this.config = config;
+        this.slowCallNanos = config.slowCallDuration.toNanos();
+        this.waitNanos = config.waitInOpenState.toNanos();
+        this.window = new AtomicReference<>(new Window(State.CLOSED, 0, 0, config.windowSize));
+    }
+    
+    /**
+     * @param config The configuration of the breaker.
+     * @return A new, closed circuit breaker.
+     */
+    public static CircuitBreaker of(Config config) {
+        return new CircuitBreaker(config);
+    }
+    
+    /**
+     * Ask to make a call. Every call which is let through must be followed by
+     * {@link #onSuccess(Permit, long)} or {@link #onFailure(Permit, long)}
+     * with the permit returned here.
+     * 
+     * @return The permit for the call.
+     * @throws RejectedException If the breaker is open, or half open with all
+     *             of its trial calls already made.
+     */
+    public Permit acquire() {
+        Window current = window.get();
+        switch (current.state) {
+            case CLOSED:
+                return current;
+            case OPEN:
+                // The call which moves the breaker to half open is its first trial
+                if (System.nanoTime() - current.openedAt >= waitNanos) {
+                    Window trial = transition(current, State.HALF_OPEN, config.callsInHalfOpenState - 1);
+                    if (trial != null)
+                        return trial;
+                }
+                break;
+            case HALF_OPEN:
+                for (int left; (left = current.trials.get()) > 0;)
+                    if (current.trials.compareAndSet(left, left - 1))
+                        return current;
+                break;
+        }
+        rejected.increment();
+        throw RejectedException.CIRCUIT_OPEN;
+    }
+    
+    /**
+     * Record a successful call.
+     * 
+     * @param permit The permit the call was made with.
+     * @param nanos How long the call took.
+     */
+    public void onSuccess(Permit permit, long nanos) {
+        record((Window) permit, nanos >= slowCallNanos ? SUCCESS | SLOW : SUCCESS);
+    }
+    
+    /**
+     * Record a failed call.
+     * 
+     * @param permit The permit the call was made with.
+     * @param nanos How long the call took.
+     */
+    public void onFailure(Permit permit, long nanos) {
+        record((Window) permit, nanos >= slowCallNanos ? FAILED | SLOW : FAILED);
+    }
+    
+    /**
+     * @return The current state of the breaker.
+     */
+    public State state() {
+        Window current = window.get();
+        if (current.state == State.OPEN && System.nanoTime() - current.openedAt >= waitNanos)
+            return State.HALF_OPEN;
+        return current.state;
+    }
+    
+    /**
+     * @return The percentage of recorded calls which failed.
+     */
+    public float failureRate() {
+        Window current = window.get();
+        int calls = current.recorded.get();
+        return calls == 0 ? 0 : current.failed.get() * 100f / calls;
+    }
+    
+    /**
+     * @return The percentage of recorded calls which were slow.
+     */
+    public float slowCallRate() {
+        Window current = window.get();
+        int calls = current.recorded.get();
+        return calls == 0 ? 0 : current.slow.get() * 100f / calls;
+    }
+    
+    /**
+     * @return The number of calls rejected.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+    
+    /**
+     * @return The configuration of the breaker.
+     */
+    public Config config() {
+        return config;
+    }
+    
+    @Override
+    public String toString() {
+        return state() + " failureRate=" + failureRate() + "% slowCallRate=" + slowCallRate() + "% rejected=" + rejected();
+    }
+    
+    private void record(Window current, int outcome) {
+        // A call admitted by a window which has since been replaced says
+        // nothing about the current state
+        if (current != window.get() || current.state == State.OPEN)
+            return;
+        AtomicIntegerArray outcomes = current.outcomes;
+        int previous = outcomes.getAndSet((int) (current.next.getAndIncrement() % outcomes.length()), outcome);
+        int calls = previous == EMPTY ? current.recorded.incrementAndGet() : current.recorded.get();
+        int failures = current.failed.addAndGet(count(outcome, FAILED) - count(previous, FAILED));
+        int slowCalls = current.slow.addAndGet(count(outcome, SLOW) - count(previous, SLOW));
+        
+        int needed = current.state == State.HALF_OPEN ? config.callsInHalfOpenState : config.minimumCalls;
+        if (calls < needed)
+            return;
+        boolean failing = failures * 100f / calls >= config.failureRateThreshold
+            || slowCalls * 100f / calls >= config.slowCallRateThreshold;
+        if (failing)
+            transition(current, State.OPEN, 0);
+        else if (current.state == State.HALF_OPEN)
+            transition(current, State.CLOSED, 0);
+    }
+    
+    /**
+     * Replace the current window with an empty one in a new state. Outcomes
+     * of calls admitted by the old window are dropped along with it, so the
+     * counts of the new window never mix calls from two states.
+     * 
+     * @return The new window, or null if the current window was no longer the
+     *         given one.
+     */
+    private Window transition(Window from, State to, int trials) {
+        long openedAt = to == State.OPEN ? System.nanoTime() : from.openedAt;
+        Window next = new Window(to, openedAt, trials, config.windowSize);
+        return window.compareAndSet(from, next) ? next : null;
+    }
+    
+    private static int count(int outcome, int flag) {
+        return (outcome & flag) == 0 ? 0 : 1;
+    }
+    
+    /**
+     * Permission to make one call, handed out by {@link #acquire()}. It
+     * identifies the window of outcomes which admitted the call.
+     */
+    public abstract static class Permit {
+        
+        private Permit() {
+        }
+    }
+    
+    /**
+     * The state of a breaker together with the outcomes recorded in it. A
+     * window is replaced as a whole on every change of state, so its state,
+     * opening time, trial calls and counts are always published together.
+     */
+    private static final class Window extends Permit {
+        final State              state;
+        final long               openedAt;
+        final AtomicInteger      trials;
+        final AtomicIntegerArray outcomes;
+        final AtomicLong         next     = new AtomicLong();
+        final AtomicInteger      recorded = new AtomicInteger();
+        final AtomicInteger      failed   = new AtomicInteger();
+        final AtomicInteger      slow     = new AtomicInteger();
+        
+        Window(State state, long openedAt, int trials, int size) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.trials = new AtomicInteger(trials);
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+    }
+    
+    /**
+     * The configuration of a {@link CircuitBreaker}. Configurations are
+     * immutable; each setting method returns a modified copy.
+     */
+    public static final class Config {
+        private static final Config DEFAULTS = new Config(50, 100, Duration.ofSeconds(60), 100, 100, Duration.ofSeconds(60), 10);
+        
+        private final float    failureRateThreshold;
+        private final float    slowCallRateThreshold;
+        private final Duration slowCallDuration;
+        private final int      windowSize;
+        private final int      minimumCalls;
+        private final Duration waitInOpenState;
+        private final int      callsInHalfOpenState;
+        
+        private Config(float failureRateThreshold, float slowCallRateThreshold, Duration slowCallDuration, int windowSize,
+            int minimumCalls, Duration waitInOpenState, int callsInHalfOpenState) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDuration = slowCallDuration;
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            this.waitInOpenState = waitInOpenState;
+            this.callsInHalfOpenState = callsInHalfOpenState;
+        }
+        
+        /**
+         * @return The default configuration: open when half of the last 100
+         *         calls failed or all of them took over a minute, and try again
+         *         with 10 calls after a minute.
+         */
+        public static Config defaults() {
+            return DEFAULTS;
+        }
+        
+        /**
+         * @param percent The percentage of failed calls at which to open.
+         * @return A copy of this configuration with the given threshold.
+         */
+        public Config failureRateThreshold(float percent) {
+            checkPercent(percent);
+            return new Config(percent, slowCallRateThreshold, slowCallDuration, windowSize, minimumCalls, waitInOpenState, callsInHalfOpenState);
+        }
+        
+        /**
+         * @param percent The percentage of slow calls at which to open.
+         * @return A copy of this configuration with the given threshold.
+         */
+        public Config slowCallRateThreshold(float percent) {
+            checkPercent(percent);
+            return new Config(failureRateThreshold, percent, slowCallDuration, windowSize, minimumCalls, waitInOpenState, callsInHalfOpenState);
+        }
+        
+        /**
+         * @param duration How long a call must take to count as slow.
+         * @return A copy of this configuration with the given duration.
+         */
+        public Config slowCallDuration(Duration duration) {
+            return new Config(failureRateThreshold, slowCallRateThreshold, checkPositive(duration), windowSize, minimumCalls, waitInOpenState, callsInHalfOpenState);
+        }
+        
+        /**
+         * @param calls The number of most recent calls to keep the outcomes of.
+         *            The minimum number of calls and the number of trial calls
+         *            are capped to this.
+         * @return A copy of this configuration with the given window size.
+         */
+        public Config windowSize(int calls) {
+            checkPositive(calls);
+            return new Config(failureRateThreshold, slowCallRateThreshold, slowCallDuration, calls, Math.min(minimumCalls, calls), waitInOpenState, Math.min(callsInHalfOpenState, calls));
+        }
+        
+        /**
+         * @param calls The number of calls which must be recorded before the
+         *            breaker can open.
+         * @return A copy of this configuration with the given minimum.
+         */
+        public Config minimumCalls(int calls) {
+            checkPositive(calls);
+            return new Config(failureRateThreshold, slowCallRateThreshold, slowCallDuration, windowSize, Math.min(calls, windowSize), waitInOpenState, callsInHalfOpenState);
+        }
+        
+        /**
+         * @param duration How long to stay open before letting trial calls
+         *            through.
+         * @return A copy of this configuration with the given duration.
+         */
+        public Config waitInOpenState(Duration duration) {
+            return new Config(failureRateThreshold, slowCallRateThreshold, slowCallDuration, windowSize, minimumCalls, checkPositive(duration), callsInHalfOpenState);
+        }
+        
+        /**
+         * @param calls The number of trial calls to make when half open. The
+         *            window size is raised to at least this.
+         * @return A copy of this configuration with the given number of calls.
+         */
+        public Config callsInHalfOpenState(int calls) {
+            checkPositive(calls);
+            return new Config(failureRateThreshold, slowCallRateThreshold, slowCallDuration, Math.max(windowSize, calls), minimumCalls, waitInOpenState, calls);
+        }
+        
+        @Override
+        public String toString() {
+            return "failureRateThreshold=" + failureRateThreshold + "% slowCallRateThreshold=" + slowCallRateThreshold
+                + "% slowCallDuration=" + slowCallDuration + " windowSize=" + windowSize + " minimumCalls=" + minimumCalls
+                + " waitInOpenState=" + waitInOpenState + " callsInHalfOpenState=" + callsInHalfOpenState;
+        }
+        
+        private static void checkPercent(float percent) {
+            if (!(percent > 0 && percent <= 100))
+                throw new IllegalArgumentException("Percentage must be above 0 and at most 100: " + percent);
+        }
+        
+        private static void checkPositive(int value) {
+            if (value < 1)
+                throw new IllegalArgumentException("Must be at least 1: " + value);
+        }
+        
+        private static Duration checkPositive(Duration duration) {
+            if (duration.isNegative() || duration.isZero())
+                throw new IllegalArgumentException("Duration must be positive: " + duration);
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * A point in time by which a call must be finished. A deadline is attached to
+ * the calling thread while a call runs, so every stage of a composed function
+ * can see how much time it has left through {@link #current()}, and deadlines
+ * set further down the chain can only shorten it:
+ * 
+ * <pre>{@code
+ *     Function<Request, Response> handle = parse.map(lookup).map(render).withTimeout(Duration.ofMillis(50));
+ * }</pre>
+ * 
+ * <p>
+ * Deadlines are cooperative. {@code withTimeout} only attaches the deadline;
+ * it doesn't change the stages it runs. The functions composed by
+ * {@code map}, {@code consume} and {@code andThen} check it between their two
+ * stages, {@code forever}, {@code loopFor} and {@code whileTrue} check it
+ * before each iteration, and a stage decorated with {@code withinDeadline()}
+ * checks it before each call. Each throws a {@link DeadlineExceededException}
+ * once it has passed, so the stages after it are skipped. A stage which is
+ * already running is not interrupted.
+ * 
+ * <p>
+ * The deadline follows a call onto the threads it hands work to through
+ * {@code async}, {@code asyncApply}, {@link Hedge} and {@link FanOut}. Other
+ * hand-offs can carry it with {@link #propagate(Supplier)}.
+ */
+public final class Deadline {
+    
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    
+    /**
+     * Set once any deadline has been attached, so that checks between stages
+     * cost a single read in a program which never uses one.
+     */
+    private static volatile boolean used;
+    
+    private final long expiresAt;
+    
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+    
+    /**
+     * @param timeout How long from now the deadline is.
+     * @return A deadline the given time from now.
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+    
+    /**
+     * @return The deadline of the call running on this thread, or null if
+     *         there is none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * @throws DeadlineExceededException If the call running on this thread has
+     *             a deadline which has passed.
+     */
+    public static void checkCurrent() {
+        if (!used)
+            return;
+        Deadline deadline = CURRENT.get();
+        if (deadline != null)
+            deadline.check();
+    }
+    
+    /**
+     * @throws DeadlineExceededException If this deadline has passed.
+     */
+    public void check() {
+        if (isExpired())
+            throw new DeadlineExceededException(this);
+    }
+    
+    /**
+     * @return True if this deadline has passed.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAt >= 0;
+    }
+    
+    /**
+     * @return The time left, in nanoseconds. Negative once the deadline has
+     *         passed.
+     */
+    public long remainingNanos() {
+        return expiresAt - System.nanoTime();
+    }
+    
+    /**
+     * @return The time left. Negative once the deadline has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+    
+    /**
+     * Make a call with this deadline attached to the thread. If the thread
+     * already has an earlier deadline, that one is kept.
+     * 
+     * @param <T> The type of the result.
+     * @param supplier The call to make.
+     * @return The result of the call.
+     * @throws DeadlineExceededException If the deadline has already passed.
+     */
+    public <T> T call(Supplier<? extends T> supplier) {
+        Deadline outer = CURRENT.get();
+        Deadline effective = outer != null && outer.expiresAt - expiresAt <= 0 ? outer : this;
+        effective.check();
+        if (!used)
+            used = true;
+        CURRENT.set(effective);
+        try {
+            return supplier.get();
+        } finally {
+            if (outer == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(outer);
+        }
+    }
+    
+    /**
+     * Carry the deadline of this thread, if it has one, over to a call which
+     * will be made on another thread, such as by an executor.
+     * 
+     * @param <T> The type of the result.
+     * @param supplier The call to make.
+     * @return A supplier which makes the call with this thread's current
+     *         deadline attached, or the given supplier if there is none.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> supplier) {
+        Deadline deadline = current();
+        return deadline == null ? supplier : () -> deadline.call(supplier);
+    }
+    
+    /**
+     * Carry the deadline of this thread, if it has one, over to a task which
+     * will be run on another thread, such as by an executor.
+     * 
+     * @param task The task to run.
+     * @return A task which runs the given one with this thread's current
+     *         deadline attached, or the given task if there is none.
+     */
+    public static Runnable propagate(Runnable task) {
+        Deadline deadline = current();
+        return deadline == null ? task : () -> deadline.call(() -> {
+            task.run();
+            return null;
+        });
+    }
+    
+    @Override
+    public String toString() {
+        return "Deadline[" + remainingNanos() / 1000 + "us left]";
+    }
+}
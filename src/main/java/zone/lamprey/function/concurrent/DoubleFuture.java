@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The {@code double}-valued primitive specialization of {@link CompletableFuture}.
+ * Its result is held as a {@code double}, so completing it and chaining
+ * primitive stages onto it never boxes. The result is only boxed when a
+ * {@link #boxed() boxed} view is asked for.
+ */
+public final class DoubleFuture {
+    
+    private static final AtomicIntegerFieldUpdater<DoubleFuture> STATE = AtomicIntegerFieldUpdater.newUpdater(DoubleFuture.class, "state");
+    
+    private static final int PENDING   = 0;
+    private static final int COMPLETED = 1;
+    
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile int                  state      = PENDING;
+    private double                        value;
+    
+    /**
+     * @param supplier The supplier to run.
+     * @param executor The executor to run it with.
+     * @return A future completed with the result of the supplier once the
+     *         executor has run it.
+     */
+    public static DoubleFuture supplyAsync(DoubleSupplier supplier, Executor executor) {
+        DoubleFuture future = new DoubleFuture();
+        Deadline deadline = Deadline.current();
+        executor.execute(() -> {
+            try {
+                future.complete(deadline == null ? supplier.getAsDouble() : deadline.call(supplier::getAsDouble));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * @param value The result.
+     * @return A future which is already completed with the given result.
+     */
+    public static DoubleFuture completed(double value) {
+        DoubleFuture future = new DoubleFuture();
+        future.complete(value);
+        return future;
+    }
+    
+    /**
+     * Complete this future if it is not already complete.
+     * 
+     * @param value The result.
+     * @return True if this call completed the future.
+     */
+    public boolean complete(double value) {
+        if (!STATE.compareAndSet(this, PENDING, COMPLETED))
+            return false;
+        this.value = value;
+        return completion.complete(null);
+    }
+    
+    /**
+     * Complete this future exceptionally if it is not already complete.
+     * 
+     * @param e The exception.
+     * @return True if this call completed the future.
+     */
+    public boolean completeExceptionally(Throwable e) {
+        if (!STATE.compareAndSet(this, PENDING, COMPLETED))
+            return false;
+        return completion.completeExceptionally(e);
+    }
+    
+    /**
+     * @return True if this future has completed in any way.
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+    
+    /**
+     * @return True if this future completed exceptionally.
+     */
+    public boolean isCompletedExceptionally() {
+        return completion.isCompletedExceptionally();
+    }
+    
+    /**
+     * Wait for the result.
+     * 
+     * @return The result.
+     * @throws CompletionException If this future completed exceptionally.
+     * @see CompletableFuture#join()
+     */
+    public double join() {
+        completion.join();
+        return value;
+    }
+    
+    /**
+     * @param valueIfAbsent The value to return if this future is not complete.
+     * @return The result, or the given value if there is none yet.
+     * @throws CompletionException If this future completed exceptionally.
+     */
+    public double getNow(double valueIfAbsent) {
+        if (!completion.isDone())
+            return valueIfAbsent;
+        completion.join();
+        return value;
+    }
+    
+    /**
+     * @param functor The function to apply to the result.
+     * @return A future completed with the result of the given function once
+     *         this future completes.
+     * @see CompletableFuture#thenApply
+     */
+    public DoubleFuture map(DoubleUnaryOperator functor) {
+        DoubleFuture next = new DoubleFuture();
+        completion.whenComplete((ignored, e) -> {
+            if (e != null)
+                next.completeExceptionally(e);
+            else
+                try {
+                    next.complete(functor.applyAsDouble(value));
+                } catch (Throwable t) {
+                    next.completeExceptionally(t);
+                }
+        });
+        return next;
+    }
+    
+    /**
+     * @param <R> The type of the new result.
+     * @param functor The function to apply to the result.
+     * @return A future completed with the result of the given function once
+     *         this future completes.
+     * @see CompletableFuture#thenApply
+     */
+    public <R> CompletableFuture<R> mapToObj(DoubleFunction<? extends R> functor) {
+        return completion.thenApply(ignored -> functor.apply(value));
+    }
+    
+    /**
+     * @param consumer The consumer to pass the result to.
+     * @return A future completed once the consumer has accepted the result.
+     * @see CompletableFuture#thenAccept
+     */
+    public CompletableFuture<Void> thenAccept(DoubleConsumer consumer) {
+        return completion.thenRun(() -> consumer.accept(value));
+    }
+    
+    /**
+     * @param action The action to perform when this future completes, with the
+     *            exception it completed with or null.
+     * @return This future.
+     */
+    public DoubleFuture whenComplete(Consumer<? super Throwable> action) {
+        completion.whenComplete((ignored, e) -> action.accept(e));
+        return this;
+    }
+    
+    /**
+     * @return A future of the boxed result.
+     */
+    public CompletableFuture<Double> boxed() {
+        return completion.thenApply(ignored -> value);
+    }
+    
+    @Override
+    public String toString() {
+        if (!completion.isDone())
+            return "DoubleFuture[pending]";
+        if (completion.isCompletedExceptionally())
+            return "DoubleFuture[failed]";
+        return "DoubleFuture[" + value + "]";
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs batches of blocking calls concurrently. On Java 21 and later each call
+ * gets its own virtual thread. On older JVMs calls share a bounded pool of
+ * daemon platform threads, whose size is taken from the
+ * {@value #POOL_SIZE_PROPERTY} system property and defaults to eight threads
+ * per processor.
+ * 
+ * <p>
+ * When the fallback pool is in use, calls which fan out again from inside a
+ * fanned-out call can exhaust it, so nested fan-outs are best kept shallow.
+ */
+public final class FanOut {
+    
+    /**
+     * The system property giving the size of the platform thread pool used
+     * when virtual threads are not available.
+     */
+    public static final String POOL_SIZE_PROPERTY = "zone.lamprey.function.concurrent.poolSize";
+    
+    private static final ExecutorService VIRTUAL  = virtualThreadPerTaskExecutor();
+    private static final ExecutorService EXECUTOR = VIRTUAL != null ? VIRTUAL : platformPool();
+    
+    private FanOut() {
+    }
+    
+    /**
+     * @return True if calls run on virtual threads.
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL != null;
+    }
+    
+    /**
+     * @return The executor calls are run with. It is shared and must not be
+     *         shut down.
+     */
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+    
+    /**
+     * Call every supplier concurrently and wait for all of them to finish, as
+     * {@link ExecutorService#invokeAll} does.
+     * 
+     * @param <T> The type of the results.
+     * @param suppliers The suppliers to call.
+     * @return The results, in the order of the suppliers.
+     * @throws RuntimeException The first failure by position, with any others
+     *             attached as suppressed exceptions. Checked exceptions are
+     *             wrapped in a {@link CompletionException}.
+     */
+    public static <T> List<T> invokeAll(Collection<? extends Supplier<? extends T>> suppliers) {
+        List<Future<T>> futures = new ArrayList<>(suppliers.size());
+        for (Supplier<? extends T> supplier : suppliers)
+            futures.add(EXECUTOR.submit(Deadline.propagate(supplier)::get));
+        
+        List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        try {
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = unwrap(e);
+                    else
+                        failure.addSuppressed(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw interrupted(e);
+        }
+        if (failure != null)
+            throw failure;
+        return results;
+    }
+    
+    /**
+     * Call every supplier concurrently and wait for all of them to succeed. As
+     * soon as one fails the others are cancelled and interrupted, and the
+     * failure is thrown without waiting for them.
+     * 
+     * @param <T> The type of the results.
+     * @param suppliers The suppliers to call.
+     * @return The results, in the order of the suppliers.
+     * @throws RuntimeException The first failure to happen. Checked exceptions
+     *             are wrapped in a {@link CompletionException}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> fanOut(Collection<? extends Supplier<? extends T>> suppliers) {
+        Object[] results = new Object[suppliers.size()];
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(EXECUTOR);
+        List<Future<Void>> futures = new ArrayList<>(results.length);
+        int index = 0;
+        for (Supplier<? extends T> supplier : suppliers) {
+            int i = index++;
+            Supplier<? extends T> task = Deadline.propagate(supplier);
+            futures.add(completion.submit(() -> {
+                results[i] = task.get();
+                return null;
+            }));
+        }
+        
+        try {
+            for (int i = 0; i < results.length; i++)
+                completion.take().get();
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw interrupted(e);
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+    
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures)
+            future.cancel(true);
+    }
+    
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return new CompletionException(cause);
+    }
+    
+    private static CancellationException interrupted(InterruptedException e) {
+        CancellationException cancelled = new CancellationException("Interrupted while waiting for a fan-out");
+        cancelled.initCause(e);
+        return cancelled;
+    }
+    
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                .invoke();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+    
+    private static ExecutorService platformPool() {
+        int size = Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors() * 8);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "fan-out-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
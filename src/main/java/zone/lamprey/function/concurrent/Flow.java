@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+/**
+ * The interfaces of a reactive stream with backpressure. They have the same
+ * names, methods and rules as {@code java.util.concurrent.Flow} and the
+ * Reactive Streams specification, which this library cannot refer to directly
+ * because it targets Java 8. On Java 9 and later, {@code FlowAdapters} converts
+ * between the two, forwarding each method.
+ * 
+ * <p>
+ * A {@link Subscriber} receives items from a {@link Publisher} only as fast as
+ * it asks for them with {@link Subscription#request(long)}, so neither side
+ * ever has to buffer more than the other has agreed to.
+ */
+public final class Flow {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+    
+    private Flow() {
+    }
+    
+    /**
+     * @return A default for the number of items to buffer or request at a
+     *         time, the same as that of {@code java.util.concurrent.Flow}.
+     */
+    public static int defaultBufferSize() {
+        return DEFAULT_BUFFER_SIZE;
+    }
+    
+    /**
+     * A producer of items which subscribers receive as they request them.
+     * 
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        
+        /**
+         * Add a subscriber. It is first passed its subscription through
+         * {@link Subscriber#onSubscribe}, or told why it cannot have one
+         * through {@link Subscriber#onError}.
+         * 
+         * @param subscriber The subscriber.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+    
+    /**
+     * A receiver of items. Its methods are called one at a time, in order:
+     * {@code onSubscribe} once, then {@code onNext} no more often than has
+     * been requested, then at most one of {@code onError} or
+     * {@code onComplete}.
+     * 
+     * @param <T> the type of the items
+     */
+    public interface Subscriber<T> {
+        
+        /**
+         * @param subscription The subscription, through which to request
+         *            items.
+         */
+        void onSubscribe(Subscription subscription);
+        
+        /**
+         * @param item The next item.
+         */
+        void onNext(T item);
+        
+        /**
+         * Called when the stream fails. No more items follow.
+         * 
+         * @param throwable The failure.
+         */
+        void onError(Throwable throwable);
+        
+        /**
+         * Called when the stream ends. No more items follow.
+         */
+        void onComplete();
+    }
+    
+    /**
+     * The link between a publisher and one of its subscribers.
+     */
+    public interface Subscription {
+        
+        /**
+         * Ask for more items. Requests add up, saturating at
+         * {@link Long#MAX_VALUE}, which means no limit.
+         * 
+         * @param n The number of items, which must be positive.
+         */
+        void request(long n);
+        
+        /**
+         * Stop sending items. Items already on their way may still arrive.
+         */
+        void cancel();
+    }
+    
+    /**
+     * A stage which is both a subscriber and a publisher.
+     * 
+     * @param <T> the type of the items received
+     * @param <R> the type of the items published
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import zone.lamprey.function.metrics.Histogram;
+
+/**
+ * A policy for hedging slow calls. A hedged call starts on an executor. If it
+ * hasn't returned within the hedging delay, a duplicate is started alongside
+ * it, and so on up to a maximum number of attempts. The first attempt to
+ * succeed answers the call and the others are cancelled. An attempt which
+ * fails makes way for the next one straight away, and a call only fails once
+ * every attempt has.
+ * 
+ * <p>
+ * The delay is either fixed, or adapts to a percentile of the latencies of
+ * the successful attempts seen so far:
+ * 
+ * <pre>{@code
+ *     Hedge hedge = Hedge.atPercentile(95, Duration.ofMillis(50), 2, pool);
+ *     Supplier<Quote> quote = fetchQuote.hedged(hedge);
+ * }</pre>
+ * 
+ * <p>
+ * A hedge keeps count of how many duplicates it started and how many calls
+ * were won by one, so it can be shared between functions to hedge them
+ * together.
+ */
+public final class Hedge {
+    
+    /**
+     * The number of successful attempts an adaptive hedge needs to see before
+     * it stops using its initial delay.
+     */
+    public static final int MIN_SAMPLES = 100;
+    
+    private final long     delay;
+    private final double   percentile;
+    private final int      maxAttempts;
+    private final Executor executor;
+    
+    private final Histogram latency = new Histogram();
+    private final LongAdder calls   = new LongAdder();
+    private final LongAdder fired   = new LongAdder();
+    private final LongAdder won     = new LongAdder();
+    
+    private Hedge(Duration delay, double percentile, int maxAttempts, Executor executor) {
+        if (delay.isNegative())
+            throw new IllegalArgumentException("Delay must not be negative: " + delay);
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("At least one attempt is needed: " + maxAttempts);
+        this.delay = delay.toNanos();
+        this.percentile = percentile;
+        this.maxAttempts = maxAttempts;
+        this.executor = Objects.requireNonNull(executor);
+    }
+    
+    /**
+     * @param delay How long to wait for an attempt before starting another.
+     * @param maxAttempts The most attempts to start for a call.
+     * @param executor The executor to run attempts with.
+     * @return A hedge with a fixed delay.
+     */
+    public static Hedge after(Duration delay, int maxAttempts, Executor executor) {
+        return new Hedge(delay, Double.NaN, maxAttempts, executor);
+    }
+    
+    /**
+     * @param percentile The percentile of observed latency to wait for an
+     *            attempt before starting another, between 0 and 100.
+     * @param initialDelay The delay to use until enough latencies have been
+     *            observed.
+     * @param maxAttempts The most attempts to start for a call.
+     * @param executor The executor to run attempts with.
+     * @return A hedge whose delay adapts to the latency of its calls.
+     */
+    public static Hedge atPercentile(double percentile, Duration initialDelay, int maxAttempts, Executor executor) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        return new Hedge(initialDelay, percentile, maxAttempts, executor);
+    }
+    
+    /**
+     * Make a hedged call.
+     * 
+     * @param <T> The type of the result.
+     * @param supplier The call to make.
+     * @return The result of the first attempt to succeed.
+     * @throws RuntimeException The failure of the first attempt, with those of
+     *             any others attached as suppressed exceptions, if every
+     *             attempt failed. Checked exceptions are wrapped in a
+     *             {@link CompletionException}.
+     */
+    public <T> T call(Supplier<? extends T> supplier) {
+        calls.increment();
+        long hedgeAfter = delayNanos();
+        BlockingQueue<Attempt<T>> outcomes = new LinkedBlockingQueue<>();
+        List<Attempt<T>> attempts = new ArrayList<>(maxAttempts);
+        Throwable failure = null;
+        int failed = 0;
+        try {
+            start(supplier, attempts, outcomes);
+            for (;;) {
+                Attempt<T> outcome = attempts.size() < maxAttempts ? outcomes.poll(hedgeAfter, TimeUnit.NANOSECONDS) : outcomes.take();
+                if (outcome == null) {
+                    fired.increment();
+                    start(supplier, attempts, outcomes);
+                } else if (outcome.failure == null) {
+                    if (outcome.index > 0)
+                        won.increment();
+                    return outcome.value;
+                } else {
+                    if (failure == null)
+                        failure = outcome.failure;
+                    else if (failure != outcome.failure)
+                        failure.addSuppressed(outcome.failure);
+                    if (++failed == maxAttempts)
+                        throw rethrow(failure);
+                    if (failed == attempts.size())
+                        start(supplier, attempts, outcomes);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for a hedged call");
+            cancelled.initCause(e);
+            throw cancelled;
+        } finally {
+            for (Attempt<T> attempt : attempts)
+                attempt.task.cancel(true);
+        }
+    }
+    
+    /**
+     * @return The delay the next call will be hedged after.
+     */
+    public Duration delay() {
+        return Duration.ofNanos(delayNanos());
+    }
+    
+    /**
+     * @return The number of calls made.
+     */
+    public long calls() {
+        return calls.sum();
+    }
+    
+    /**
+     * @return The number of extra attempts started because a call was slow.
+     */
+    public long fired() {
+        return fired.sum();
+    }
+    
+    /**
+     * @return The number of calls answered by an attempt other than the first.
+     */
+    public long won() {
+        return won.sum();
+    }
+    
+    /**
+     * @return The latencies of successful attempts.
+     */
+    public Histogram latency() {
+        return latency;
+    }
+    
+    /**
+     * Clear all counters and observed latencies.
+     */
+    public void reset() {
+        latency.reset();
+        calls.reset();
+        fired.reset();
+        won.reset();
+    }
+    
+    @Override
+    public String toString() {
+        return "calls=" + calls() + " fired=" + fired() + " won=" + won() + " delay=" + delay().toNanos() / 1000 + "us";
+    }
+    
+    private long delayNanos() {
+        if (Double.isNaN(percentile) || latency.count() < MIN_SAMPLES)
+            return delay;
+        return latency.percentile(percentile);
+    }
+    
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof Error)
+            throw (Error) failure;
+        return failure instanceof RuntimeException ? (RuntimeException) failure : new CompletionException(failure);
+    }
+    
+    private <T> void start(Supplier<? extends T> supplier, List<Attempt<T>> attempts, BlockingQueue<Attempt<T>> outcomes) {
+        Attempt<T> attempt = new Attempt<>(attempts.size(), Deadline.propagate(supplier), outcomes);
+        attempts.add(attempt);
+        executor.execute(attempt.task);
+    }
+    
+    /**
+     * One attempt at a call, which reports its outcome to the caller once it
+     * has one.
+     */
+    private final class Attempt<T> {
+        private final int              index;
+        private final FutureTask<Void> task;
+        private T                      value;
+        private Throwable              failure;
+        
+        Attempt(int index, Supplier<? extends T> supplier, BlockingQueue<Attempt<T>> outcomes) {
+            this.index = index;
+            this.task = new FutureTask<>(() -> {
+                long start = System.nanoTime();
+                try {
+                    value = supplier.get();
+                    latency.record(System.nanoTime() - start);
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                outcomes.add(this);
+            }, null);
+        }
+    }
+}
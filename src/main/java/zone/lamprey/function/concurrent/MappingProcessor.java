@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link Flow.Processor} which applies a function to each item on its way
+ * through. Demand is decoupled from the subscriber: the processor requests a
+ * batch of items upstream as soon as it is subscribed, buffers their results
+ * until the subscriber asks for them, and requests half a batch more each
+ * time half a batch has been sent on. Upstream therefore sees a few large
+ * requests however finely the subscriber requests, and no more than a batch
+ * of results is ever buffered.
+ * 
+ * <p>
+ * If the function throws or returns null, the upstream subscription is
+ * cancelled and the subscriber is sent the exception once it has received the
+ * results before it. A request for fewer than one item cancels upstream and
+ * sends the subscriber an {@link IllegalArgumentException} straight away,
+ * discarding any buffered results. The processor accepts one subscriber; any
+ * other is sent an {@link IllegalStateException}.
+ * 
+ * @param <T> the type of the items received
+ * @param <R> the type of the items published
+ */
+public final class MappingProcessor<T, R> implements Flow.Processor<T, R> {
+    
+    private final java.util.function.Function<? super T, ? extends R> function;
+    private final int                                                  batch;
+    private final int                                                  replenish;
+    private final Queue<R>                                             buffer     = new ConcurrentLinkedQueue<>();
+    private final AtomicLong                                           requested  = new AtomicLong();
+    private final AtomicInteger                                        pending    = new AtomicInteger();
+    private final AtomicReference<Flow.Subscriber<? super R>>          subscriber = new AtomicReference<>();
+    private final Downstream                                           downstream = new Downstream();
+    private volatile Flow.Subscription                                 upstream;
+    private volatile boolean                                           subscribed;
+    private volatile boolean                                           done;
+    private volatile boolean                                           cancelled;
+    private volatile Throwable                                         violation;
+    private Throwable                                                  failure;
+    private int                                                        sent;
+    
+    /**
+     * @param function The function to apply to each item.
+     * @param batch The number of items to request upstream at first, and the
+     *            most results to buffer.
+     */
+    public MappingProcessor(java.util.function.Function<? super T, ? extends R> function, int batch) {
+        if (batch < 1)
+            throw new IllegalArgumentException("Batch must be at least one: " + batch);
+        this.function = Objects.requireNonNull(function);
+        this.batch = batch;
+        this.replenish = Math.max(1, batch / 2);
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Downstream());
+            subscriber.onError(new IllegalStateException("The processor already has a subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(downstream);
+        subscribed = true;
+        drain();
+    }
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(batch);
+    }
+    
+    @Override
+    public void onNext(T item) {
+        if (done)
+            return;
+        R result;
+        try {
+            result = Objects.requireNonNull(function.apply(item), "The function returned null");
+        } catch (Throwable e) {
+            upstream.cancel();
+            onError(e);
+            return;
+        }
+        buffer.offer(result);
+        drain();
+    }
+    
+    @Override
+    public void onError(Throwable throwable) {
+        if (done)
+            return;
+        failure = Objects.requireNonNull(throwable);
+        done = true;
+        drain();
+    }
+    
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+    
+    /**
+     * Send buffered results to the subscriber. Whichever thread raises
+     * {@code pending} from zero sends, on behalf of any others which call
+     * while it is sending, so the subscriber is only ever called by one thread
+     * at a time.
+     */
+    private void drain() {
+        if (pending.getAndIncrement() != 0)
+            return;
+        for (int missed = 1;;) {
+            Flow.Subscriber<? super R> s = subscriber.get();
+            if (subscribed && s != null) {
+                long r = requested.get();
+                long e = 0;
+                for (;;) {
+                    Throwable invalid = violation;
+                    if (invalid != null && !cancelled) {
+                        cancelled = true;
+                        buffer.clear();
+                        s.onError(invalid);
+                        return;
+                    }
+                    if (cancelled) {
+                        buffer.clear();
+                        return;
+                    }
+                    // Read done first, so a result offered just before it is set is not missed
+                    boolean finished = done;
+                    if (e == r && !finished)
+                        break;
+                    R result = e == r ? null : buffer.poll();
+                    if (result == null) {
+                        if (finished && buffer.isEmpty()) {
+                            cancelled = true;
+                            if (failure != null)
+                                s.onError(failure);
+                            else
+                                s.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+                    s.onNext(result);
+                    e++;
+                    if (++sent == replenish) {
+                        sent = 0;
+                        upstream.request(replenish);
+                    }
+                }
+                if (e != 0 && r != Long.MAX_VALUE)
+                    requested.addAndGet(-e);
+            }
+            missed = pending.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+    
+    /**
+     * The subscription given to the subscriber.
+     */
+    private final class Downstream implements Flow.Subscription {
+        
+        @Override
+        public void request(long n) {
+            if (this != downstream)
+                return;
+            if (n <= 0) {
+                // Signalled ahead of any buffered results, whatever the demand
+                if (violation == null)
+                    violation = new IllegalArgumentException("Requests must be positive: " + n);
+                Flow.Subscription s = upstream;
+                if (s != null)
+                    s.cancel();
+                drain();
+                return;
+            }
+            requested.accumulateAndGet(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (this != downstream)
+                return;
+            cancelled = true;
+            Flow.Subscription s = upstream;
+            if (s != null)
+                s.cancel();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link Flow.Subscriber} which passes each item to a consumer, keeping a
+ * window of requested items ahead of it. It requests a full window when it is
+ * subscribed, and tops the window up each time a quarter of it has been
+ * consumed, so it makes one request per several items instead of one per
+ * item, and never asks for more than the window holds.
+ * 
+ * <p>
+ * If the consumer throws, the subscription is cancelled and
+ * {@link #completion()} completes with the exception.
+ * 
+ * @param <T> the type of the items
+ */
+public final class PrefetchSubscriber<T> implements Flow.Subscriber<T> {
+    
+    private final java.util.function.Consumer<? super T> consumer;
+    private final int                                    prefetch;
+    private final int                                    replenish;
+    private final CompletableFuture<Void>                completion = new CompletableFuture<>();
+    private volatile Flow.Subscription                   subscription;
+    private int                                          consumed;
+    
+    /**
+     * @param consumer The consumer of the items.
+     * @param prefetch The most items to request ahead of the consumer.
+     */
+    public PrefetchSubscriber(java.util.function.Consumer<? super T> consumer, int prefetch) {
+        if (prefetch < 1)
+            throw new IllegalArgumentException("Prefetch must be at least one: " + prefetch);
+        this.consumer = Objects.requireNonNull(consumer);
+        this.prefetch = prefetch;
+        this.replenish = Math.max(1, prefetch / 4);
+        completion.whenComplete((v, e) -> {
+            Flow.Subscription s = subscription;
+            if (s != null && completion.isCancelled())
+                s.cancel();
+        });
+    }
+    
+    /**
+     * @return A future which completes when the stream ends, exceptionally if
+     *         it failed. Cancelling it cancels the subscription.
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+    
+    /**
+     * Stop receiving items and cancel {@link #completion()}.
+     */
+    public void cancel() {
+        completion.cancel(false);
+    }
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (this.subscription != null || completion.isDone()) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        if (completion.isCancelled())
+            subscription.cancel();
+        else
+            subscription.request(prefetch);
+    }
+    
+    @Override
+    public void onNext(T item) {
+        if (completion.isDone())
+            return;
+        try {
+            consumer.accept(item);
+        } catch (Throwable e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        if (++consumed == replenish) {
+            consumed = 0;
+            subscription.request(replenish);
+        }
+    }
+    
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(Objects.requireNonNull(throwable));
+    }
+    
+    @Override
+    public void onComplete() {
+        completion.complete(null);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free token bucket. Permits are added at a steady rate up to a
+ * maximum burst, and each call takes one or more of them, either waiting for
+ * them to become available or giving up straight away.
+ * 
+ * <p>
+ * The bucket is kept as the single time at which it will next be full, in
+ * sixteenths of a nanosecond, and updated with one compare-and-set per call.
+ * This keeps it accurate and cheap well beyond a million permits per second.
+ * A limiter can be shared by any number of functions, which then draw on the
+ * same permits:
+ * 
+ * <pre>{@code
+ *     RateLimiter limiter = RateLimiter.of(10_000, 100);
+ *     Consumer<Order> send = sendOrder.rateLimited(limiter);
+ *     Consumer<Cancel> cancel = sendCancel.rateLimitedOrDrop(limiter);
+ * }</pre>
+ */
+public final class RateLimiter {
+    
+    private static final int  SHIFT        = 4;
+    private static final long TICKS_PER_NS = 1L << SHIFT;
+    
+    private final double     permitsPerSecond;
+    private final int        burst;
+    private final long       interval;
+    private final long       tolerance;
+    private final long       origin   = System.nanoTime();
+    private final AtomicLong full     = new AtomicLong();
+    private final LongAdder  granted  = new LongAdder();
+    private final LongAdder  rejected = new LongAdder();
+    
+    private RateLimiter(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0))
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        if (burst < 1)
+            throw new IllegalArgumentException("Burst must be at least 1: " + burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) * TICKS_PER_NS / permitsPerSecond));
+        this.tolerance = interval * burst;
+    }
+    
+    /**
+     * @param permitsPerSecond The rate at which permits become available.
+     * @param burst The most permits which can be taken at once after the
+     *            limiter has been idle. It starts out full.
+     * @return A new limiter.
+     */
+    public static RateLimiter of(double permitsPerSecond, int burst) {
+        return new RateLimiter(permitsPerSecond, burst);
+    }
+    
+    /**
+     * Take a permit, waiting for one if necessary.
+     * 
+     * @throws CancellationException If the thread is interrupted while waiting.
+     *             Its interrupt status is left set.
+     */
+    public void acquire() {
+        acquire(1);
+    }
+    
+    /**
+     * Take permits, waiting for them if necessary. Callers are served in the
+     * order they arrive, and a request for more permits than the burst just
+     * waits longer.
+     * 
+     * @param permits The number of permits to take.
+     * @throws CancellationException If the thread is interrupted while waiting.
+     *             Its interrupt status is left set.
+     */
+    public void acquire(int permits) {
+        checkPermits(permits);
+        long cost = interval * permits;
+        long now, next;
+        for (;;) {
+            long current = full.get();
+            now = now();
+            next = Math.max(current, now) + cost;
+            if (full.compareAndSet(current, next))
+                break;
+        }
+        granted.add(permits);
+        long wait = next - tolerance - now;
+        if (wait <= 0)
+            return;
+        long deadline = System.nanoTime() + (wait >> SHIFT);
+        for (long remaining; (remaining = deadline - System.nanoTime()) > 0;) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a permit");
+            }
+        }
+    }
+    
+    /**
+     * @return True if a permit was available and taken.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+    
+    /**
+     * @param permits The number of permits to take.
+     * @return True if the permits were available and taken. Nothing is taken
+     *         otherwise.
+     */
+    public boolean tryAcquire(int permits) {
+        checkPermits(permits);
+        long cost = interval * permits;
+        for (;;) {
+            long current = full.get();
+            long now = now();
+            long next = Math.max(current, now) + cost;
+            if (next - now > tolerance) {
+                rejected.add(permits);
+                return false;
+            }
+            if (full.compareAndSet(current, next)) {
+                granted.add(permits);
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * @return The rate at which permits become available.
+     */
+    public double permitsPerSecond() {
+        return permitsPerSecond;
+    }
+    
+    /**
+     * @return The most permits which can be taken at once.
+     */
+    public int burst() {
+        return burst;
+    }
+    
+    /**
+     * @return The number of permits handed out.
+     */
+    public long granted() {
+        return granted.sum();
+    }
+    
+    /**
+     * @return The number of permits refused by {@link #tryAcquire(int)}.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return "rate=" + permitsPerSecond + "/s burst=" + burst + " granted=" + granted() + " rejected=" + rejected();
+    }
+    
+    private long now() {
+        return (System.nanoTime() - origin) << SHIFT;
+    }
+    
+    private static void checkPermits(int permits) {
+        if (permits < 1)
+            throw new IllegalArgumentException("At least one permit must be taken: " + permits);
+    }
+}
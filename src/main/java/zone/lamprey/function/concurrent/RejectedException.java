@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+/**
+ * Thrown when a call is refused without being attempted, for example by an
+ * open {@link CircuitBreaker} or a full {@link AdaptiveLimit}. Rejections are
+ * meant to be cheap, so these exceptions carry no stack trace and the same
+ * instance is thrown for every rejection of the same kind.
+ */
+public final class RejectedException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Thrown by an open circuit breaker.
+     */
+    public static final RejectedException CIRCUIT_OPEN = new RejectedException("Circuit breaker is open");
+    
+    /**
+     * Thrown when too many calls are already in flight.
+     */
+    public static final RejectedException LIMIT_EXCEEDED = new RejectedException("Concurrency limit exceeded");
+    
+    /**
+     * Thrown when a {@link BatchBuffer} is full and its flusher has fallen
+     * behind.
+     */
+    public static final RejectedException BUFFER_FULL = new RejectedException("Batch buffer is full");
+    
+    private RejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps retries at a fraction of calls, so that retrying can't multiply the
+ * load on a backend which is already failing. Every call adds a fraction of a
+ * token to the budget and every retry takes a whole one. The budget holds a
+ * small reserve of tokens, so the occasional retry is always possible even
+ * when calls are rare.
+ * 
+ * <p>
+ * A budget is meant to be shared by every {@link RetryPolicy} retrying
+ * calls to the same backend.
+ */
+public final class RetryBudget {
+    
+    private static final long SCALE = 1000;
+    
+    private final double     ratio;
+    private final int        reserve;
+    private final long       deposit;
+    private final long       capacity;
+    private final AtomicLong balance;
+    private final LongAdder  retries  = new LongAdder();
+    private final LongAdder  refused  = new LongAdder();
+    
+    private RetryBudget(double ratio, int reserve) {
+        if (!(ratio >= 0))
+            throw new IllegalArgumentException("Ratio must not be negative: " + ratio);
+        if (reserve < 0)
+            throw new IllegalArgumentException("Reserve must not be negative: " + reserve);
+        this.ratio = ratio;
+        this.reserve = reserve;
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = Math.max(reserve, 1) * SCALE;
+        this.balance = new AtomicLong(reserve * SCALE);
+    }
+    
+    /**
+     * @param ratio The number of retries allowed per call, such as 0.1 for
+     *            one retry in every ten calls.
+     * @param reserve The most retries which can be saved up while calls
+     *            succeed, and the number available to start with.
+     * @return A new budget.
+     */
+    public static RetryBudget of(double ratio, int reserve) {
+        return new RetryBudget(ratio, reserve);
+    }
+    
+    /**
+     * Add to the budget for a call.
+     */
+    public void deposit() {
+        for (;;) {
+            long current = balance.get();
+            long updated = Math.min(capacity, current + deposit);
+            if (updated == current || balance.compareAndSet(current, updated))
+                return;
+        }
+    }
+    
+    /**
+     * @return True if the budget allowed a retry, which has been paid for.
+     */
+    public boolean tryWithdraw() {
+        for (;;) {
+            long current = balance.get();
+            if (current < SCALE) {
+                refused.increment();
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                retries.increment();
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * @return The number of retries allowed.
+     */
+    public long retries() {
+        return retries.sum();
+    }
+    
+    /**
+     * @return The number of retries refused.
+     */
+    public long refused() {
+        return refused.sum();
+    }
+    
+    @Override
+    public String toString() {
+        return "ratio=" + ratio + " reserve=" + reserve + " balance=" + balance.get() / (double) SCALE + " retries=" + retries() + " refused=" + refused();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * When and how often to retry a failed call. Delays grow exponentially from a
+ * base delay up to a maximum, optionally with jitter so that clients which
+ * failed together don't all retry together:
+ * 
+ * <ul>
+ * <li>{@link Jitter#NONE}: wait exactly the exponential delay.</li>
+ * <li>{@link Jitter#FULL}: wait a random time between zero and the
+ * exponential delay.</li>
+ * <li>{@link Jitter#DECORRELATED}: wait a random time between the base delay
+ * and three times the previous delay.</li>
+ * </ul>
+ * 
+ * <p>
+ * Only failures accepted by the {@link #retryOn(Predicate) retry predicate}
+ * are retried, and if the policy has a {@link RetryBudget} each retry must
+ * also be allowed by it. Policies are immutable; each setting method returns
+ * a modified copy.
+ * 
+ * <pre>{@code
+ *     RetryPolicy policy = RetryPolicy.defaults()
+ *         .maxAttempts(5)
+ *         .retryOn(e -> e instanceof IOException)
+ *         .budget(RetryBudget.of(0.1, 10));
+ *     Supplier<Quote> quote = fetchQuote.retrying(policy);
+ * }</pre>
+ * 
+ * <p>
+ * Blocking retries wait by parking the calling thread, which on a virtual
+ * thread frees its carrier. Asynchronous retries are scheduled on a shared
+ * timer and hold no thread while they wait, and are then started on the
+ * {@link FanOut#executor() fan-out executor}.
+ */
+public final class RetryPolicy {
+    
+    /**
+     * How delays between retries are randomized.
+     */
+    public enum Jitter {
+        /**
+         * Delays are not randomized.
+         */
+        NONE,
+        /**
+         * Delays are between zero and the exponential delay.
+         */
+        FULL,
+        /**
+         * Delays are between the base delay and three times the previous one.
+         */
+        DECORRELATED
+    }
+    
+    private static final RetryPolicy DEFAULTS = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(10), Jitter.FULL, RetryPolicy::isTransient, null);
+    
+    private final int                          maxAttempts;
+    private final Duration                     baseDelay;
+    private final Duration                     maxDelay;
+    private final Jitter                       jitter;
+    private final Predicate<? super Throwable> retryOn;
+    private final RetryBudget                  budget;
+    
+    private RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Jitter jitter, Predicate<? super Throwable> retryOn, RetryBudget budget) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.jitter = jitter;
+        this.retryOn = retryOn;
+        this.budget = budget;
+    }
+    
+    /**
+     * @return The default policy: three attempts of any call which threw an
+     *         {@link Exception}, with full jitter on delays starting at 100ms
+     *         and capped at 10s, and no budget. A call rejected with a
+     *         {@link RejectedException}, such as by an open circuit breaker,
+     *         or which ran out of time with a
+     *         {@link DeadlineExceededException} is not retried, since
+     *         retrying would only fail again.
+     */
+    public static RetryPolicy defaults() {
+        return DEFAULTS;
+    }
+    
+    /**
+     * @param attempts The most attempts to make, including the first.
+     * @return A copy of this policy with the given number of attempts.
+     */
+    public RetryPolicy maxAttempts(int attempts) {
+        if (attempts < 1)
+            throw new IllegalArgumentException("At least one attempt is needed: " + attempts);
+        return new RetryPolicy(attempts, baseDelay, maxDelay, jitter, retryOn, budget);
+    }
+    
+    /**
+     * @param base The delay before the first retry, which doubles for each
+     *            retry after it.
+     * @param max The longest delay.
+     * @return A copy of this policy with the given delays.
+     */
+    public RetryPolicy backoff(Duration base, Duration max) {
+        if (base.isNegative() || max.compareTo(base) < 0)
+            throw new IllegalArgumentException("Delays must satisfy 0 <= base <= max: " + base + ", " + max);
+        return new RetryPolicy(maxAttempts, base, max, jitter, retryOn, budget);
+    }
+    
+    /**
+     * @param jitter How to randomize delays.
+     * @return A copy of this policy with the given jitter.
+     */
+    public RetryPolicy jitter(Jitter jitter) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, Objects.requireNonNull(jitter), retryOn, budget);
+    }
+    
+    /**
+     * @param retryOn Accepts the failures which should be retried.
+     * @return A copy of this policy with the given predicate.
+     */
+    public RetryPolicy retryOn(Predicate<? super Throwable> retryOn) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, jitter, Objects.requireNonNull(retryOn), budget);
+    }
+    
+    /**
+     * @param budget The budget retries are taken from, or null for no budget.
+     * @return A copy of this policy with the given budget.
+     */
+    public RetryPolicy budget(RetryBudget budget) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, jitter, retryOn, budget);
+    }
+    
+    /**
+     * Make a call, retrying it according to this policy.
+     * 
+     * @param <T> The type of the result.
+     * @param supplier The call to make.
+     * @return The result of the first attempt to succeed.
+     * @throws RuntimeException The failure of the last attempt, with those of
+     *             earlier ones attached as suppressed exceptions. Checked
+     *             exceptions are wrapped in a {@link CompletionException}.
+     * @throws CancellationException If the thread is interrupted while waiting
+     *             to retry. Its interrupt status is left set.
+     */
+    public <T> T call(Supplier<? extends T> supplier) {
+        if (budget != null)
+            budget.deposit();
+        Throwable failure = null;
+        long delay = 0;
+        for (int attempt = 1;; attempt++) {
+            try {
+                return supplier.get();
+            } catch (Throwable e) {
+                failure = chain(failure, e);
+                if (!shouldRetry(attempt, e))
+                    throw rethrow(failure);
+            }
+            delay = nextDelay(attempt, delay);
+            park(delay);
+        }
+    }
+    
+    /**
+     * Make an asynchronous call, retrying it according to this policy. The
+     * first attempt is started on the calling thread, and retries on the
+     * {@link FanOut#executor() fan-out executor} once their delay has passed.
+     * The calling thread's {@link Deadline}, if it has one, is attached to
+     * every attempt.
+     * 
+     * @param <T> The type of the result.
+     * @param supplier Starts the call to make.
+     * @return A future completed with the result of the first attempt to
+     *         succeed, or with the failure of the last attempt.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<? extends CompletionStage<T>> supplier) {
+        if (budget != null)
+            budget.deposit();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(Deadline.propagate(supplier), result, 1, 0, null);
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return "maxAttempts=" + maxAttempts + " baseDelay=" + baseDelay + " maxDelay=" + maxDelay + " jitter=" + jitter + (budget == null ? "" : " budget=[" + budget + "]");
+    }
+    
+    private <T> void attempt(Supplier<? extends CompletionStage<T>> supplier, CompletableFuture<T> result, int attempt, long delay, Throwable failure) {
+        CompletionStage<T> stage;
+        try {
+            stage = supplier.get();
+        } catch (Throwable e) {
+            retryAsync(supplier, result, attempt, delay, chain(failure, e), e);
+            return;
+        }
+        stage.whenComplete((value, e) -> {
+            if (e == null)
+                result.complete(value);
+            else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                retryAsync(supplier, result, attempt, delay, chain(failure, cause), cause);
+            }
+        });
+    }
+    
+    private <T> void retryAsync(Supplier<? extends CompletionStage<T>> supplier, CompletableFuture<T> result, int attempt, long delay, Throwable failure, Throwable latest) {
+        if (result.isDone())
+            return;
+        if (!shouldRetry(attempt, latest)) {
+            result.completeExceptionally(failure);
+            return;
+        }
+        long next = nextDelay(attempt, delay);
+        // The timer thread is shared, so it only hands the retry over
+        TimerWheel.shared().schedule(() -> {
+            try {
+                FanOut.executor().execute(() -> attempt(supplier, result, attempt + 1, next, failure));
+            } catch (Throwable e) {
+                result.completeExceptionally(chain(failure, e));
+            }
+        }, next, TimeUnit.NANOSECONDS);
+    }
+    
+    private static boolean isTransient(Throwable failure) {
+        return failure instanceof Exception
+            && !(failure instanceof RejectedException)
+            && !(failure instanceof DeadlineExceededException);
+    }
+    
+    private boolean shouldRetry(int attempt, Throwable failure) {
+        return attempt < maxAttempts && retryOn.test(failure) && (budget == null || budget.tryWithdraw());
+    }
+    
+    private long nextDelay(int attempt, long previous) {
+        long base = baseDelay.toNanos();
+        long max = maxDelay.toNanos();
+        long exponential = attempt > 62 || base << (attempt - 1) >>> (attempt - 1) != base ? max : Math.min(max, base << (attempt - 1));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (jitter) {
+            case FULL:
+                return exponential == 0 ? 0 : random.nextLong(exponential + 1);
+            case DECORRELATED:
+                long upper = Math.min(max, Math.max(base, previous) * 3);
+                return upper <= base ? base : base + random.nextLong(upper - base + 1);
+            default:
+                return exponential;
+        }
+    }
+    
+    private static Throwable chain(Throwable earlier, Throwable latest) {
+        if (earlier != null && earlier != latest)
+            latest.addSuppressed(earlier);
+        return latest;
+    }
+    
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof Error)
+            throw (Error) failure;
+        return failure instanceof RuntimeException ? (RuntimeException) failure : new CompletionException(failure);
+    }
+    
+    private static void park(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining; (remaining = deadline - System.nanoTime()) > 0;) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to retry");
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A bounded hand-off from any number of producer threads to one consumer
+ * thread, in the style of the LMAX Disruptor. Elements are written into a
+ * preallocated ring of slots, and the consumer thread drains every slot
+ * published since it last looked in one batch, passing each element to a
+ * sink. Nothing is allocated per element, and the primitive rings store their
+ * elements unboxed.
+ * 
+ * <pre>{@code
+ *     RingBuffer.OfObject<Event> ring = RingBuffer.of(1 << 16, ProducerType.MULTI, WaitStrategy.PARK, journal::write);
+ *     Consumer<Event> publish = ring::accept;
+ * }</pre>
+ * 
+ * <p>
+ * With {@link ProducerType#SINGLE}, slots are claimed without any atomic
+ * read-modify-write and published with one uncontended compare-and-set, but
+ * only one thread at a time may add elements. When the ring is full,
+ * producers wait for the consumer using the wait strategy, as the consumer
+ * does when the ring is empty. Exceptions and errors thrown by the sink are
+ * counted by {@link #failures()} and otherwise ignored.
+ */
+public abstract class RingBuffer implements AutoCloseable {
+    
+    /**
+     * Which threads may add elements to a ring.
+     */
+    public enum ProducerType {
+        /**
+         * One thread at a time.
+         */
+        SINGLE,
+        /**
+         * Any number of threads at once.
+         */
+        MULTI
+    }
+    
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    // Swapped into the cursor by the consumer thread once it has consumed the
+    // last element of a closed ring, so that no slot can be claimed after it.
+    private static final long          CLOSED  = Long.MIN_VALUE;
+    
+    private final int                mask;
+    private final int                shift;
+    private final boolean            multi;
+    private final WaitStrategy       wait;
+    // The next sequence to claim, for a single producer.
+    private long                     next;
+    // The last published sequence for a single producer, or the next sequence
+    // to claim for many.
+    private final AtomicLong         cursor    = new AtomicLong();
+    // For many producers, the round in which each slot was last published.
+    private final AtomicIntegerArray available;
+    // The number of elements consumed.
+    private final AtomicLong         consumed  = new AtomicLong();
+    private final LongAdder          failures  = new LongAdder();
+    private final Thread             thread;
+    private volatile boolean         running   = true;
+    
+    RingBuffer(int capacity, ProducerType producers, WaitStrategy wait) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.multi = Objects.requireNonNull(producers) == ProducerType.MULTI;
+        this.wait = Objects.requireNonNull(wait);
+        if (multi) {
+            available = new AtomicIntegerArray(size);
+            for (int i = 0; i < size; i++)
+                available.set(i, -1);
+        } else {
+            available = null;
+            cursor.set(-1);
+        }
+        thread = new Thread(this::drain, "funcy-ring-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+    }
+    
+    /**
+     * @param <T> the type of the elements
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param producers Which threads may add elements.
+     * @param wait How producers and the consumer wait for each other.
+     * @param sink The consumer to pass elements to, on the ring's thread.
+     * @return A started ring of objects.
+     */
+    public static <T> OfObject<T> of(int capacity, ProducerType producers, WaitStrategy wait, Consumer<? super T> sink) {
+        return start(new OfObject<>(capacity, producers, wait, sink));
+    }
+    
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param producers Which threads may add elements.
+     * @param wait How producers and the consumer wait for each other.
+     * @param sink The consumer to pass elements to, on the ring's thread.
+     * @return A started ring of ints.
+     */
+    public static OfInt ofInts(int capacity, ProducerType producers, WaitStrategy wait, IntConsumer sink) {
+        return start(new OfInt(capacity, producers, wait, sink));
+    }
+    
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param producers Which threads may add elements.
+     * @param wait How producers and the consumer wait for each other.
+     * @param sink The consumer to pass elements to, on the ring's thread.
+     * @return A started ring of longs.
+     */
+    public static OfLong ofLongs(int capacity, ProducerType producers, WaitStrategy wait, LongConsumer sink) {
+        return start(new OfLong(capacity, producers, wait, sink));
+    }
+    
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param producers Which threads may add elements.
+     * @param wait How producers and the consumer wait for each other.
+     * @param sink The consumer to pass elements to, on the ring's thread.
+     * @return A started ring of doubles.
+     */
+    public static OfDouble ofDoubles(int capacity, ProducerType producers, WaitStrategy wait, DoubleConsumer sink) {
+        return start(new OfDouble(capacity, producers, wait, sink));
+    }
+    
+    private static <R extends RingBuffer> R start(R ring) {
+        ((RingBuffer) ring).thread.start();
+        return ring;
+    }
+    
+    /**
+     * @return The number of slots.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * @return The number of elements waiting to be consumed. Only an estimate
+     *         while elements are being added.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(claimed() - consumed.get(), capacity()));
+    }
+    
+    /**
+     * @return The number of elements the sink threw an exception for.
+     */
+    public long failures() {
+        return failures.sum();
+    }
+    
+    /**
+     * Stop accepting elements, and wait for the ones already added to be
+     * consumed.
+     * 
+     * @throws CancellationException If the thread is interrupted while
+     *             waiting.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while closing a ring buffer");
+        }
+    }
+    
+    /**
+     * Claim the next slot, waiting for the consumer if the ring is full. The
+     * element must then be stored at the slot's index and the sequence
+     * published.
+     * 
+     * @return The sequence of the claimed slot.
+     * @throws IllegalStateException If the ring has been closed.
+     */
+    final long claim() {
+        if (!running)
+            throw new IllegalStateException("Ring buffer is closed");
+        long sequence;
+        if (multi) {
+            do {
+                sequence = cursor.get();
+                if (sequence == CLOSED)
+                    throw new IllegalStateException("Ring buffer is closed");
+            } while (!cursor.compareAndSet(sequence, sequence + 1));
+        } else {
+            sequence = next++;
+        }
+        long wrap = sequence - mask;
+        for (int idle = 1; wrap > consumed.get(); idle++)
+            wait.idle(idle);
+        return sequence;
+    }
+    
+    /**
+     * @param sequence A sequence.
+     * @return The index of its slot.
+     */
+    final int index(long sequence) {
+        return (int) sequence & mask;
+    }
+    
+    /**
+     * Make a claimed slot visible to the consumer.
+     * 
+     * @param sequence The sequence of the slot.
+     * @throws IllegalStateException If the ring was closed, and its consumer
+     *             finished, after a single producer claimed the slot.
+     */
+    final void publish(long sequence) {
+        if (multi)
+            available.lazySet(index(sequence), (int) (sequence >>> shift));
+        else if (!cursor.compareAndSet(sequence - 1, sequence))
+            throw new IllegalStateException("Ring buffer is closed");
+    }
+    
+    /**
+     * Pass the element in a slot to the sink, and clear the slot if it holds
+     * a reference.
+     * 
+     * @param index The index of the slot.
+     */
+    abstract void deliver(int index);
+    
+    private void drain() {
+        long sequence = 0;
+        int idle = 0;
+        for (;;) {
+            long end = published(sequence);
+            if (end > sequence) {
+                for (; sequence < end; sequence++) {
+                    try {
+                        deliver(index(sequence));
+                    } catch (Throwable e) {
+                        failures.increment();
+                    }
+                }
+                consumed.lazySet(sequence);
+                idle = 0;
+            } else if (!running && sequence >= claimed()) {
+                // Producers which claimed a slot before this are waited for
+                if (cursor.compareAndSet(multi ? sequence : sequence - 1, CLOSED))
+                    return;
+            } else {
+                wait.idle(++idle);
+            }
+        }
+    }
+    
+    /**
+     * @return The sequence after the last one claimed, as far as the consumer
+     *         can tell.
+     */
+    private long claimed() {
+        long c = cursor.get();
+        if (c == CLOSED)
+            return consumed.get();
+        return multi ? c : c + 1;
+    }
+    
+    /**
+     * @param from The next sequence to consume.
+     * @return The sequence after the last one which can be consumed in order.
+     */
+    private long published(long from) {
+        if (!multi)
+            return cursor.get() + 1;
+        long end = from;
+        long limit = from + mask + 1;
+        while (end < limit && available.get(index(end)) == (int) (end >>> shift))
+            end++;
+        return end;
+    }
+    
+    /**
+     * A ring of objects.
+     * 
+     * @param <T> the type of the elements
+     */
+    public static final class OfObject<T> extends RingBuffer implements Consumer<T> {
+        private final Object[]            slots;
+        private final Consumer<? super T> sink;
+        
+        OfObject(int capacity, ProducerType producers, WaitStrategy wait, Consumer<? super T> sink) {
+            super(capacity, producers, wait);
+            this.slots = new Object[capacity()];
+            this.sink = Objects.requireNonNull(sink);
+        }
+        
+        /**
+         * Add an element, waiting if the ring is full.
+         * 
+         * @param t The element.
+         * @throws IllegalStateException If the ring has been closed.
+         */
+        @Override
+        public void accept(T t) {
+            long sequence = claim();
+            slots[index(sequence)] = t;
+            publish(sequence);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        void deliver(int index) {
+            T t = (T) slots[index];
+            slots[index] = null;
+            sink.accept(t);
+        }
+    }
+    
+    /**
+     * A ring of ints.
+     */
+    public static final class OfInt extends RingBuffer implements IntConsumer {
+        private final int[]       slots;
+        private final IntConsumer sink;
+        
+        OfInt(int capacity, ProducerType producers, WaitStrategy wait, IntConsumer sink) {
+            super(capacity, producers, wait);
+            this.slots = new int[capacity()];
+            this.sink = Objects.requireNonNull(sink);
+        }
+        
+        /**
+         * Add an element, waiting if the ring is full.
+         * 
+         * @param value The element.
+         * @throws IllegalStateException If the ring has been closed.
+         */
+        @Override
+        public void accept(int value) {
+            long sequence = claim();
+            slots[index(sequence)] = value;
+            publish(sequence);
+        }
+        
+        @Override
+        void deliver(int index) {
+            sink.accept(slots[index]);
+        }
+    }
+    
+    /**
+     * A ring of longs.
+     */
+    public static final class OfLong extends RingBuffer implements LongConsumer {
+        private final long[]       slots;
+        private final LongConsumer sink;
+        
+        OfLong(int capacity, ProducerType producers, WaitStrategy wait, LongConsumer sink) {
+            super(capacity, producers, wait);
+            this.slots = new long[capacity()];
+            this.sink = Objects.requireNonNull(sink);
+        }
+        
+        /**
+         * Add an element, waiting if the ring is full.
+         * 
+         * @param value The element.
+         * @throws IllegalStateException If the ring has been closed.
+         */
+        @Override
+        public void accept(long value) {
+            long sequence = claim();
+            slots[index(sequence)] = value;
+            publish(sequence);
+        }
+        
+        @Override
+        void deliver(int index) {
+            sink.accept(slots[index]);
+        }
+    }
+    
+    /**
+     * A ring of doubles.
+     */
+    public static final class OfDouble extends RingBuffer implements DoubleConsumer {
+        private final double[]       slots;
+        private final DoubleConsumer sink;
+        
+        OfDouble(int capacity, ProducerType producers, WaitStrategy wait, DoubleConsumer sink) {
+            super(capacity, producers, wait);
+            this.slots = new double[capacity()];
+            this.sink = Objects.requireNonNull(sink);
+        }
+        
+        /**
+         * Add an element, waiting if the ring is full.
+         * 
+         * @param value The element.
+         * @throws IllegalStateException If the ring has been closed.
+         */
+        @Override
+        public void accept(double value) {
+            long sequence = claim();
+            slots[index(sequence)] = value;
+            publish(sequence);
+        }
+        
+        @Override
+        void deliver(int index) {
+            sink.accept(slots[index]);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} of an endless stream of items from a supplier. Each
+ * subscriber has its own subscription, and the supplier is only called for an
+ * item once the subscriber has requested it, on a task submitted to an
+ * executor. A task sends at most {@link Flow#defaultBufferSize()} items before
+ * handing its thread back to the executor, so subscribers which request
+ * without limit still share the executor fairly.
+ * 
+ * <p>
+ * If the supplier throws, the subscriber is sent the exception through
+ * {@code onError} and the subscription ends. The supplier is never called by
+ * more than one thread at a time for the same subscriber, but may be for
+ * different subscribers.
+ * 
+ * @param <T> the type of the items
+ */
+public final class SupplierPublisher<T> implements Flow.Publisher<T> {
+    
+    private final java.util.function.Supplier<? extends T> supplier;
+    private final Executor                                 executor;
+    
+    /**
+     * @param supplier The supplier of the items.
+     * @param executor The executor to send items from.
+     */
+    public SupplierPublisher(java.util.function.Supplier<? extends T> supplier, Executor executor) {
+        this.supplier = Objects.requireNonNull(supplier);
+        this.executor = Objects.requireNonNull(executor);
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Pull<T> pull = new Pull<>(supplier, subscriber, executor);
+        try {
+            subscriber.onSubscribe(pull);
+        } catch (Throwable e) {
+            pull.cancel();
+            throw e;
+        }
+        // Requests made during onSubscribe are only acted on once it returns
+        pull.submit();
+    }
+    
+    /**
+     * One subscription. Whichever thread raises {@code pending} from zero
+     * submits a drain task, which keeps sending items until there is no more
+     * demand and no request arrived while it was sending.
+     */
+    private static final class Pull<T> implements Flow.Subscription, java.lang.Runnable {
+        private final java.util.function.Supplier<? extends T> supplier;
+        private final Flow.Subscriber<? super T>               subscriber;
+        private final Executor                                 executor;
+        private final AtomicLong                               requested = new AtomicLong();
+        private final AtomicInteger                            pending   = new AtomicInteger(1);
+        private volatile boolean                               cancelled;
+        private volatile Throwable                             failure;
+        
+        Pull(java.util.function.Supplier<? extends T> supplier, Flow.Subscriber<? super T> subscriber, Executor executor) {
+            this.supplier = supplier;
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+        
+        @Override
+        public void request(long n) {
+            if (n <= 0)
+                failure = new IllegalArgumentException("Requests must be positive: " + n);
+            else
+                requested.accumulateAndGet(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m);
+            if (pending.getAndIncrement() == 0)
+                submit();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+        
+        void submit() {
+            try {
+                executor.execute(this);
+            } catch (Throwable e) {
+                cancelled = true;
+                subscriber.onError(e);
+            }
+        }
+        
+        @Override
+        public void run() {
+            int missed = pending.get();
+            for (int sent = 0;;) {
+                if (cancelled)
+                    return;
+                Throwable e = failure;
+                if (e != null) {
+                    fail(e);
+                    return;
+                }
+                long r = requested.get();
+                if (r > 0) {
+                    if (sent == Flow.defaultBufferSize()) {
+                        submit();
+                        return;
+                    }
+                    T item;
+                    try {
+                        item = Objects.requireNonNull(supplier.get(), "The supplier returned null");
+                    } catch (Throwable t) {
+                        fail(t);
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(item);
+                    } catch (Throwable t) {
+                        fail(t);
+                        return;
+                    }
+                    sent++;
+                    if (r != Long.MAX_VALUE)
+                        requested.decrementAndGet();
+                    continue;
+                }
+                missed = pending.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+        
+        private void fail(Throwable e) {
+            cancelled = true;
+            subscriber.onError(e);
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A hashed hierarchical timer wheel. Time is divided into ticks, and each
+ * level of the wheel has a power-of-two number of slots holding the tasks due
+ * in one span of ticks: one tick per slot on the first level, and on each
+ * further level as many ticks per slot as the whole level below covers. A
+ * task goes into the lowest level whose span reaches its deadline, and moves
+ * down a level each time the level below wraps around, until it expires from
+ * the first level.
+ * 
+ * <p>
+ * Scheduling and cancelling are O(1) and never block, however many tasks are
+ * pending, which suits large numbers of timeouts which are mostly cancelled
+ * before they fire. The price is resolution: tasks run on the first tick at
+ * or after their deadline, so they may run up to a tick late. A single daemon
+ * thread advances the wheel, sleeping while it is empty, and passes the tasks
+ * expiring in each tick to the expiry callback as one batch. By default they
+ * are run on that thread, so they must be short and must not block; pass a
+ * callback which hands them to an executor otherwise.
+ * 
+ * <pre>{@code
+ *     TimerWheel wheel = TimerWheel.of(Duration.ofMillis(1), 1024, tasks -> tasks.forEach(pool::execute));
+ *     TimerWheel.Timeout timeout = wheel.schedule(request::expire, Duration.ofSeconds(30));
+ *     ...
+ *     timeout.cancel();
+ * }</pre>
+ */
+public final class TimerWheel implements AutoCloseable {
+    
+    private static final int           WAITING      = 0;
+    private static final int           EXPIRED      = 1;
+    private static final int           CANCELLED    = 2;
+    private static final int           MAX_TRANSFER = 100_000;
+    private static final AtomicInteger THREADS      = new AtomicInteger();
+    
+    private final long                                         tick;
+    private final int                                          bits;
+    private final int                                          mask;
+    private final Bucket[][]                                   levels;
+    private final Consumer<? super List<java.lang.Runnable>>   expiry;
+    private final ConcurrentLinkedQueue<Timeout>               added     = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout>               cancelled = new ConcurrentLinkedQueue<>();
+    private final LongAdder                                    pending   = new LongAdder();
+    private final LongAdder                                    failures  = new LongAdder();
+    private final long                                         origin    = System.nanoTime();
+    private final Thread                                       thread;
+    private final boolean                                      closeable;
+    private volatile boolean                                   running   = true;
+    private volatile boolean                                   sleeping;
+    // The last tick processed. Only used by the wheel's thread.
+    private long                                               current;
+    
+    private TimerWheel(Duration tick, int slots, Consumer<? super List<java.lang.Runnable>> expiry, boolean closeable) {
+        if (tick.isNegative() || tick.isZero())
+            throw new IllegalArgumentException("Tick must be positive: " + tick);
+        if (slots < 2 || Integer.bitCount(slots) != 1)
+            throw new IllegalArgumentException("Slots must be a power of two greater than one: " + slots);
+        this.tick = tick.toNanos();
+        this.bits = Integer.numberOfTrailingZeros(slots);
+        this.mask = slots - 1;
+        // Enough levels to hold deadlines 2^36 ticks away without wrapping.
+        this.levels = new Bucket[(36 + bits - 1) / bits][slots];
+        for (Bucket[] level : levels)
+            for (int i = 0; i < slots; i++)
+                level[i] = new Bucket();
+        this.expiry = expiry == null ? this::runAll : expiry;
+        this.closeable = closeable;
+        this.thread = new Thread(this::work, "funcy-timer-" + THREADS.incrementAndGet());
+        thread.setDaemon(true);
+    }
+    
+    /**
+     * @param tick The resolution of the wheel.
+     * @param slots The number of slots on each level, a power of two.
+     * @return A started wheel which runs expired tasks on its own thread.
+     */
+    public static TimerWheel of(Duration tick, int slots) {
+        return start(new TimerWheel(tick, slots, null, true));
+    }
+    
+    /**
+     * @param tick The resolution of the wheel.
+     * @param slots The number of slots on each level, a power of two.
+     * @param expiry The callback to pass the tasks expiring in each tick to,
+     *            on the wheel's thread. The list is not used once the
+     *            callback returns, and is never empty.
+     * @return A started wheel.
+     */
+    public static TimerWheel of(Duration tick, int slots, Consumer<? super List<java.lang.Runnable>> expiry) {
+        return start(new TimerWheel(tick, slots, Objects.requireNonNull(expiry), true));
+    }
+    
+    /**
+     * @return A process-wide wheel with a tick of one millisecond and 512
+     *         slots per level, which runs expired tasks on its own thread.
+     *         Other parts of this library schedule on it too, so closing it
+     *         has no effect.
+     */
+    public static TimerWheel shared() {
+        return Shared.WHEEL;
+    }
+    
+    private static TimerWheel start(TimerWheel wheel) {
+        wheel.thread.start();
+        return wheel;
+    }
+    
+    /**
+     * Run a task once after a delay.
+     * 
+     * @param task The task.
+     * @param delay How long to wait before running it.
+     * @return A handle to cancel the task with.
+     * @throws IllegalStateException If the wheel has been closed.
+     */
+    public Timeout schedule(java.lang.Runnable task, Duration delay) {
+        return schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Run a task once after a delay.
+     * 
+     * @param task The task.
+     * @param delay How long to wait before running it.
+     * @param unit The unit of the delay.
+     * @return A handle to cancel the task with.
+     * @throws IllegalStateException If the wheel has been closed.
+     */
+    public Timeout schedule(java.lang.Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(this, Objects.requireNonNull(task), deadline(unit.toNanos(delay)), 0));
+    }
+    
+    /**
+     * Run a task repeatedly, at a fixed rate. Each run is due one period after
+     * the one before, whether or not that has finished.
+     * 
+     * @param task The task.
+     * @param initialDelay How long to wait before the first run.
+     * @param period The time between runs, rounded to a whole number of ticks
+     *            and at least one.
+     * @return A handle to cancel all further runs with.
+     * @throws IllegalStateException If the wheel has been closed.
+     */
+    public Timeout scheduleAtFixedRate(java.lang.Runnable task, Duration initialDelay, Duration period) {
+        long ticks = Math.max(1, (period.toNanos() + tick / 2) / tick);
+        return add(new Timeout(this, Objects.requireNonNull(task), deadline(initialDelay.toNanos()), ticks));
+    }
+    
+    /**
+     * @return The resolution of the wheel.
+     */
+    public Duration tick() {
+        return Duration.ofNanos(tick);
+    }
+    
+    /**
+     * @return The number of tasks waiting to run. A task which runs at a fixed
+     *         rate counts until it is cancelled.
+     */
+    public long pending() {
+        return pending.sum();
+    }
+    
+    /**
+     * @return The number of tasks, or batches if there is an expiry callback,
+     *         which threw an exception or error.
+     */
+    public long failures() {
+        return failures.sum();
+    }
+    
+    /**
+     * Stop the wheel. Tasks which have not run yet never will. The
+     * {@link #shared() shared} wheel ignores this.
+     */
+    @Override
+    public void close() {
+        if (!closeable)
+            return;
+        running = false;
+        LockSupport.unpark(thread);
+    }
+    
+    private long deadline(long delay) {
+        long due = System.nanoTime() - origin + Math.max(0, delay);
+        return (due + tick - 1) / tick;
+    }
+    
+    private Timeout add(Timeout timeout) {
+        if (!running)
+            throw new IllegalStateException("Timer wheel is closed");
+        pending.increment();
+        added.add(timeout);
+        if (sleeping)
+            LockSupport.unpark(thread);
+        return timeout;
+    }
+    
+    private void work() {
+        while (running) {
+            if (pending.sum() == 0 && added.isEmpty()) {
+                unlinkCancelled();
+                sleeping = true;
+                if (added.isEmpty())
+                    LockSupport.park(this);
+                sleeping = false;
+                // Nothing is on the wheel, so it can skip the ticks it slept
+                // through.
+                current = Math.max(current, (System.nanoTime() - origin) / tick - 1);
+                continue;
+            }
+            long next = current + 1;
+            long wake = origin + next * tick;
+            for (long now; running && (now = System.nanoTime()) - wake < 0;)
+                LockSupport.parkNanos(this, wake - now);
+            current = next;
+            transfer();
+            unlinkCancelled();
+            cascade();
+            expire();
+        }
+    }
+    
+    private void transfer() {
+        for (int i = 0; i < MAX_TRANSFER; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null)
+                return;
+            if (timeout.state == WAITING)
+                insert(timeout);
+        }
+    }
+    
+    private void unlinkCancelled() {
+        for (Timeout timeout; (timeout = cancelled.poll()) != null;)
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+    }
+    
+    private void insert(Timeout timeout) {
+        long deadline = Math.max(timeout.deadline, current);
+        long delta = deadline - current;
+        int level = 0;
+        while (level < levels.length - 1 && delta >>> (level + 1) * bits != 0)
+            level++;
+        levels[level][(int) (deadline >>> level * bits) & mask].add(timeout);
+    }
+    
+    private void cascade() {
+        for (int level = levels.length - 1; level > 0; level--) {
+            if ((current & (1L << level * bits) - 1) != 0)
+                continue;
+            Timeout timeout = levels[level][(int) (current >>> level * bits) & mask].clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                if (timeout.state == WAITING)
+                    insert(timeout);
+                timeout = next;
+            }
+        }
+    }
+    
+    private void expire() {
+        Timeout timeout = levels[0][(int) current & mask].clear();
+        List<java.lang.Runnable> batch = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            boolean due = false;
+            if (timeout.state != WAITING) {
+                // Cancelled since the cancellations were unlinked.
+            } else if (timeout.deadline > current) {
+                insert(timeout);
+            } else if (timeout.period > 0) {
+                timeout.deadline += timeout.period;
+                insert(timeout);
+                due = true;
+            } else if (Timeout.STATE.compareAndSet(timeout, WAITING, EXPIRED)) {
+                pending.decrement();
+                due = true;
+            }
+            if (due) {
+                if (batch == null)
+                    batch = new ArrayList<>();
+                batch.add(timeout.task);
+            }
+            timeout = next;
+        }
+        if (batch == null)
+            return;
+        try {
+            expiry.accept(batch);
+        } catch (Throwable e) {
+            // Anything escaping would stop the wheel's thread, and every task
+            // on it with it
+            failures.increment();
+        }
+    }
+    
+    private void runAll(List<java.lang.Runnable> tasks) {
+        for (java.lang.Runnable task : tasks) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failures.increment();
+            }
+        }
+    }
+    
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        
+        static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+        
+        private final TimerWheel         wheel;
+        private final java.lang.Runnable task;
+        private final long               period;
+        private volatile int             state;
+        // Only used by the wheel's thread once the timeout has been added.
+        private long                     deadline;
+        private Bucket                   bucket;
+        private Timeout                  prev;
+        private Timeout                  next;
+        
+        Timeout(TimerWheel wheel, java.lang.Runnable task, long deadline, long period) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+        
+        /**
+         * Cancel the task if it has not run yet, or all of its further runs if
+         * it runs at a fixed rate.
+         * 
+         * @return True if this call cancelled it.
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED))
+                return false;
+            wheel.pending.decrement();
+            wheel.cancelled.add(this);
+            return true;
+        }
+        
+        /**
+         * @return True if the task was cancelled.
+         */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+        
+        /**
+         * @return True if the task has been handed over to run. Never true for
+         *         a task which runs at a fixed rate.
+         */
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+    }
+    
+    /**
+     * The tasks in one slot, as a doubly linked list.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+        
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null)
+                head = timeout;
+            else
+                tail.next = timeout;
+            tail = timeout;
+        }
+        
+        void remove(Timeout timeout) {
+            if (timeout.prev == null)
+                head = timeout.next;
+            else
+                timeout.prev.next = timeout.next;
+            if (timeout.next == null)
+                tail = timeout.prev;
+            else
+                timeout.next.prev = timeout.prev;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+        
+        /**
+         * Empty the slot.
+         * 
+         * @return The first of its former tasks, linked to the rest by
+         *         {@code next}.
+         */
+        Timeout clear() {
+            Timeout first = head;
+            for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+                timeout.prev = null;
+            }
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+    
+    /**
+     * Holds the shared wheel, so it is only started when first used.
+     */
+    private static final class Shared {
+        static final TimerWheel WHEEL = start(new TimerWheel(Duration.ofMillis(1), 512, null, false));
+    }
+}
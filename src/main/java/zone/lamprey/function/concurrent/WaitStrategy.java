@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits when it has nothing to do, for example a consumer of an
+ * empty {@link RingBuffer}, a producer to a full one, or a polling loop which
+ * found no work. The strategy is called
+ * once per unsuccessful attempt, with the number of attempts made in a row, so
+ * it can back off the longer the thread stays idle.
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+    
+    /**
+     * Retry straight away. The lowest latency, at the cost of a whole core.
+     */
+    WaitStrategy BUSY_SPIN = idle -> {
+    };
+    
+    /**
+     * Retry straight away, but hint to the processor that the thread is
+     * spinning with {@code Thread.onSpinWait()}, which saves power and frees
+     * resources for a sibling hyperthread. The same as {@link #BUSY_SPIN} on
+     * runtimes before Java 9.
+     */
+    WaitStrategy SPIN_WAIT = idle -> SpinWait.onSpinWait();
+    
+    /**
+     * Yield to other threads between attempts.
+     */
+    WaitStrategy YIELD = idle -> Thread.yield();
+    
+    /**
+     * Spin, then yield, then park for between a microsecond and a millisecond,
+     * doubling each time. Nearly free when idle for long, while still waking
+     * within microseconds after a short pause.
+     */
+    WaitStrategy PARK = backoff(Duration.ofNanos(1_000), Duration.ofMillis(1));
+    
+    /**
+     * Wait before the next attempt.
+     * 
+     * @param idle The number of unsuccessful attempts in a row, starting at 1.
+     */
+    void idle(int idle);
+    
+    /**
+     * @param minPark The first time to park for, once spinning and yielding
+     *            have not helped.
+     * @param maxPark The longest to park for.
+     * @return A strategy which spins for 64 attempts, yields for 64 more, and
+     *         then parks for exponentially longer up to the maximum.
+     */
+    static WaitStrategy backoff(Duration minPark, Duration maxPark) {
+        long min = minPark.toNanos();
+        long max = maxPark.toNanos();
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException("Invalid park times: " + minPark + ", " + maxPark);
+        return idle -> {
+            if (idle > 128) {
+                int doublings = Math.min(idle - 129, Long.numberOfLeadingZeros(min) - 1);
+                LockSupport.parkNanos(Math.min(max, min << doublings));
+            } else if (idle > 64) {
+                Thread.yield();
+            } else {
+                SpinWait.onSpinWait();
+            }
+        };
+    }
+}
@@ -56,6 +56,7 @@ public class Examples {
         List<Integer> streams = new ArrayList<>(TEST_ITERATIONS);
         List<Integer> funcs = new ArrayList<>(TEST_ITERATIONS);
         List<Integer> iters = new ArrayList<>(TEST_ITERATIONS);
+        List<Integer> chunks = new ArrayList<>(TEST_ITERATIONS);
         
         // Run both tests a bunch of times first to give the JIT compiler time to think
         for (int i = 0; i < TEST_ITERATIONS / 1000; i++) {
@@ -63,6 +64,7 @@ public class Examples {
             streams.add(streamTest(seed).size());
             funcs.add(funcTest(seed).size());
             iters.add(iterTest(seed).size());
+            chunks.add(chunkTest(seed).size());
         }
         toStdOut.accept("\n --- Total Iterations: " + SUM_LIST.applyAsInt(streams) + " --- \n");
         
@@ -119,6 +121,27 @@ public class Examples {
         return container;
     }
     
+    /**
+     * The same computation again, but run a chunk at a time: each stage is
+     * applied to 1024 values before the next, and the results are added to the
+     * container 1024 at a time.
+     * 
+     * @return The time it took to run, in nanoseconds.
+     */
+    private static List<String> chunkTest(double seed) {
+        List<String> container = new ArrayList<>(TEST_ITERATIONS);
+        // Perform the actual computation
+        CUSTOM_RANDOM.map(MAGNITUDE.applyPartialL(seed))
+                     .map(d -> 7 * d)
+                     .map(d -> d * 100)
+                     .map(d -> d * 0.001)
+                     .mapToObj(FORMAT_D2)
+                     .map(s -> "Wow, " + s + " is quite a number!")
+                     .consumeChunked(TEST_ITERATIONS, 1024, container::addAll)
+                     .run();
+        return container;
+    }
+    
     /**
      * And here's an example of exactly the same computation using common java
      * iteration practices.
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.examples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import zone.lamprey.function.DoubleSeq;
+import zone.lamprey.function.IntSeq;
+
+/**
+ * A rough comparison of {@link IntSeq} and {@link DoubleSeq} with the
+ * equivalent {@link java.util.stream} pipelines. Each pipeline is run a number
+ * of times to warm up before it is timed.
+ * 
+ * <p>
+ * Both libraries share their stage code between every pipeline in a JVM, so
+ * the JIT compiler's view of one pipeline is skewed by the others. Pass the
+ * name of one pipeline, such as {@code IntSeq.sum}, to time it alone.
+ */
+public class SeqBenchmark {
+    
+    static final int                       SIZE      = 10_000_000;
+    static final int                       ROUNDS    = 20;
+    static final Map<String, LongSupplier> PIPELINES = new LinkedHashMap<>();
+    
+    static {
+        PIPELINES.put("IntStream.sum", () -> IntStream.range(0, SIZE).filter(i -> i % 3 == 0).map(i -> i * i).sum());
+        PIPELINES.put("IntSeq.sum", () -> IntSeq.range(0, SIZE).filter(i -> i % 3 == 0).map(i -> i * i).sum());
+        PIPELINES.put("IntStream.parallel", () -> IntStream.range(0, SIZE).parallel().filter(i -> i % 3 == 0).map(i -> i * i).sum());
+        PIPELINES.put("IntSeq.parallel", () -> IntSeq.range(0, SIZE).parallel(Runtime.getRuntime().availableProcessors()).filter(i -> i % 3 == 0).map(i -> i * i).sum());
+        PIPELINES.put("IntStream.anyMatch", () -> IntStream.range(0, SIZE).map(i -> i * 7).anyMatch(i -> i == 7 * (SIZE / 2)) ? 1 : 0);
+        PIPELINES.put("IntSeq.anyMatch", () -> IntSeq.range(0, SIZE).map(i -> i * 7).anyMatch(i -> i == 7 * (SIZE / 2)) ? 1 : 0);
+        PIPELINES.put("DoubleStream.toList", () -> IntStream.range(0, SIZE / 10).mapToDouble(i -> i).map(d -> d * 0.5).mapToObj(Double::toString).collect(Collectors.toList()).size());
+        PIPELINES.put("DoubleSeq.toList", () -> DoubleSeq.tabulate(SIZE / 10, i -> i).map(d -> d * 0.5).mapToObj(Double::toString).toList().size());
+    }
+    
+    public static void main(String... args) {
+        List<String> names = args.length == 0 ? new ArrayList<>(PIPELINES.keySet()) : Arrays.asList(args);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String name : names) {
+                long start = System.nanoTime();
+                long result = PIPELINES.get(name).getAsLong();
+                long elapsed = System.nanoTime() - start;
+                if (round >= ROUNDS / 2)
+                    System.out.printf("%-20s %8.2f ms (%d)%n", name, elapsed / 1e6, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import zone.lamprey.function.Stage;
+
+/**
+ * The statistics kept for a function registered with a
+ * {@link FunctionRegistry}.
+ */
+final class FunctionMonitor implements FunctionMonitorMBean {
+    
+    private final String          name;
+    private final Class<?>        type;
+    private final CacheStatistics cache;
+    
+    final Recorder  recorder = new Recorder();
+    final LongAdder errors   = new LongAdder();
+    
+    private final Rate invocationRate = new Rate();
+    private final Rate errorRate      = new Rate();
+    
+    private volatile int sampleRate = 1;
+    
+    FunctionMonitor(String name, Class<?> type, Stage stage) {
+        this.name = name;
+        this.type = type;
+        this.cache = findCache(stage);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public String getType() {
+        return type.getName();
+    }
+    
+    @Override
+    public long getInvocations() {
+        return recorder.calls();
+    }
+    
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+    
+    @Override
+    public double getInvocationRate() {
+        return invocationRate.perSecond(recorder.calls());
+    }
+    
+    @Override
+    public double getErrorRate() {
+        return errorRate.perSecond(errors.sum());
+    }
+    
+    @Override
+    public double getErrorRatio() {
+        long calls = recorder.calls();
+        return calls == 0 ? 0 : (double) errors.sum() / calls;
+    }
+    
+    @Override
+    public double getLatencyP50() {
+        return micros(recorder.latency().percentile(50));
+    }
+    
+    @Override
+    public double getLatencyP99() {
+        return micros(recorder.latency().percentile(99));
+    }
+    
+    @Override
+    public double getLatencyMax() {
+        return micros(recorder.latency().max());
+    }
+    
+    @Override
+    public boolean isSamplingEnabled() {
+        return recorder.sampleRate() != 0;
+    }
+    
+    @Override
+    public void setSamplingEnabled(boolean enabled) {
+        recorder.setSampleRate(enabled ? sampleRate : 0);
+    }
+    
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 1)
+            throw new IllegalArgumentException("Sample rate must be at least 1: " + sampleRate);
+        this.sampleRate = sampleRate;
+        if (isSamplingEnabled())
+            recorder.setSampleRate(sampleRate);
+    }
+    
+    @Override
+    public long getCacheHits() {
+        return cache == null ? -1 : cache.hits();
+    }
+    
+    @Override
+    public long getCacheMisses() {
+        return cache == null ? -1 : cache.misses();
+    }
+    
+    @Override
+    public long getCacheSize() {
+        return cache == null ? -1 : cache.size();
+    }
+    
+    @Override
+    public void resetStatistics() {
+        recorder.reset();
+        errors.reset();
+        invocationRate.reset();
+        errorRate.reset();
+    }
+    
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+    
+    private static CacheStatistics findCache(Stage stage) {
+        if (stage.function() instanceof CacheStatistics)
+            return (CacheStatistics) stage.function();
+        for (Stage child : stage.stages()) {
+            CacheStatistics cache = findCache(child);
+            if (cache != null)
+                return cache;
+        }
+        return null;
+    }
+    
+    /**
+     * A per-second rate of a growing count, averaged exponentially over about a
+     * minute. It only advances when read, so counting stays on the calling
+     * thread's fast path.
+     */
+    private static final class Rate {
+        private static final long   TICK  = TimeUnit.SECONDS.toNanos(5);
+        private static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+        
+        private long    lastTick  = System.nanoTime();
+        private long    lastCount;
+        private double  rate;
+        private boolean initialized;
+        
+        synchronized double perSecond(long count) {
+            long now = System.nanoTime();
+            long ticks = (now - lastTick) / TICK;
+            if (ticks == 0)
+                return rate;
+            // The calls since the last read are spread evenly over the ticks
+            // which have passed, and the average decays once per tick
+            double instant = (count - lastCount) / (ticks * 5.0);
+            rate = initialized ? instant + Math.pow(1 - ALPHA, ticks) * (rate - instant) : instant;
+            initialized = true;
+            lastCount = count;
+            lastTick += ticks * TICK;
+            return rate;
+        }
+        
+        synchronized void reset() {
+            lastTick = System.nanoTime();
+            lastCount = 0;
+            rate = 0;
+            initialized = false;
+        }
+    }
+}
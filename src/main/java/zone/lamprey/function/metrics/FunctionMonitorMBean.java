@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+/**
+ * The management interface of a function registered with a
+ * {@link FunctionRegistry}. Latencies are in microseconds and rates are per
+ * second, averaged exponentially over roughly the last minute.
+ */
+public interface FunctionMonitorMBean {
+    
+    /**
+     * @return The name the function was registered under.
+     */
+    String getName();
+    
+    /**
+     * @return The functional interface the function was registered as.
+     */
+    String getType();
+    
+    /**
+     * @return The number of calls since registration or the last reset.
+     */
+    long getInvocations();
+    
+    /**
+     * @return The number of calls which threw an exception.
+     */
+    long getErrors();
+    
+    /**
+     * @return Calls per second.
+     */
+    double getInvocationRate();
+    
+    /**
+     * @return Failed calls per second.
+     */
+    double getErrorRate();
+    
+    /**
+     * @return The fraction of all calls which failed.
+     */
+    double getErrorRatio();
+    
+    /**
+     * @return The median latency of the sampled calls.
+     */
+    double getLatencyP50();
+    
+    /**
+     * @return The 99th percentile latency of the sampled calls.
+     */
+    double getLatencyP99();
+    
+    /**
+     * @return The highest latency of the sampled calls.
+     */
+    double getLatencyMax();
+    
+    /**
+     * @return True if latencies are being sampled.
+     */
+    boolean isSamplingEnabled();
+    
+    /**
+     * @param enabled Whether latencies should be sampled. Calls and errors are
+     *            counted either way.
+     */
+    void setSamplingEnabled(boolean enabled);
+    
+    /**
+     * @return How many calls are counted for each call timed while sampling is
+     *         enabled.
+     */
+    int getSampleRate();
+    
+    /**
+     * @param sampleRate How many calls to count for each call timed while
+     *            sampling is enabled.
+     */
+    void setSampleRate(int sampleRate);
+    
+    /**
+     * @return The number of calls answered from a cache, or -1 if the function
+     *         is not memoized.
+     */
+    long getCacheHits();
+    
+    /**
+     * @return The number of calls which missed the cache, or -1 if the function
+     *         is not memoized.
+     */
+    long getCacheMisses();
+    
+    /**
+     * @return The number of cached results, or -1 if the function is not
+     *         memoized.
+     */
+    long getCacheSize();
+    
+    /**
+     * Clear all counters and recorded latencies.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import zone.lamprey.function.Consumer;
+import zone.lamprey.function.Function;
+import zone.lamprey.function.Stage;
+import zone.lamprey.function.Supplier;
+
+/**
+ * Exposes named functions as JMX MBeans. Registering a function returns a
+ * monitored version of it, whose calls, errors, latencies and (for memoized
+ * functions) cache statistics are published through a
+ * {@link FunctionMonitorMBean}:
+ * 
+ * <pre>{@code
+ *     Function<Price, Price> normalize = FunctionRegistry.platform().registerFunction("price-normalizer", fn);
+ * }</pre>
+ * 
+ * <p>
+ * A memoized stage further inside a composed function is only found if the
+ * function was composed while {@link Stage#setRecording(boolean) recording}
+ * was on.
+ * 
+ * <p>
+ * Counters are striped, so monitored functions can be called from any number
+ * of threads without contending. Latency sampling can be switched on and off,
+ * and its rate changed, at runtime through JMX.
+ */
+public final class FunctionRegistry {
+    
+    /**
+     * The JMX domain registered functions are published under.
+     */
+    public static final String DOMAIN = "zone.lamprey.function";
+    
+    private static final FunctionRegistry PLATFORM = new FunctionRegistry(ManagementFactory.getPlatformMBeanServer());
+    
+    private final MBeanServer                           server;
+    private final ConcurrentHashMap<String, ObjectName> registered = new ConcurrentHashMap<>();
+    
+    /**
+     * @param server The server to register MBeans with.
+     */
+    public FunctionRegistry(MBeanServer server) {
+        this.server = Objects.requireNonNull(server);
+    }
+    
+    /**
+     * @return A registry which publishes to the platform MBean server.
+     */
+    public static FunctionRegistry platform() {
+        return PLATFORM;
+    }
+    
+    /**
+     * Register a function.
+     * 
+     * @param <T> The type of the function argument.
+     * @param <R> The type of the function result.
+     * @param name The name to publish the function under.
+     * @param function The function to monitor.
+     * @return A monitored version of the function.
+     * @throws IllegalArgumentException If the name is already registered.
+     */
+    public <T, R> Function<T, R> registerFunction(String name, Function<T, R> function) {
+        FunctionMonitor monitor = publish(name, Function.class, function.describe());
+        Recorder recorder = monitor.recorder;
+        return t -> {
+            long start = recorder.start();
+            try {
+                return function.apply(t);
+            } catch (Throwable e) {
+                monitor.errors.increment();
+                throw e;
+            } finally {
+                recorder.stop(start);
+            }
+        };
+    }
+    
+    /**
+     * Register a consumer.
+     * 
+     * @param <T> The type of the consumer argument.
+     * @param name The name to publish the consumer under.
+     * @param consumer The consumer to monitor.
+     * @return A monitored version of the consumer.
+     * @throws IllegalArgumentException If the name is already registered.
+     */
+    public <T> Consumer<T> registerConsumer(String name, Consumer<T> consumer) {
+        FunctionMonitor monitor = publish(name, Consumer.class, consumer.describe());
+        Recorder recorder = monitor.recorder;
+        return t -> {
+            long start = recorder.start();
+            try {
+                consumer.accept(t);
+            } catch (Throwable e) {
+                monitor.errors.increment();
+                throw e;
+            } finally {
+                recorder.stop(start);
+            }
+        };
+    }
+    
+    /**
+     * Register a supplier.
+     * 
+     * @param <T> The type of the supplied value.
+     * @param name The name to publish the supplier under.
+     * @param supplier The supplier to monitor.
+     * @return A monitored version of the supplier.
+     * @throws IllegalArgumentException If the name is already registered.
+     */
+    public <T> Supplier<T> registerSupplier(String name, Supplier<T> supplier) {
+        FunctionMonitor monitor = publish(name, Supplier.class, supplier.describe());
+        Recorder recorder = monitor.recorder;
+        return () -> {
+            long start = recorder.start();
+            try {
+                return supplier.get();
+            } catch (Throwable e) {
+                monitor.errors.increment();
+                throw e;
+            } finally {
+                recorder.stop(start);
+            }
+        };
+    }
+    
+    /**
+     * Remove a function's MBean. The monitored function keeps working, but its
+     * statistics are no longer published.
+     * 
+     * @param name The name the function was registered under.
+     * @return True if a function was registered under the name.
+     */
+    public boolean unregister(String name) {
+        ObjectName objectName = registered.remove(name);
+        if (objectName == null)
+            return false;
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to unregister " + objectName, e);
+        }
+        return true;
+    }
+    
+    /**
+     * @param type The functional interface a function is registered as.
+     * @param name A name a function may be registered under.
+     * @return The name of the MBean for that function.
+     */
+    public static ObjectName objectName(Class<?> type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type.getSimpleName() + ",name=" + quoteIfNeeded(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid function name: " + name, e);
+        }
+    }
+    
+    private FunctionMonitor publish(String name, Class<?> type, Stage stage) {
+        Objects.requireNonNull(name);
+        ObjectName objectName = objectName(type, name);
+        if (registered.putIfAbsent(name, objectName) != null)
+            throw new IllegalArgumentException("A function is already registered as " + name);
+        FunctionMonitor monitor = new FunctionMonitor(name, type, stage);
+        try {
+            server.registerMBean(new StandardMBean(monitor, FunctionMonitorMBean.class), objectName);
+        } catch (JMException e) {
+            registered.remove(name, objectName);
+            throw new IllegalArgumentException("Unable to register " + objectName, e);
+        }
+        return monitor;
+    }
+    
+    private static String quoteIfNeeded(String name) {
+        for (char c : name.toCharArray())
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\\' || c == '\n')
+                return ObjectName.quote(name);
+        return name;
+    }
+}
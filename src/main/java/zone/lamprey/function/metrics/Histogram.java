@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative {@code long} values, such as latencies
+ * in nanoseconds. Values are counted in log-linear buckets: every power of two
+ * is split into {@value #SUB_BUCKETS} equally sized sub-buckets, so any
+ * recorded value can be recovered to within about 3% of its true value while
+ * the whole range of a {@code long} fits in a fixed, small array.
+ * 
+ * <p>
+ * Recording is a single atomic increment plus updates to the count and sum.
+ * Reads may run concurrently with recording, in which case they reflect some
+ * of the values recorded in the meantime.
+ */
+public final class Histogram {
+    
+    /**
+     * The number of sub-buckets each power of two is divided into.
+     */
+    public static final int SUB_BUCKETS = 32;
+    
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKETS  = 64 - SUB_BITS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+    private final LongAdder       count  = new LongAdder();
+    private final LongAdder       sum    = new LongAdder();
+    private final AtomicLong      max    = new AtomicLong();
+    
+    /**
+     * Record a value. Negative values are recorded as zero.
+     * 
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+            ;
+    }
+    
+    /**
+     * @return The number of values recorded.
+     */
+    public long count() {
+        return count.sum();
+    }
+    
+    /**
+     * @return The sum of all values recorded.
+     */
+    public long sum() {
+        return sum.sum();
+    }
+    
+    /**
+     * @return The largest value recorded, or zero if none have been.
+     */
+    public long max() {
+        return max.get();
+    }
+    
+    /**
+     * @return The mean of all values recorded, or zero if none have been.
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+    
+    /**
+     * @param percentile The percentile to get, between 0 and 100.
+     * @return The value at the given percentile, to within the precision of the
+     *         bucket it falls in, or zero if no values have been recorded.
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestEquivalentValue(i), max.get());
+        }
+        return max.get();
+    }
+    
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+    
+    /**
+     * @return A summary of the recorded values, read as nanoseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fus p50=%.3fus p99=%.3fus max=%.3fus",
+                             count(),
+                             mean() / 1e3,
+                             micros(percentile(50)),
+                             micros(percentile(99)),
+                             micros(max()));
+    }
+    
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+    
+    /**
+     * Values below {@link #SUB_BUCKETS} are counted exactly. Above that, the
+     * bucket is picked by the position of the highest set bit and the
+     * sub-bucket by the {@link #SUB_BITS} bits below it.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int bucket = exponent - SUB_BITS + 1;
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+        return bucket * SUB_BUCKETS + sub;
+    }
+    
+    static long highestEquivalentValue(int index) {
+        int bucket = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if (bucket == 0)
+            return sub;
+        long lowest = (long) (SUB_BUCKETS + sub) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+}
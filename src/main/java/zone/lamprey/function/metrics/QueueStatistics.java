@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+/**
+ * Implemented by functions which queue their calls for other threads, such as
+ * those returned by {@link zone.lamprey.function.Consumer#partitioned}.
+ */
+public interface QueueStatistics {
+    
+    /**
+     * @return The number of queues.
+     */
+    int queues();
+    
+    /**
+     * @param queue The index of a queue, from zero.
+     * @return The number of calls waiting in it. Only an estimate while calls
+     *         are being queued.
+     */
+    int depth(int queue);
+    
+    /**
+     * @return The depth of every queue, indexed as for {@link #depth(int)}.
+     */
+    default int[] depths() {
+        int[] depths = new int[queues()];
+        for (int i = 0; i < depths.length; i++)
+            depths[i] = depth(i);
+        return depths;
+    }
+}
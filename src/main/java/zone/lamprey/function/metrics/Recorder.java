@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts calls to a function and records their latency. A recorder is given to
+ * the {@code timed} method of any functional interface in
+ * {@code zone.lamprey.function}:
+ * 
+ * <pre>{@code
+ *     Recorder recorder = new Recorder();
+ *     DoubleUnaryOperator timedAbs = DoubleUnaryOperator.ABS.timed(recorder);
+ *     // ...
+ *     System.out.println(recorder.latency());
+ * }</pre>
+ * 
+ * <p>
+ * Every call is counted, but when a sample rate of N is set only one call in N
+ * (chosen at random) is timed, and with a sample rate of zero none are. A
+ * disabled recorder neither counts nor times, which leaves a timed function
+ * doing nothing but a single field read on top of the call it wraps. A
+ * recorder may be shared by any number of functions and threads.
+ */
+public final class Recorder {
+    
+    /**
+     * The value returned by {@link #start()} for calls which are not timed.
+     */
+    public static final long UNTIMED = Long.MIN_VALUE;
+    
+    private final LongAdder calls   = new LongAdder();
+    private final Histogram latency = new Histogram();
+    
+    private volatile boolean enabled = true;
+    private volatile int     sampleRate;
+    
+    /**
+     * Create a recorder which times every call.
+     */
+    public Recorder() {
+        this(1);
+    }
+    
+    /**
+     * Create a recorder which times one call in every {@code sampleRate}.
+     * 
+     * @param sampleRate How many calls to count for each call timed.
+     */
+    public Recorder(int sampleRate) {
+        setSampleRate(sampleRate);
+    }
+    
+    /**
+     * Mark the start of a call.
+     * 
+     * @return A token to pass to {@link #stop(long)} when the call completes.
+     */
+    public long start() {
+        if (!enabled)
+            return UNTIMED;
+        calls.increment();
+        int rate = sampleRate;
+        if (rate == 0 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0)
+            return UNTIMED;
+        return System.nanoTime();
+    }
+    
+    /**
+     * Mark the end of a call.
+     * 
+     * @param start The token returned by {@link #start()} for the call.
+     */
+    public void stop(long start) {
+        if (start != UNTIMED)
+            latency.record(System.nanoTime() - start);
+    }
+    
+    /**
+     * @return The number of calls counted.
+     */
+    public long calls() {
+        return calls.sum();
+    }
+    
+    /**
+     * @return The latencies, in nanoseconds, of the calls which were timed.
+     */
+    public Histogram latency() {
+        return latency;
+    }
+    
+    /**
+     * @return True if calls are being counted and timed.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * @param enabled Whether calls should be counted and timed.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * @return How many calls are counted for each call timed, or zero if no
+     *         calls are timed.
+     */
+    public int sampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * @param sampleRate How many calls to count for each call timed. A rate of
+     *            one times every call, and a rate of zero only counts calls.
+     */
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 0)
+            throw new IllegalArgumentException("Sample rate must not be negative: " + sampleRate);
+        this.sampleRate = sampleRate;
+    }
+    
+    /**
+     * Clear the call count and all recorded latencies.
+     */
+    public void reset() {
+        calls.reset();
+        latency.reset();
+    }
+    
+    @Override
+    public String toString() {
+        return "calls=" + calls() + " " + latency;
+    }
+}
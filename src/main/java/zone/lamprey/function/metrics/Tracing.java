@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.metrics;
+
+import zone.lamprey.function.Function;
+import zone.lamprey.function.Runnable;
+import zone.lamprey.function.Supplier;
+
+/**
+ * Emits Java Flight Recorder events for slow calls to traced functions. Each
+ * event carries a description of the function which was called, along with
+ * the duration and thread Flight Recorder records for every event. Use the
+ * {@code traced} methods of {@link Function}, {@link Supplier} and
+ * {@link Runnable} rather than calling this class directly.
+ * 
+ * <p>
+ * Only calls which take at least the event threshold are recorded. The
+ * threshold defaults to {@value #DEFAULT_THRESHOLD} and can be changed like
+ * that of any other event, in a recording's settings or with
+ * {@code recording.enable(Tracing.EVENT_NAME).withThreshold(duration)}.
+ * 
+ * <p>
+ * While the event is not enabled in any recording, a traced function creates
+ * an event object it never uses, which the JIT compiler removes entirely. On
+ * runtimes without Flight Recorder, functions are returned untraced. Building
+ * this class needs {@code jdk.jfr} at compile time, which JDK 8u262 and later
+ * and JDK 11 and later provide.
+ */
+public final class Tracing {
+    
+    /**
+     * The name of the Flight Recorder event emitted for slow calls.
+     */
+    public static final String EVENT_NAME = "zone.lamprey.function.Invocation";
+    
+    /**
+     * The default threshold for the event.
+     */
+    public static final String DEFAULT_THRESHOLD = "10 ms";
+    
+    private static final boolean AVAILABLE = detect();
+    
+    private Tracing() {
+    }
+    
+    /**
+     * @return True if Flight Recorder is present in this runtime. If it isn't,
+     *         functions can't be traced.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+    
+    /**
+     * @param <T> The type of the function argument.
+     * @param <R> The type of the function result.
+     * @param function The function to trace.
+     * @param stage The description to attach to events.
+     * @return A function which records an event for every slow call to the
+     *         given one, or the given function if tracing is unavailable.
+     */
+    public static <T, R> Function<T, R> trace(Function<T, R> function, String stage) {
+        if (!AVAILABLE)
+            return function;
+        return t -> {
+            InvocationEvent event = new InvocationEvent();
+            if (!event.isEnabled())
+                return function.apply(t);
+            event.begin();
+            try {
+                return function.apply(t);
+            } finally {
+                commit(event, stage);
+            }
+        };
+    }
+    
+    /**
+     * @param <T> The type of the supplied value.
+     * @param supplier The supplier to trace.
+     * @param stage The description to attach to events.
+     * @return A supplier which records an event for every slow call to the
+     *         given one, or the given supplier if tracing is unavailable.
+     */
+    public static <T> Supplier<T> trace(Supplier<T> supplier, String stage) {
+        if (!AVAILABLE)
+            return supplier;
+        return () -> {
+            InvocationEvent event = new InvocationEvent();
+            if (!event.isEnabled())
+                return supplier.get();
+            event.begin();
+            try {
+                return supplier.get();
+            } finally {
+                commit(event, stage);
+            }
+        };
+    }
+    
+    /**
+     * @param runnable The runnable to trace.
+     * @param stage The description to attach to events.
+     * @return A runnable which records an event for every slow call to the
+     *         given one, or the given runnable if tracing is unavailable.
+     */
+    public static Runnable trace(Runnable runnable, String stage) {
+        if (!AVAILABLE)
+            return runnable;
+        return () -> {
+            InvocationEvent event = new InvocationEvent();
+            if (!event.isEnabled()) {
+                runnable.run();
+                return;
+            }
+            event.begin();
+            try {
+                runnable.run();
+            } finally {
+                commit(event, stage);
+            }
+        };
+    }
+    
+    private static void commit(InvocationEvent event, String stage) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.commit();
+        }
+    }
+    
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
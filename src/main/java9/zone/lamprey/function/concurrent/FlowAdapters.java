@@ -0,0 +1,318 @@
+/*
+ * Copyright 2019 Griffin O'Neill
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package zone.lamprey.function.concurrent;
+
+import java.util.Objects;
+
+/**
+ * Conversions between the interfaces of {@link Flow} and those of
+ * {@link java.util.concurrent.Flow}. Each adapter forwards every method to the
+ * object it wraps, and adapting an adapter back returns the original object.
+ * 
+ * <p>
+ * This class is only present when running on Java 9 or later, from the
+ * versioned section of the multi-release jar.
+ */
+public final class FlowAdapters {
+    
+    private FlowAdapters() {
+    }
+    
+    /**
+     * @param <T> the type of the items
+     * @param publisher The publisher to adapt.
+     * @return A {@code java.util.concurrent.Flow.Publisher} which forwards to
+     *         the given publisher.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> java.util.concurrent.Flow.Publisher<T> toJdkPublisher(Flow.Publisher<? extends T> publisher) {
+        Objects.requireNonNull(publisher);
+        if (publisher instanceof FromJdkPublisher)
+            return (java.util.concurrent.Flow.Publisher<T>) ((FromJdkPublisher<? extends T>) publisher).publisher;
+        return new ToJdkPublisher<>(publisher);
+    }
+    
+    /**
+     * @param <T> the type of the items
+     * @param publisher The publisher to adapt.
+     * @return A {@link Flow.Publisher} which forwards to the given publisher.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Flow.Publisher<T> fromJdkPublisher(java.util.concurrent.Flow.Publisher<? extends T> publisher) {
+        Objects.requireNonNull(publisher);
+        if (publisher instanceof ToJdkPublisher)
+            return (Flow.Publisher<T>) ((ToJdkPublisher<? extends T>) publisher).publisher;
+        return new FromJdkPublisher<>(publisher);
+    }
+    
+    /**
+     * @param <T> the type of the items
+     * @param subscriber The subscriber to adapt.
+     * @return A {@code java.util.concurrent.Flow.Subscriber} which forwards to
+     *         the given subscriber.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> java.util.concurrent.Flow.Subscriber<T> toJdkSubscriber(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (subscriber instanceof FromJdkSubscriber)
+            return (java.util.concurrent.Flow.Subscriber<T>) ((FromJdkSubscriber<? super T>) subscriber).subscriber;
+        return new ToJdkSubscriber<>(subscriber);
+    }
+    
+    /**
+     * @param <T> the type of the items
+     * @param subscriber The subscriber to adapt.
+     * @return A {@link Flow.Subscriber} which forwards to the given subscriber.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Flow.Subscriber<T> fromJdkSubscriber(java.util.concurrent.Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (subscriber instanceof ToJdkSubscriber)
+            return (Flow.Subscriber<T>) ((ToJdkSubscriber<? super T>) subscriber).subscriber;
+        return new FromJdkSubscriber<>(subscriber);
+    }
+    
+    /**
+     * @param <T> the type of the items received
+     * @param <R> the type of the items published
+     * @param processor The processor to adapt.
+     * @return A {@code java.util.concurrent.Flow.Processor} which forwards to
+     *         the given processor.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, R> java.util.concurrent.Flow.Processor<T, R> toJdkProcessor(Flow.Processor<? super T, ? extends R> processor) {
+        Objects.requireNonNull(processor);
+        if (processor instanceof FromJdkProcessor)
+            return (java.util.concurrent.Flow.Processor<T, R>) ((FromJdkProcessor<? super T, ? extends R>) processor).processor;
+        return new ToJdkProcessor<>(processor);
+    }
+    
+    /**
+     * @param <T> the type of the items received
+     * @param <R> the type of the items published
+     * @param processor The processor to adapt.
+     * @return A {@link Flow.Processor} which forwards to the given processor.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, R> Flow.Processor<T, R> fromJdkProcessor(java.util.concurrent.Flow.Processor<? super T, ? extends R> processor) {
+        Objects.requireNonNull(processor);
+        if (processor instanceof ToJdkProcessor)
+            return (Flow.Processor<T, R>) ((ToJdkProcessor<? super T, ? extends R>) processor).processor;
+        return new FromJdkProcessor<>(processor);
+    }
+    
+    private static java.util.concurrent.Flow.Subscription toJdkSubscription(Flow.Subscription subscription) {
+        if (subscription instanceof FromJdkSubscription)
+            return ((FromJdkSubscription) subscription).subscription;
+        return subscription == null ? null : new ToJdkSubscription(subscription);
+    }
+    
+    private static Flow.Subscription fromJdkSubscription(java.util.concurrent.Flow.Subscription subscription) {
+        if (subscription instanceof ToJdkSubscription)
+            return ((ToJdkSubscription) subscription).subscription;
+        return subscription == null ? null : new FromJdkSubscription(subscription);
+    }
+    
+    private static final class ToJdkPublisher<T> implements java.util.concurrent.Flow.Publisher<T> {
+        private final Flow.Publisher<? extends T> publisher;
+        
+        ToJdkPublisher(Flow.Publisher<? extends T> publisher) {
+            this.publisher = publisher;
+        }
+        
+        @Override
+        public void subscribe(java.util.concurrent.Flow.Subscriber<? super T> subscriber) {
+            publisher.subscribe(fromJdkSubscriber(subscriber));
+        }
+    }
+    
+    private static final class FromJdkPublisher<T> implements Flow.Publisher<T> {
+        private final java.util.concurrent.Flow.Publisher<? extends T> publisher;
+        
+        FromJdkPublisher(java.util.concurrent.Flow.Publisher<? extends T> publisher) {
+            this.publisher = publisher;
+        }
+        
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> subscriber) {
+            publisher.subscribe(toJdkSubscriber(subscriber));
+        }
+    }
+    
+    private static final class ToJdkSubscriber<T> implements java.util.concurrent.Flow.Subscriber<T> {
+        private final Flow.Subscriber<? super T> subscriber;
+        
+        ToJdkSubscriber(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            subscriber.onSubscribe(fromJdkSubscription(subscription));
+        }
+        
+        @Override
+        public void onNext(T item) {
+            subscriber.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            subscriber.onComplete();
+        }
+    }
+    
+    private static final class FromJdkSubscriber<T> implements Flow.Subscriber<T> {
+        private final java.util.concurrent.Flow.Subscriber<? super T> subscriber;
+        
+        FromJdkSubscriber(java.util.concurrent.Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscriber.onSubscribe(toJdkSubscription(subscription));
+        }
+        
+        @Override
+        public void onNext(T item) {
+            subscriber.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            subscriber.onComplete();
+        }
+    }
+    
+    private static final class ToJdkProcessor<T, R> implements java.util.concurrent.Flow.Processor<T, R> {
+        private final Flow.Processor<? super T, ? extends R> processor;
+        
+        ToJdkProcessor(Flow.Processor<? super T, ? extends R> processor) {
+            this.processor = processor;
+        }
+        
+        @Override
+        public void subscribe(java.util.concurrent.Flow.Subscriber<? super R> subscriber) {
+            processor.subscribe(fromJdkSubscriber(subscriber));
+        }
+        
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            processor.onSubscribe(fromJdkSubscription(subscription));
+        }
+        
+        @Override
+        public void onNext(T item) {
+            processor.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            processor.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            processor.onComplete();
+        }
+    }
+    
+    private static final class FromJdkProcessor<T, R> implements Flow.Processor<T, R> {
+        private final java.util.concurrent.Flow.Processor<? super T, ? extends R> processor;
+        
+        FromJdkProcessor(java.util.concurrent.Flow.Processor<? super T, ? extends R> processor) {
+            this.processor = processor;
+        }
+        
+        @Override
+        public void subscribe(Flow.Subscriber<? super R> subscriber) {
+            processor.subscribe(toJdkSubscriber(subscriber));
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            processor.onSubscribe(toJdkSubscription(subscription));
+        }
+        
+        @Override
+        public void onNext(T item) {
+            processor.onNext(item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            processor.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            processor.onComplete();
+        }
+    }
+    
+    private static final class ToJdkSubscription implements java.util.concurrent.Flow.Subscription {
+        private final Flow.Subscription subscription;
+        
+        ToJdkSubscription(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+        
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+        
+        @Override
+        public void cancel() {
+            subscription.cancel();
+        }
+    }
+    
+    private static final class FromJdkSubscription implements Flow.Subscription {
+        private final java.util.concurrent.Flow.Subscription subscription;
+        
+        FromJdkSubscription(java.util.concurrent.Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+        
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+        
+        @Override
+        public void cancel() {
+            subscription.cancel();
+        }
+    }
+}